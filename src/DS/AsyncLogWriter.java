@@ -0,0 +1,197 @@
+package DS;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * The purpose of this class is to take the writing of the log file off of the thread that processes commands.
+ * Characters are collected into large batches; a full batch, or the pending part of a batch when flush() is
+ * called, is handed to a dedicated writer thread through a bounded queue.  The writer thread writes the batches
+ * to the underlying writer in the order they were handed over, so the output is exactly what the same calls on
+ * the underlying writer would have produced.  When the queue is full the caller waits, which bounds the memory
+ * held by batches that have not been written yet.
+ */
+public class AsyncLogWriter extends Writer
+{
+	/** Number of characters collected before a batch is handed to the writer thread */
+	private static final int BATCH_SIZE = 64 * 1024;
+	/** Number of batches that may wait for the writer thread */
+	private static final int QUEUE_CAPACITY = 16;
+	/** Batch that tells the writer thread to stop */
+	private static final char[] END_OF_LOG = new char[0];
+
+	/** Writer that receives the batches */
+	private final Writer out;
+	/** Batches waiting to be written */
+	private final BlockingQueue<char[]> queue = new ArrayBlockingQueue<char[]>(QUEUE_CAPACITY);
+	/** Thread that writes the batches */
+	private final Thread writerThread;
+	/** Characters of the batch being collected */
+	private char[] batch = new char[BATCH_SIZE];
+	/** Number of characters in the batch being collected */
+	private int batchLength = 0;
+	/** First error met by the writer thread, reported to the caller on the next call */
+	private volatile IOException failure = null;
+	/** Set once the writer has been closed */
+	private boolean closed = false;
+
+	/**
+	 * @param out Writer that will receive everything written to this writer. It is closed when this writer is closed.
+	 */
+	public AsyncLogWriter(Writer out)
+	{
+		this.out = out;
+		writerThread = new Thread(new Runnable() {
+			public void run() {
+				writeBatches();
+			}
+		}, "GIS log writer");
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	/**
+	 * @param chars Characters to be written
+	 * @param offset Position of the first character to write
+	 * @param length Number of characters to write
+	 * @throws IOException If the writer is closed or the writer thread failed
+	 */
+	@Override
+	public void write(char[] chars, int offset, int length) throws IOException
+	{
+		checkOpen();
+		while (length > 0)
+		{
+			int count = Math.min(length, BATCH_SIZE - batchLength);
+			System.arraycopy(chars, offset, batch, batchLength, count);
+			batchLength += count;
+			offset += count;
+			length -= count;
+			if (batchLength == BATCH_SIZE) handOff();
+		}
+	}
+
+	/**
+	 * @param text String to be written
+	 * @param offset Position of the first character to write
+	 * @param length Number of characters to write
+	 * @throws IOException If the writer is closed or the writer thread failed
+	 */
+	@Override
+	public void write(String text, int offset, int length) throws IOException
+	{
+		checkOpen();
+		while (length > 0)
+		{
+			int count = Math.min(length, BATCH_SIZE - batchLength);
+			text.getChars(offset, offset + count, batch, batchLength);
+			batchLength += count;
+			offset += count;
+			length -= count;
+			if (batchLength == BATCH_SIZE) handOff();
+		}
+	}
+
+	/**
+	 * Hands the characters collected so far to the writer thread. The call does not wait for them to be written.
+	 *
+	 * @throws IOException If the writer is closed or the writer thread failed
+	 */
+	@Override
+	public void flush() throws IOException
+	{
+		checkOpen();
+		if (batchLength > 0) handOff();
+	}
+
+	/**
+	 * Waits until everything written so far reached the underlying writer, then closes it.
+	 *
+	 * @throws IOException If the writer thread failed or the underlying writer could not be closed
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		if (closed) return;
+		if (batchLength > 0) handOff();
+		closed = true;
+
+		put(END_OF_LOG);
+		try {
+			writerThread.join();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Error: Interrupted while waiting for the log to be written.");
+		}
+		out.close();
+		if (failure != null) throw failure;
+	}
+
+	/**
+	 * Places the collected batch on the queue and starts a new batch.
+	 *
+	 * @throws IOException If the thread was interrupted while waiting for room on the queue
+	 */
+	private void handOff() throws IOException
+	{
+		put(Arrays.copyOf(batch, batchLength));
+		batchLength = 0;
+	}
+
+	/**
+	 * @param chars Batch to be placed on the queue, waits while the queue is full
+	 * @throws IOException If the thread was interrupted while waiting for room on the queue
+	 */
+	private void put(char[] chars) throws IOException
+	{
+		try {
+			queue.put(chars);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Error: Interrupted while handing the log to the writer thread.");
+		}
+	}
+
+	/**
+	 * @throws IOException If the writer is closed or the writer thread failed
+	 */
+	private void checkOpen() throws IOException
+	{
+		if (closed) throw new IOException("Error: The log writer is closed.");
+		if (failure != null) throw failure;
+	}
+
+	/**
+	 * Body of the writer thread: writes batches until the end of the log is reached. The underlying writer is
+	 * flushed whenever the queue runs empty, so the log file keeps up with the commands while the writer is idle.
+	 */
+	private void writeBatches()
+	{
+		while (true)
+		{
+			char[] chars;
+			try {
+				chars = queue.take();
+			}
+			catch (InterruptedException e) {
+				return;
+			}
+			if (chars == END_OF_LOG) return;
+			if (failure != null) continue; // Keep draining so the command thread never blocks
+
+			try {
+				out.write(chars);
+				if (queue.isEmpty()) out.flush();
+			}
+			catch (IOException e) {
+				failure = e;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,297 @@
+package DS;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The purpose of this class is to cache the database file in fixed size pages, so that records that sit next to
+ * each other in the file (as the results of a region search usually do) are served by a single read.
+ * Pages are read into a fixed number of frames; a page is pinned while its bytes are being copied and a pinned
+ * page is never replaced. When every frame is in use, an unpinned page is replaced with the CLOCK algorithm.
+ * The last page of the file may be partial; it is read again when a record past its end is requested, so the
+ * cache sees the records that imports append to the database file.
+ */
+public class BlockCache implements RecordSource
+{
+	/** Smallest page size accepted */
+	public static final int MIN_PAGE_SIZE = 4 * 1024;
+	/** Largest page size accepted */
+	public static final int MAX_PAGE_SIZE = 64 * 1024;
+
+	/** The database file that is cached */
+	private RandomAccessFile file;
+	/** Channel used to read pages from the database file */
+	private FileChannel channel;
+	/** Number of bytes in a page (a power of two) */
+	private final int pageSize;
+	/** log2 of the page size */
+	private final int pageShift;
+	/** Bytes of the page held in each frame (allocated when the frame is first used) */
+	private byte[][] frames;
+	/** Number of the page held in each frame */
+	private long[] framePages;
+	/** Number of valid bytes in each frame (less than the page size only for the last page of the file) */
+	private int[] frameLengths;
+	/** Number of pins on each frame */
+	private int[] pins;
+	/** Set for frames that were used since the clock hand last passed them */
+	private boolean[] referenced;
+	/** Frame of each cached page keyed by the page number */
+	private OffsetTable pageFrames;
+	/** Number of frames that have been used */
+	private int framesUsed = 0;
+	/** Frame the clock hand examines next */
+	private int hand = 0;
+
+	/** Number of page requests served from a frame */
+	private long pageHits = 0;
+	/** Number of pages read from the database file */
+	private long pageReads = 0;
+	/** Number of pages replaced to make room for another */
+	private long pageEvictions = 0;
+
+	/**
+	 * @param databaseFile The database file to be cached
+	 * @param pageSize Number of bytes in a page (a power of two from 4 KB to 64 KB)
+	 * @param pageCount Number of pages held at once (at least 1)
+	 * @throws IOException If the database file could not be opened
+	 * @throws IllegalArgumentException If the page size or count is invalid
+	 */
+	public BlockCache(File databaseFile, int pageSize, int pageCount) throws IOException
+	{
+		if (pageSize < MIN_PAGE_SIZE || pageSize > MAX_PAGE_SIZE || Integer.bitCount(pageSize) != 1)
+			throw new IllegalArgumentException("Error: Block cache page size must be a power of two from 4 KB to 64 KB.");
+		if (pageCount < 1) throw new IllegalArgumentException("Error: Block cache must hold at least one page.");
+
+		this.pageSize = pageSize;
+		pageShift = Integer.numberOfTrailingZeros(pageSize);
+		frames = new byte[pageCount][];
+		framePages = new long[pageCount];
+		frameLengths = new int[pageCount];
+		pins = new int[pageCount];
+		referenced = new boolean[pageCount];
+		pageFrames = new OffsetTable(pageCount);
+
+		file = new RandomAccessFile(databaseFile, "r");
+		channel = file.getChannel();
+	}
+
+	/**
+	 * Pins a page in the cache, reading it from the database file if it is not cached. Every call must be
+	 * matched by a call to unpin() once the bytes of the page are no longer needed.
+	 *
+	 * @param pageNumber Number of the page (its file offset divided by the page size)
+	 * @return The frame that holds the page
+	 * @throws IOException If the page could not be read or every frame is pinned
+	 */
+	public int pin(long pageNumber) throws IOException
+	{
+		int frame = pageFrames.get(pageNumber);
+		if (frame >= 0) pageHits++;
+		else
+		{
+			frame = freeFrame();
+			load(frame, pageNumber);
+			pageFrames.put(pageNumber, frame);
+		}
+		referenced[frame] = true;
+		pins[frame]++;
+		return frame;
+	}
+
+	/**
+	 * @param frame A frame returned by pin()
+	 */
+	public void unpin(int frame)
+	{
+		if (pins[frame] <= 0) throw new IllegalStateException("Error: Block cache frame " + frame + " is not pinned.");
+		pins[frame]--;
+	}
+
+	/**
+	 * @param frame A pinned frame
+	 * @return The bytes of the page held in the frame (only valid while the frame is pinned)
+	 */
+	public byte[] getPage(int frame)
+	{
+		return frames[frame];
+	}
+
+	/**
+	 * @param frame A pinned frame
+	 * @return The number of valid bytes in the frame
+	 */
+	public int getPageLength(int frame)
+	{
+		return frameLengths[frame];
+	}
+
+	/**
+	 * @param offset Offset of the first byte to copy
+	 * @param destination Array that will receive the bytes
+	 * @param destOffset Position inside of the destination of the first byte
+	 * @param length Number of bytes to copy
+	 * @throws IOException If the bytes are past the end of the database file or could not be read
+	 */
+	public void read(long offset, byte[] destination, int destOffset, int length) throws IOException
+	{
+		if (offset < 0) throw new IOException("Error: Attempted to read before the start of the database file (offset " + offset + ").");
+
+		while (length > 0)
+		{
+			int index = (int) (offset & (pageSize - 1));
+			int frame = pin(offset >>> pageShift);
+			int count;
+			try {
+				// The page may have been cached before the bytes were appended to the file
+				if (frameLengths[frame] < Math.min(pageSize, index + length)) reload(frame);
+				count = Math.min(length, frameLengths[frame] - index);
+				if (count <= 0) throw new IOException("Error: Attempted to read past the end of the database file (offset " + offset + ").");
+				System.arraycopy(frames[frame], index, destination, destOffset, count);
+			}
+			finally {
+				unpin(frame);
+			}
+			offset += count;
+			destOffset += count;
+			length -= count;
+		}
+	}
+
+	/**
+	 * @param offset Offset of the start of a record line
+	 * @return The record line found at the offset, or null if the offset is past the end of the file
+	 * @throws IOException If the database file could not be read
+	 */
+	public String readLine(long offset) throws IOException
+	{
+		if (offset < 0) return null;
+
+		byte[] line = new byte[256];
+		int lineLength = 0;
+		while (true)
+		{
+			int index = (int) (offset & (pageSize - 1));
+			int frame = pin(offset >>> pageShift);
+			try {
+				// Scan the rest of the page for the terminator, a partial page is read again if the file has grown
+				byte[] page = frames[frame];
+				int end = index;
+				while (true)
+				{
+					while (end < frameLengths[frame] && page[end] != '\n') end++;
+					if (end < frameLengths[frame] || frameLengths[frame] == pageSize || !reload(frame)) break;
+				}
+				int length = frameLengths[frame];
+				if (index >= length) return (lineLength == 0) ? null : new String(line, 0, lineLength, StandardCharsets.ISO_8859_1);
+
+				if (lineLength + (end - index) > line.length) line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + end - index));
+				System.arraycopy(page, index, line, lineLength, end - index);
+				lineLength += end - index;
+				if (end < length || length < pageSize) return new String(line, 0, lineLength, StandardCharsets.ISO_8859_1);
+				offset += end - index;
+			}
+			finally {
+				unpin(frame);
+			}
+		}
+	}
+
+	/**
+	 * @return A frame that may receive a new page
+	 * @throws IOException If every frame is pinned
+	 */
+	private int freeFrame() throws IOException
+	{
+		if (framesUsed < frames.length) {
+			frames[framesUsed] = new byte[pageSize];
+			return framesUsed++;
+		}
+
+		// Sweep the clock hand over the frames, giving referenced pages a second chance
+		for (int step = 0; step < 2 * frames.length; step++)
+		{
+			int frame = hand;
+			hand = (hand + 1) % frames.length;
+			if (pins[frame] > 0) continue;
+			if (referenced[frame]) {
+				referenced[frame] = false;
+				continue;
+			}
+			pageFrames.remove(framePages[frame]);
+			pageEvictions++;
+			return frame;
+		}
+		throw new IOException("Error: Every page of the block cache is pinned.");
+	}
+
+	/**
+	 * @param frame A pinned frame that holds a partial page
+	 * @return True if the page grew because bytes were appended to the database file since it was read
+	 * @throws IOException If the page could not be read
+	 */
+	private boolean reload(int frame) throws IOException
+	{
+		int length = frameLengths[frame];
+		load(frame, framePages[frame]);
+		return frameLengths[frame] > length;
+	}
+
+	/**
+	 * @param frame Frame that receives the page
+	 * @param pageNumber Number of the page to be read
+	 * @throws IOException If the page could not be read
+	 */
+	private void load(int frame, long pageNumber) throws IOException
+	{
+		ByteBuffer buffer = ByteBuffer.wrap(frames[frame]);
+		long start = pageNumber << pageShift;
+		while (buffer.hasRemaining())
+		{
+			if (channel.read(buffer, start + buffer.position()) < 0) break;
+		}
+		framePages[frame] = pageNumber;
+		frameLengths[frame] = buffer.position();
+		pageReads++;
+	}
+
+	/**
+	 * @return Number of bytes in a page
+	 */
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	/**
+	 * @return Number of pages held at once
+	 */
+	public int getPageCount() {
+		return frames.length;
+	}
+
+	/**
+	 * @return A line describing the use of the cache since it was created
+	 */
+	public String getStatistics()
+	{
+		return "Block cache pages: " + pageFrames.size() + " of " + frames.length + " (" + (pageSize / 1024) + " KB each), page hits: "
+				+ pageHits + ", page reads: " + pageReads + ", page evictions: " + pageEvictions;
+	}
+
+	/**
+	 * Closes the database file.
+	 *
+	 * @throws IOException If the database file could not be closed
+	 */
+	public void close() throws IOException
+	{
+		pageFrames.clear();
+		file.close();
+	}
+
+}
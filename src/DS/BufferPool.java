@@ -6,114 +6,520 @@
 package DS;
 
 import java.io.File;
-import java.io.FileWriter;
+import java.io.Writer;
 import java.io.IOException;
-import java.io.RandomAccessFile;
-import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Vector;
+import Parsers.RecordTokenizer;
 import Types.Record;
 
 /**
  * @author Carlos Folgar
  * The purpose of this class is to buffer the records that are retrieved from the database file.
- * It can retrieve records if it has them contained.
+ * It can retrieve records if it has them contained.<p>
+ *
+ * Buffered records live in fixed slots and an offset table maps the offset of each buffered record to its slot,
+ * so a lookup takes constant time whatever the capacity of the pool. Which record is replaced when the pool is
+ * full is decided by an eviction policy (lru, clock, 2q or tinylfu). The pool counts its hits, misses and
+ * evictions so that the policies can be compared on the same script.<p>
+ *
+ * Recently used records are also kept decoded, as the immutable Record objects that were handed out, so a
+ * repeated lookup of a hot record costs a probe of the offset table and nothing else. The decoded records
+ * form a second tier within the buffered ones: they are kept in least recently used order and the oldest are
+ * dropped (leaving only their record line) once their estimated size exceeds the decoded memory budget.<p>
+ *
+ * Records that are not buffered are read from a memory mapping of the database file, or from a block cache
+ * of the file's pages when one is set up with useBlockCache(). grabRecordsWithOffsets() fetches the records
+ * of a whole search result at once: the records that are not buffered are read in file order, with records
+ * that lie close together fetched by a single read. prefetch() starts reading such records on background
+ * threads instead, and the following lookups take them as they arrive.<p>
+ *
+ * With useOffHeapStore() the record lines are kept as raw bytes in direct buffers outside of the Java heap
+ * instead of as strings, so a large pool does not grow the heap or the garbage collection pauses. Only the
+ * offsets, handles and the decoded tier stay on the heap; a line is decoded from its bytes when it is looked up.<p>
+ *
+ * warm() loads the records listed by a pool manifest on a background thread. The lines it reads are only added
+ * to the pool on the thread that looks up records, at the start of each lookup, so the pool needs no locking.
  */
-public class BufferPool 
+public class BufferPool implements RecordPool
 {
+	/** Capacity used when none is given */
+	public static final int DEFAULT_CAPACITY = 20;
+	/** Policy used when none is given */
+	public static final String DEFAULT_POLICY = "lru";
+	/** Bytes of decoded records kept when no budget is given */
+	public static final long DEFAULT_DECODED_BUDGET = 1 << 20;
+	/** Largest gap between two records of a batch that are still fetched with the same read */
+	private static final int MAX_READ_GAP = 4 * 1024;
+	/** Largest number of bytes fetched by one read of a batch */
+	private static final int MAX_READ_SIZE = 256 * 1024;
 
-	/** List of strings corresponding to records that will be cached */	
-	private ArrayList<String> stringList;
+	/** Offset of the record buffered in each slot */
+	private long[] slotOffsets;
+	/** Record line buffered in each slot (without the offset prefix), unused when the lines are kept off heap */
+	private String[] slotLines;
+	/** Handle in the off-heap store of the line buffered in each slot */
+	private long[] slotHandles;
+	/** Holds the record lines outside of the Java heap (null when they are kept as strings) */
+	private OffHeapLineStore offHeap;
+	/** Receives the bytes of an off-heap line while it is decoded */
+	private byte[] lineBytes = new byte[256];
+	/** Decoded record of each slot (null when only the line is buffered) */
+	private Record[] slotRecords;
+	/** Estimated size of the decoded record of each slot */
+	private int[] slotRecordSizes;
+	/** Slots that hold a decoded record, from the most to the least recently used */
+	private SlotList decoded;
+	/** Estimated number of bytes held by the decoded records */
+	private long decodedBytes = 0;
+	/** Most bytes that the decoded records may hold */
+	private final long DECODED_BUDGET;
+	/** Number of slots in use */
+	private int size = 0;
+	/** Slot of each buffered record keyed by its offset */
+	private OffsetTable slotIndex;
+	/** Decides which buffered record is replaced when the pool is full */
+	private EvictionPolicy policy;
 	/** The database file that contains all of the imported records */
 	private File dbFile;
-	/** The maximum amount of record strings that may be stored. Afterwards, the least recently used will be replaced */
-	private final int POOL_CAPACITY = 20; 
-	
+	/** Source of the records that are not buffered: a memory mapping of the database file or a block cache */
+	private RecordSource dbSource;
+	/** Cache of database file pages (null when the database file is memory mapped) */
+	private BlockCache blockCache;
+	/** Reads the records of a search result on background threads (null when there is no prefetching) */
+	private Prefetcher prefetcher;
+	/** Reads the records of a pool manifest on a background thread (null once they have all been added) */
+	private PoolWarmer warmer;
+	/** Byte length of each record keyed by its offset, lets a miss read the record without scanning for its end */
+	private OffsetTable recordLengths;
+	/** The maximum amount of record strings that may be stored. Afterwards, the policy chooses one to be replaced */
+	private final int POOL_CAPACITY;
+	/** Tokenizer reused to split every record line that is handed out by the pool */
+	private RecordTokenizer recordFields = new RecordTokenizer();
+
+	/** Number of lookups answered from the pool */
+	private long hits = 0;
+	/** Number of hits that found the record already decoded */
+	private long decodedHits = 0;
+	/** Number of lookups that had to read the database file */
+	private long misses = 0;
+	/** Number of records replaced to make room for another */
+	private long evictions = 0;
+	/** Number of records the policy refused to buffer */
+	private long rejections = 0;
+	/** Number of record bytes held by the pool */
+	private long bytesHeld = 0;
+	/** Number of reads done to fetch the records of batches */
+	private long batchReads = 0;
+	/** Number of records fetched by those reads */
+	private long batchRecords = 0;
+	/** Number of records listed by the pool manifest (-1 when the pool was not warmed) */
+	private int warmRequested = -1;
+	/** Number of records added to the pool from the manifest */
+	private long warmedRecords = 0;
+
 	/**
 	 * Constructor for the buffer pool class. Constructs a normal buffer pool with capacity 20.
 	 */
 	public BufferPool(File databaseFile)
 	{
-		stringList = new ArrayList<String>();
+		this(databaseFile, null);
+	}
+
+	/**
+	 * Constructs a buffer pool with capacity 20 that knows the length of every record in the database file.
+	 *
+	 * @param databaseFile The database file that contains all of the imported records
+	 * @param lengths Byte length of each record keyed by its offset (may be null)
+	 */
+	public BufferPool(File databaseFile, OffsetTable lengths)
+	{
+		this(databaseFile, lengths, DEFAULT_CAPACITY, DEFAULT_POLICY);
+	}
+
+	/**
+	 * @param databaseFile The database file that contains all of the imported records
+	 * @param lengths Byte length of each record keyed by its offset (may be null)
+	 * @param capacity The maximum number of records buffered at once (at least 1)
+	 * @param policyName Name of the eviction policy: lru, clock, 2q or tinylfu
+	 * @throws IllegalArgumentException If the capacity is below 1 or the policy is unknown
+	 */
+	public BufferPool(File databaseFile, OffsetTable lengths, int capacity, String policyName)
+	{
+		this(databaseFile, lengths, capacity, policyName, DEFAULT_DECODED_BUDGET);
+	}
+
+	/**
+	 * @param databaseFile The database file that contains all of the imported records
+	 * @param lengths Byte length of each record keyed by its offset (may be null)
+	 * @param capacity The maximum number of records buffered at once (at least 1)
+	 * @param policyName Name of the eviction policy: lru, clock, 2q or tinylfu
+	 * @param decodedBudget Most bytes of decoded records kept by the pool (0 keeps none)
+	 * @throws IllegalArgumentException If the capacity is below 1, the budget is negative or the policy is unknown
+	 */
+	public BufferPool(File databaseFile, OffsetTable lengths, int capacity, String policyName, long decodedBudget)
+	{
+		if (capacity < 1) throw new IllegalArgumentException("Error: Buffer pool capacity must be at least 1.");
+		if (decodedBudget < 0) throw new IllegalArgumentException("Error: Decoded record budget must not be negative.");
+		POOL_CAPACITY = capacity;
+		DECODED_BUDGET = decodedBudget;
+		policy = createPolicy(policyName, capacity);
+		slotOffsets = new long[capacity];
+		slotLines = new String[capacity];
+		slotRecords = new Record[capacity];
+		slotRecordSizes = new int[capacity];
+		decoded = new SlotList(capacity);
+		slotIndex = new OffsetTable(capacity);
 		dbFile = databaseFile;
+		recordLengths = lengths;
+	}
+
+	/**
+	 * @param policyName Name of an eviction policy: lru, clock, 2q or tinylfu
+	 * @param capacity Number of slots in the pool
+	 * @return A new policy for a pool of the given capacity
+	 * @throws IllegalArgumentException If the policy is unknown
+	 */
+	public static EvictionPolicy createPolicy(String policyName, int capacity)
+	{
+		if (policyName.equalsIgnoreCase("lru")) return new LruPolicy(capacity);
+		else if (policyName.equalsIgnoreCase("clock")) return new ClockPolicy(capacity);
+		else if (policyName.equalsIgnoreCase("2q")) return new TwoQueuePolicy(capacity);
+		else if (policyName.equalsIgnoreCase("tinylfu")) return new TinyLfuPolicy(capacity);
+		throw new IllegalArgumentException("Error: Unknown buffer pool policy \"" + policyName + "\" (expected lru, clock, 2q or tinylfu).");
 	}
 
 	/**
 	 * @param recordString The string representing a raw record that will be added to the buffer
 	 * @return A boolean value indicating the success of adding to the buffer<p>
-	 * 
+	 *
 	 * <b>Format of string:</b> (offset):(tab)(record string)
 	 */
 	public boolean addRecordString(String recordString)
 	{
 		// Only add if the string conforms to the specified format
-		if (recordString.contains(":\t"))
+		int separator = recordString.indexOf(":\t");
+		if (separator > 0)
 		{
-			if (stringList.size() < POOL_CAPACITY) {
-				stringList.add(0,recordString);
-				return true;
-			} else 
-			{ // Need to remove LRU string
-				stringList.remove(POOL_CAPACITY - 1);
-				stringList.add(0,recordString);
+			try {
+				addRecord(Long.parseLong(recordString.substring(0, separator)), recordString.substring(separator + 2));
 				return true;
 			}
+			catch (NumberFormatException e) {
+				// Falls through to the format error below
+			}
+		}
+		System.err.println("Error: Format of string to buffer is invalid.");
+		return false;
+	}
+
+	/**
+	 * Buffers a record, replacing the record chosen by the policy when the pool is full.
+	 * The record is not buffered if the policy does not admit it.
+	 *
+	 * @param offset Offset of the record in the database file
+	 * @param line The record line as stored in the database file
+	 * @return The slot that holds the record, or -1 if it was not admitted
+	 */
+	private int addRecord(long offset, String line)
+	{
+		int slot = slotIndex.get(offset);
+		if (slot >= 0)
+		{
+			bytesHeld += line.length() - lineLength(slot);
+			clearLine(slot);
+			setLine(slot, line);
+			dropDecoded(slot);
+			policy.recordHit(slot);
+			return slot;
 		}
-		else {
-			System.err.println("Error: Format of string to buffer is invalid.");
-			return false;
+
+		if (size < POOL_CAPACITY) slot = size++;
+		else
+		{ // Need to replace the record chosen by the policy
+			slot = policy.victim();
+			if (!policy.admit(offset, slotOffsets[slot])) {
+				rejections++;
+				return -1;
+			}
+			policy.remove(slot);
+			slotIndex.remove(slotOffsets[slot]);
+			dropDecoded(slot);
+			bytesHeld -= lineLength(slot);
+			clearLine(slot);
+			evictions++;
 		}
+		slotOffsets[slot] = offset;
+		setLine(slot, line);
+		slotIndex.put(offset, slot);
+		bytesHeld += line.length();
+		policy.recordInsert(slot, offset);
+		return slot;
+	}
+
+	/**
+	 * @param slot An unused slot
+	 * @param line Record line to be buffered in the slot
+	 */
+	private void setLine(int slot, String line)
+	{
+		if (offHeap != null) slotHandles[slot] = offHeap.put(line);
+		else slotLines[slot] = line;
+	}
+
+	/**
+	 * @param slot Slot whose line is no longer buffered
+	 */
+	private void clearLine(int slot)
+	{
+		if (offHeap != null) offHeap.free(slotHandles[slot]);
+		else slotLines[slot] = null;
+	}
+
+	/**
+	 * @param slot A slot in use
+	 * @return The record line buffered in the slot
+	 */
+	private String lineOf(int slot)
+	{
+		return (offHeap != null) ? offHeap.getLine(slotHandles[slot]) : slotLines[slot];
+	}
+
+	/**
+	 * @param slot A slot in use
+	 * @return The number of characters in the record line buffered in the slot
+	 */
+	private int lineLength(int slot)
+	{
+		return (offHeap != null) ? offHeap.length(slotHandles[slot]) : slotLines[slot].length();
+	}
+
+	/**
+	 * @param slot A slot in use
+	 * @return The record decoded from the line buffered in the slot
+	 */
+	private Record decodeSlot(int slot)
+	{
+		if (offHeap == null) return new Record(recordFields.reset(slotLines[slot]));
+		
+		// Copy the bytes out of the direct buffer and split them without building a string of the whole line
+		int length = offHeap.length(slotHandles[slot]);
+		if (length > lineBytes.length) lineBytes = new byte[Math.max(length, lineBytes.length * 2)];
+		offHeap.read(slotHandles[slot], lineBytes);
+		return new Record(recordFields.reset(lineBytes, 0, length));
+	}
+
+	/**
+	 * Keeps the decoded record of a slot as the most recently used one, dropping the least recently used
+	 * decoded records while the budget is exceeded.
+	 *
+	 * @param slot Slot that holds the line of the record
+	 * @param record The record decoded from that line
+	 */
+	private void keepDecoded(int slot, Record record)
+	{
+		long size = record.estimatedSize();
+		if (size > DECODED_BUDGET) return;
+		while (decodedBytes + size > DECODED_BUDGET) dropDecoded(decoded.last());
+		
+		slotRecords[slot] = record;
+		slotRecordSizes[slot] = (int) size;
+		decodedBytes += size;
+		decoded.addFirst(slot);
+	}
+
+	/**
+	 * @param slot Slot whose decoded record, if any, is dropped (its line stays buffered)
+	 */
+	private void dropDecoded(int slot)
+	{
+		if (slotRecords[slot] == null) return;
+		decoded.remove(slot);
+		decodedBytes -= slotRecordSizes[slot];
+		slotRecords[slot] = null;
+	}
+
+	/**
+	 * @param desiredOffset Offset value in the database file where the desired record is found
+	 * @return The desired record at the provided offset or null if the offset value wasnt found
+	 */
+	public Record grabRecordWithOffset(String desiredOffset)
+	{
+		return grabRecordWithOffset(Long.parseLong(desiredOffset));
 	}
 
 	/**
 	 * @param desiredOffset Offset value in the database file where the desired record is found
 	 * @return The desired record at the provided offset or null if the offset value wasnt found
 	 */
-	public Record grabRecordWithOffset(String desiredOffset) 
+	public Record grabRecordWithOffset(long desiredOffset)
 	{
-		if (stringList != null && stringList.size() > 0)
+		return grabRecordWithOffset(desiredOffset, null, null);
+	}
+
+	/**
+	 * Looks up the records at several offsets. The records that are not buffered are first read in file order,
+	 * with records that lie close together fetched by a single read; the lookups are then made in the order of the
+	 * offsets, so the pool ends up exactly as it would after one grabRecordWithOffset() call per offset.
+	 *
+	 * @param offsets Offsets in the database file of the desired records
+	 * @return The record at each offset, in the order of the offsets (null for offsets where no record was found)
+	 */
+	public Record[] grabRecordsWithOffsets(Vector<Long> offsets)
+	{
+		long[] array = new long[offsets.size()];
+		for (int i = 0; i < array.length; i++) array[i] = offsets.get(i);
+		return grabRecordsWithOffsets(array);
+	}
+
+	/**
+	 * @param offsets Offsets in the database file of the desired records
+	 * @return The record at each offset, in the order of the offsets (null for offsets where no record was found)
+	 * @see #grabRecordsWithOffsets(Vector)
+	 */
+	public Record[] grabRecordsWithOffsets(long[] offsets)
+	{
+		if (warmer != null) installWarmed();
+		OffsetTable fetchedIndex = new OffsetTable(offsets.length);
+		String[] fetchedLines = fetchMissing(offsets, fetchedIndex);
+
+		Record[] records = new Record[offsets.length];
+		for (int i = 0; i < offsets.length; i++) records[i] = grabRecordWithOffset(offsets[i], fetchedLines, fetchedIndex);
+		return records;
+	}
+
+	/**
+	 * Reads the lines of the records that are not buffered, sorted by offset. Neighbouring records are read together
+	 * as long as the gap between them is at most MAX_READ_GAP bytes and the read stays within MAX_READ_SIZE bytes.
+	 *
+	 * @param offsets Offsets of the desired records
+	 * @param fetchedIndex Table that receives the position in the returned array of the line read for each offset
+	 * @return The lines that were read, or null if they could not be read (the lookups then read each record on its own)
+	 */
+	private String[] fetchMissing(long[] offsets, OffsetTable fetchedIndex)
+	{
+		if (recordLengths == null) return null;
+
+		// Only records of known length that are not buffered, each offset once, in file order
+		long[] missing = new long[offsets.length];
+		int count = 0;
+		for (long offset : offsets) 
+		{
+			if (slotIndex.get(offset) < 0 && recordLengths.get(offset) >= 0) missing[count++] = offset;
+		}
+		Arrays.sort(missing, 0, count);
+		String[] lines = new String[count];
+		int lineCount = 0;
+
+		try
 		{
-			for (int i = 0; i < stringList.size(); i++)
+			if (dbSource == null) dbSource = new MappedDatabaseFile(dbFile);
+			
+			int first = 0;
+			while (first < count)
 			{
-				String[] partsStrings = stringList.get(i).split(":\t");
-				if (partsStrings[0].equals(desiredOffset)) 
+				// Extend the read over the following records while they are close enough
+				long start = missing[first];
+				long end = start + recordLengths.get(start);
+				int last = first;
+				while (last + 1 < count)
 				{
-					// Move the matching string to the front
-					String orig = stringList.get(i);
-					stringList.remove(i);
-					stringList.add(0,orig);
+					long next = missing[last + 1];
+					long nextEnd = next + recordLengths.get(next);
+					if (next - end > MAX_READ_GAP || nextEnd - start > MAX_READ_SIZE) break;
+					end = Math.max(end, nextEnd);
+					last++;
+				}
 
-					// Return the record corresponding to the buffered record string
-					return new Record(partsStrings[1].split("\\|"));
+				byte[] span = new byte[(int) (end - start)];
+				dbSource.read(start, span, 0, span.length);
+				batchReads++;
+				for (int i = first; i <= last; i++) 
+				{
+					if (i > first && missing[i] == missing[i - 1]) continue; // Repeated offset
+					lines[lineCount] = new String(span, (int) (missing[i] - start), recordLengths.get(missing[i]), StandardCharsets.ISO_8859_1);
+					fetchedIndex.put(missing[i], lineCount++);
 				}
+				first = last + 1;
+			}
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+			fetchedIndex.clear();
+			return null;
+		}
+		batchRecords += lineCount;
+		return lines;
+	}
+
+	/**
+	 * @param desiredOffset Offset value in the database file where the desired record is found
+	 * @param fetchedLines Lines already read for a batch (may be null)
+	 * @param fetchedIndex Position in fetchedLines of the line of each offset (may be null)
+	 * @return The desired record at the provided offset or null if the offset value wasnt found
+	 */
+	private Record grabRecordWithOffset(long desiredOffset, String[] fetchedLines, OffsetTable fetchedIndex)
+	{
+		if (warmer != null) installWarmed();
+		policy.recordAccess(desiredOffset);
+		int slot = slotIndex.get(desiredOffset);
+		if (slot >= 0)
+		{
+			hits++;
+			policy.recordHit(slot);
+			
+			// Hand out the decoded record when it is still kept, otherwise decode the buffered string again
+			if (slotRecords[slot] != null) {
+				decodedHits++;
+				decoded.moveToFront(slot);
+				return slotRecords[slot];
+			}
+			Record record = decodeSlot(slot);
+			keepDecoded(slot, record);
+			return record;
+		}
+		misses++;
+		int fetched = (fetchedIndex != null) ? fetchedIndex.get(desiredOffset) : -1;
+		if (fetched >= 0) return addFromDB(desiredOffset, fetchedLines[fetched]);
+		if (prefetcher != null)
+		{
+			try {
+				String line = prefetcher.take(desiredOffset);
+				if (line != null) return addFromDB(desiredOffset, line);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
 			}
 		}
-		return getFromDB_at(Long.parseLong(desiredOffset));
+		return getFromDB_at(desiredOffset);
 	}
 
 	/**
 	 * @param offset Offset at which to find the record line in the Database file
 	 * @return The record found in the Database or null if none were found
 	 */
-	private Record getFromDB_at(Long offset)
+	private Record getFromDB_at(long offset)
 	{
-		try 
+		try
 		{
-			// Create a RAF that only allows reading of the file
-			RandomAccessFile recordRAF = new RandomAccessFile(dbFile, "r");
+			// Map the database file the first time it is needed, the mapping follows later imports
+			if (dbSource == null) dbSource = new MappedDatabaseFile(dbFile);
 
-			// Move the file pointer to the start of the record line
-			recordRAF.seek(offset);
-			String readLine = recordRAF.readLine();
-			
-			// Buffer the string in case we need to use again
-			addRecordString(offset.toString() + ":\t" + readLine);
-			
-			// Construct a new record from this string
-			Record record = new Record(readLine.split("\\|"));
-			
-			recordRAF.close();
-			return record;
-			
-		} catch (IOException e) 
+			// Copy exactly the bytes of the record when its length is known, otherwise scan for the end of the line
+			int length = (recordLengths != null) ? recordLengths.get(offset) : -1;
+			String readLine;
+			if (length >= 0) {
+				byte[] line = new byte[length];
+				dbSource.read(offset, line, 0, length);
+				readLine = new String(line, 0, length, StandardCharsets.ISO_8859_1);
+			}
+			else readLine = dbSource.readLine(offset);
+			if (readLine == null) return null;
+			return addFromDB(offset, readLine);
+
+		} catch (IOException e)
 		{
 			e.printStackTrace();
 			return null;
@@ -121,37 +527,232 @@ public class BufferPool
 
 	}
 
+	/**
+	 * @param offset Offset of a record that was read from the database file
+	 * @param readLine The record line found at the offset
+	 * @return The record decoded from the line
+	 */
+	private Record addFromDB(long offset, String readLine)
+	{
+		// Construct a new record from this string
+		Record record = new Record(recordFields.reset(readLine));
+
+		// Buffer the string and the record in case we need to use again
+		int slot = addRecord(offset, readLine);
+		if (slot >= 0) keepDecoded(slot, record);
+		return record;
+	}
+
+	/**
+	 * Reads the records that are not buffered through a cache of database file pages instead of a memory mapping,
+	 * so that neighbouring records are served by a single read of their page.
+	 *
+	 * @param pageSize Number of bytes in a page (a power of two from 4 KB to 64 KB)
+	 * @param pageCount Number of pages held at once
+	 * @throws IOException If the database file could not be opened
+	 * @throws IllegalArgumentException If the page size or count is invalid
+	 */
+	public void useBlockCache(int pageSize, int pageCount) throws IOException
+	{
+		BlockCache cache = new BlockCache(dbFile, pageSize, pageCount);
+		if (dbSource != null) dbSource.close();
+		blockCache = cache;
+		dbSource = cache;
+	}
+
+	/**
+	 * Keeps the record lines as raw bytes in direct buffers outside of the Java heap instead of as strings.
+	 * Must be called before any record is buffered.
+	 *
+	 * @throws IllegalStateException If the pool already holds records
+	 */
+	public void useOffHeapStore()
+	{
+		if (size > 0) throw new IllegalStateException("Error: The buffer pool must be empty to keep its records off heap.");
+		if (offHeap != null) return;
+		offHeap = new OffHeapLineStore();
+		slotHandles = new long[POOL_CAPACITY];
+		slotLines = null;
+	}
+
+	/**
+	 * Reads the records of search results on background threads once prefetch() is called.
+	 * Nothing is prefetched when the record lengths are unknown.
+	 *
+	 * @param readerCount Number of reader threads, which is the number of reads in flight at once
+	 * @param maxBytes Most bytes of records that may be read ahead of the lookups
+	 * @throws IOException If the database file could not be opened
+	 * @throws IllegalArgumentException If the reader count or the memory limit is not positive
+	 */
+	public void usePrefetcher(int readerCount, long maxBytes) throws IOException
+	{
+		if (recordLengths == null) return;
+		Prefetcher newPrefetcher = new Prefetcher(dbFile, recordLengths, readerCount, maxBytes);
+		if (prefetcher != null) prefetcher.close();
+		prefetcher = newPrefetcher;
+	}
+
+	/**
+	 * Starts reading the records at the given offsets that are not buffered on the background threads.
+	 * The records are then looked up with grabRecordWithOffset() in the same order, and endPrefetch()
+	 * is called once they have all been looked up.
+	 *
+	 * @param offsets Offsets of the records that are about to be looked up, in lookup order
+	 * @return True if the records are being prefetched, false if there is no prefetcher
+	 */
+	public boolean prefetch(Vector<Long> offsets)
+	{
+		if (prefetcher == null) return false;
+		if (warmer != null) installWarmed();
+		long[] missing = new long[offsets.size()];
+		int count = 0;
+		for (Long offset : offsets) 
+		{
+			if (slotIndex.get(offset) < 0) missing[count++] = offset;
+		}
+		prefetcher.start(Arrays.copyOf(missing, count));
+		return true;
+	}
+
+	/**
+	 * Starts loading the records listed by a pool manifest on a background thread. Only as many records as the pool
+	 * holds are loaded, the most valuable first; nothing is loaded when the record lengths are unknown.
+	 *
+	 * @param offsets Offsets of the records to be loaded, the most valuable first
+	 * @throws IOException If the database file could not be opened
+	 */
+	public void warm(long[] offsets) throws IOException
+	{
+		if (recordLengths == null) return;
+		if (warmer != null) warmer.close();
+		offsets = Arrays.copyOf(offsets, Math.min(offsets.length, POOL_CAPACITY));
+		warmer = new PoolWarmer(dbFile, recordLengths, offsets);
+		warmRequested = warmer.getRecordCount();
+	}
+
+	/**
+	 * Adds the lines read by the warmer so far to the free slots of the pool.
+	 */
+	private void installWarmed()
+	{
+		PoolWarmer.Batch batch;
+		while (size < POOL_CAPACITY && (batch = warmer.poll()) != null)
+		{
+			for (int i = 0; i < batch.offsets.length && size < POOL_CAPACITY; i++)
+			{
+				if (batch.lines[i] == null || slotIndex.get(batch.offsets[i]) >= 0) continue;
+				addRecord(batch.offsets[i], batch.lines[i]);
+				warmedRecords++;
+			}
+		}
+		
+		// Stop once every line was added or the pool is full, warmed records never replace looked up ones
+		if (size >= POOL_CAPACITY || warmer.isDone()) {
+			warmer.close();
+			warmer = null;
+		}
+	}
+
+	/**
+	 * @return The offsets of the buffered records in the order of the policy, the record kept longest first
+	 */
+	public long[] getHotOffsets()
+	{
+		if (warmer != null) installWarmed();
+		int[] order = policy.order();
+		long[] offsets = new long[order.length];
+		for (int i = 0; i < order.length; i++) offsets[i] = slotOffsets[order[i]];
+		return offsets;
+	}
+
+	/**
+	 * Drops the prefetched records that were not looked up.
+	 */
+	public void endPrefetch()
+	{
+		if (prefetcher != null) prefetcher.finish();
+	}
+
+	/**
+	 * Releases the mapping or the block cache of the database file and stops the prefetcher and the warmer.
+	 */
+	public void close()
+	{
+		if (warmer != null) warmer.close();
+		warmer = null;
+		try {
+			if (dbSource != null) dbSource.close();
+			dbSource = null;
+			blockCache = null;
+			if (prefetcher != null) prefetcher.close();
+			prefetcher = null;
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * @return The maximum number of records buffered at once
+	 */
+	public int getCapacity() {
+		return POOL_CAPACITY;
+	}
+
+	/**
+	 * @return The name of the eviction policy
+	 */
+	public String getPolicyName() {
+		return policy.getName();
+	}
+
 	/**
 	 * Prints the contents (buffered elements) of the pool
 	 */
-	public void printPool() 
+	public void printPool()
 	{
-		for (String elem : stringList)
+		for (int slot : policy.order())
 		{
-			System.out.println(elem + "\n");			
+			System.out.println(slotOffsets[slot] + ":\t" + lineOf(slot) + "\n");
 		}
 	}
 
 	/**
 	 * @param writer The writer with a reference to the file that will receive the output of the pool
 	 */
-	public void printToFile(FileWriter writer)
+	public void printToFile(Writer writer)
 	{
 		try {
-			
-			writer.write("MRU\n"); // Header information for print out
-			// Iterate over all the buffered strings
-			for (String elem : stringList)
+			// The lru order is labeled as before, other policies list the records they keep longest first
+			boolean lru = policy instanceof LruPolicy;
+			writer.write(lru ? "MRU\n" : "Kept longest\n"); // Header information for print out
+
+			// Iterate over all the buffered strings in the order of the policy
+			for (int slot : policy.order())
 			{
-				writer.write(elem + "\n");
-				writer.flush();
+				writer.write(slotOffsets[slot] + ":\t" + lineOf(slot) + "\n");
 			}
-			writer.write("LRU\n");
-			writer.flush();
+			writer.write(lru ? "LRU\n" : "Replaced next\n");
+
+			// Statistics of the pool since it was created
+			long lookups = hits + misses;
+			writer.write("Pool policy: " + policy.getName() + ", capacity: " + POOL_CAPACITY + ", records held: " + size
+					+ ", bytes held: " + bytesHeld + "\n");
+			writer.write("Pool lookups: " + lookups + ", hits: " + hits
+					+ String.format(" (%.1f%%)", lookups == 0 ? 0.0 : 100.0 * hits / lookups) + ", misses: " + misses
+					+ ", evictions: " + evictions + ", rejected: " + rejections + "\n");
+			writer.write("Pool decoded records: " + decoded.size() + ", decoded bytes: " + decodedBytes + " of " + DECODED_BUDGET 
+					+ ", decoded hits: " + decodedHits + "\n");
+			writer.write("Pool batch reads: " + batchReads + " for " + batchRecords + " records\n");
+			if (offHeap != null) writer.write("Pool off-heap bytes stored: " + offHeap.getBytesStored() + ", direct bytes allocated: " 
+					+ offHeap.getBytesAllocated() + "\n");
+			if (blockCache != null) writer.write(blockCache.getStatistics() + "\n");
+			if (prefetcher != null) writer.write(prefetcher.getStatistics() + "\n");
+			if (warmRequested >= 0) writer.write("Pool warm start: " + warmedRecords + " records added of " + warmRequested + " in the manifest\n");
 		}
 		catch (IOException e) {
 			e.printStackTrace();
-		}	
+		}
 	}
 
 }
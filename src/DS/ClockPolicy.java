@@ -0,0 +1,130 @@
+package DS;
+
+/**
+ * CLOCK (second chance) replacement: a hit only sets the reference bit of its slot, so hits cost no list updates.
+ * To find a victim the hand sweeps over the slots in a circle, clearing the reference bits it passes, and stops
+ * at the first slot whose bit is already clear. New records start with a clear bit, so a record that is read
+ * only once is replaced before records that were used again.
+ */
+public class ClockPolicy implements EvictionPolicy 
+{
+	/** Set for slots that hold a record */
+	private boolean[] occupied;
+	/** Set for slots that were hit since the hand last passed them */
+	private boolean[] referenced;
+	/** Slot the hand examines next */
+	private int hand = 0;
+
+	/**
+	 * @param capacity Number of slots in the pool
+	 */
+	public ClockPolicy(int capacity)
+	{
+		occupied = new boolean[capacity];
+		referenced = new boolean[capacity];
+	}
+
+	/**
+	 * @return The name of the policy, "clock"
+	 */
+	@Override
+	public String getName() {
+		return "clock";
+	}
+
+	/**
+	 * Lookups of records that are not buffered are not tracked.
+	 * 
+	 * @param offset Offset of the record that was looked up
+	 */
+	@Override
+	public void recordAccess(long offset) {
+	}
+
+	/**
+	 * Sets the reference bit of the slot.
+	 * 
+	 * @param slot Slot of the buffered record that was just used
+	 */
+	@Override
+	public void recordHit(int slot) {
+		referenced[slot] = true;
+	}
+
+	/**
+	 * New records start with a clear reference bit.
+	 * 
+	 * @param slot Empty slot that now holds a new record
+	 * @param offset Offset of the new record
+	 */
+	@Override
+	public void recordInsert(int slot, long offset) {
+		occupied[slot] = true;
+		referenced[slot] = false;
+	}
+
+	/**
+	 * Moves the hand to the first slot in use whose reference bit is clear, clearing the bits it passes.
+	 * 
+	 * @return The slot under the hand
+	 */
+	@Override
+	public int victim() 
+	{
+		// Every slot is passed at most once with its bit set, so the sweep ends within two turns
+		while (!occupied[hand] || referenced[hand])
+		{
+			referenced[hand] = false;
+			hand = (hand + 1) % occupied.length;
+		}
+		return hand;
+	}
+
+	/**
+	 * Empties the slot and moves the hand past it if it is under the hand.
+	 * 
+	 * @param slot Slot whose record is being dropped from the pool
+	 */
+	@Override
+	public void remove(int slot) 
+	{
+		occupied[slot] = false;
+		referenced[slot] = false;
+		if (slot == hand) hand = (hand + 1) % occupied.length;
+	}
+
+	/**
+	 * Every new record is buffered.
+	 * 
+	 * @param candidateOffset Offset of a record that is not buffered
+	 * @param victimOffset Offset of the record that would be replaced to buffer it
+	 * @return Always true
+	 */
+	@Override
+	public boolean admit(long candidateOffset, long victimOffset) {
+		return true;
+	}
+
+	/**
+	 * @return The referenced slots followed by the others, each group in the order the hand reaches them last to first
+	 */
+	@Override
+	public int[] order() 
+	{
+		// Referenced slots survive the next sweep, then the slots the hand reaches last
+		int count = 0;
+		for (boolean inUse : occupied) if (inUse) count++;
+		int[] order = new int[count];
+		int position = 0;
+		for (int pass = 0; pass < 2; pass++)
+		{
+			for (int i = 1; i <= occupied.length; i++)
+			{
+				int slot = (hand - i + occupied.length) % occupied.length;
+				if (occupied[slot] && referenced[slot] == (pass == 0)) order[position++] = slot;
+			}
+		}
+		return order;
+	}
+
+}
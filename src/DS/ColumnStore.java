@@ -0,0 +1,563 @@
+package DS;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import Parsers.RecordParser;
+import Parsers.RecordTokenizer;
+
+/**
+ * The purpose of this class is to keep a binary, column oriented copy of the records in the database file.
+ * Coordinates and elevations are kept as fixed width ints, the state, county, class and map name are
+ * dictionary encoded and the feature names are packed into one byte heap.  Commands that only print a
+ * few fields of a record can format them straight from the columns instead of reading and splitting the
+ * whole text record.  The columns are kept in memory, and after every import the rows added since the
+ * previous write are appended to a binary file as one batch.  The header counts only the rows of
+ * complete batches, and it is updated after the batch is on disk, so an interrupted append is ignored
+ * and cut off by the next write.
+ *
+ * <b>Format of file:</b> magic, version, row count, length of the file in bytes, then the batches. A batch holds
+ * its row count, offsets, latitudes, longitudes and elevations (meters, feet), then for each of the state, county,
+ * class and map name columns the values first seen in the batch and the codes of its rows, then the length of
+ * each feature name and the bytes of the names.
+ */
+public class ColumnStore
+{
+	/** Identifies a column store file ("GISC") */
+	private static final int MAGIC = 0x47495343;
+	/** Version of the file format */
+	private static final int VERSION = 2;
+	/** Position of the row count in the file header */
+	private static final int ROW_COUNT_POSITION = 8;
+	/** Number of bytes of the file header */
+	private static final int HEADER_LENGTH = 20;
+	/** Stored in a numeric column when the field is empty or cannot be reproduced from the number */
+	public static final int NO_VALUE = Integer.MIN_VALUE;
+
+	/** Fields of a record line that are kept in the columns */
+	private static final int CLASS_FIELD = 2;
+	private static final int COUNTY_FIELD = 5;
+	private static final int ELEVATION_METERS_FIELD = 15;
+	private static final int ELEVATION_FEET_FIELD = 16;
+	private static final int MAP_NAME_FIELD = 17;
+	/** Number of fields in a well formed record line */
+	private static final int NUMBER_OF_FIELDS = 19;
+
+	/** The binary file that the columns are written to */
+	private File columnFile;
+	/** Number of records held in the columns */
+	private int rowCount = 0;
+	/** Number of records held in the column file */
+	private int writtenRows = 0;
+	/** Length of the column file up to the end of its last complete batch */
+	private long writtenLength = 0;
+
+	/** Database file offset of each row (ascending, so rows are found with a binary search) */
+	private long[] offsets = new long[1024];
+	/** Primary latitude and longitude of each row in seconds */
+	private int[] latitudes = new int[1024];
+	private int[] longitudes = new int[1024];
+	/** Elevation of each row in meters and in feet */
+	private int[] elevationMeters = new int[1024];
+	private int[] elevationFeet = new int[1024];
+	/** Dictionary encoded text columns */
+	private Dictionary states = new Dictionary();
+	private Dictionary counties = new Dictionary();
+	private Dictionary classes = new Dictionary();
+	private Dictionary mapNames = new Dictionary();
+	/** Position of each feature name inside of the name heap, row i ends where row i+1 starts */
+	private int[] nameStarts = new int[1025];
+	/** Bytes of every feature name */
+	private byte[] nameHeap = new byte[16 * 1024];
+
+	/** Builder reused to format coordinates */
+	private StringBuilder coordinateBuilder = new StringBuilder();
+
+	/**
+	 * @param columnFile The binary file that the columns will be written to
+	 */
+	public ColumnStore(File columnFile)
+	{
+		this.columnFile = columnFile;
+	}
+
+	/**
+	 * @param fields Tokenizer positioned over a record line
+	 * @param offset Offset of the record line inside of the database file
+	 * @return True if the record was added, false if the line is not a well formed record (it is then only kept as text)
+	 */
+	public boolean add(RecordTokenizer fields, long offset)
+	{
+		int fieldCount = fields.getSplitFieldCount();
+		if (fieldCount != NUMBER_OF_FIELDS && fieldCount != NUMBER_OF_FIELDS + 1) return false;
+		if (rowCount > 0 && offset <= offsets[rowCount - 1]) return false; // Rows must stay sorted by offset
+
+		if (rowCount == offsets.length) grow();
+
+		offsets[rowCount] = offset;
+		latitudes[rowCount] = coordinateColumn(fields, RecordParser.LATITUDE_FIELD, true);
+		longitudes[rowCount] = coordinateColumn(fields, RecordParser.LONGITUDE_FIELD, false);
+		elevationMeters[rowCount] = numberColumn(fields.getField(ELEVATION_METERS_FIELD));
+		elevationFeet[rowCount] = numberColumn(fields.getField(ELEVATION_FEET_FIELD));
+		states.add(fields.getField(RecordParser.STATE_FIELD));
+		counties.add(fields.getField(COUNTY_FIELD));
+		classes.add(fields.getField(CLASS_FIELD));
+		mapNames.add(fields.getField(MAP_NAME_FIELD));
+		appendName(fields);
+
+		rowCount++;
+		return true;
+	}
+
+	/**
+	 * @param offset Offset of a record inside of the database file
+	 * @return The row that holds the record, or -1 if the record is not in the columns
+	 */
+	public int rowOf(long offset)
+	{
+		int row = Arrays.binarySearch(offsets, 0, rowCount, offset);
+		return (row >= 0) ? row : -1;
+	}
+
+	/**
+	 * Formats a record with one of the short print formats of Record.printToFile().
+	 *
+	 * @param offset Offset of the record inside of the database file
+	 * @param mode The print format ("Simple", "NameAndLocation" or "SimpleWithCoords")
+	 * @return The formatted line (with its terminator), or null if the columns cannot produce the format for the record
+	 */
+	public String formatRecord(long offset, String mode)
+	{
+		int row = rowOf(offset);
+		if (row < 0) return null;
+
+		if (mode.equalsIgnoreCase("Simple"))
+			return getFeatureName(row) + "\t" + counties.get(row) + "\t" + states.get(row) + "\n";
+
+		// The remaining formats print the coordinates
+		if (latitudes[row] == NO_VALUE || longitudes[row] == NO_VALUE) return null;
+		coordinateBuilder.setLength(0);
+		if (mode.equalsIgnoreCase("NameAndLocation"))
+		{
+			coordinateBuilder.append(counties.get(row)).append('\t');
+			RecordParser.appendLongitude(longitudes[row], coordinateBuilder);
+			coordinateBuilder.append(' ');
+			RecordParser.appendLatitude(latitudes[row], coordinateBuilder);
+			return coordinateBuilder.append('\n').toString();
+		}
+		else if (mode.equalsIgnoreCase("SimpleWithCoords"))
+		{
+			coordinateBuilder.append(getFeatureName(row)).append('\t').append(states.get(row)).append('\t');
+			RecordParser.appendLatitude(latitudes[row], coordinateBuilder);
+			coordinateBuilder.append('\t');
+			RecordParser.appendLongitude(longitudes[row], coordinateBuilder);
+			return coordinateBuilder.append('\n').toString();
+		}
+		return null;
+	}
+
+	/**
+	 * @param row Row of a record
+	 * @return The feature name of the record
+	 */
+	public String getFeatureName(int row)
+	{
+		return new String(nameHeap, nameStarts[row], nameStarts[row + 1] - nameStarts[row], StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * @return The number of records held in the columns
+	 */
+	public int size()
+	{
+		return rowCount;
+	}
+
+	/**
+	 * Appends the rows added since the previous write to the column file. A store that has not been written yet
+	 * is written to a temporary file first and then moved over the previous column file.
+	 *
+	 * @throws IOException If the column file could not be written
+	 */
+	public void write() throws IOException
+	{
+		if (writtenRows == 0 || !columnFile.exists()) writeWhole();
+		else if (rowCount > writtenRows) appendBatch();
+	}
+
+	/**
+	 * Writes every row to a new column file as a single batch.
+	 *
+	 * @throws IOException If the column file could not be written
+	 */
+	private void writeWhole() throws IOException
+	{
+		File tempFile = new File(columnFile.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 1 << 16));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(rowCount);
+			out.writeLong(0); // Length, known once the batch is written
+			if (rowCount > 0) writeBatch(out, 0, rowCount);
+		}
+		finally {
+			out.close();
+		}
+		long length = tempFile.length();
+		RandomAccessFile file = new RandomAccessFile(tempFile, "rw");
+		try {
+			file.seek(ROW_COUNT_POSITION + 4);
+			file.writeLong(length);
+		}
+		finally {
+			file.close();
+		}
+		Files.move(tempFile.toPath(), columnFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		markWritten(length);
+	}
+
+	/**
+	 * Appends the rows that are not in the column file yet as one batch, then counts them in the header.
+	 *
+	 * @throws IOException If the column file could not be written
+	 */
+	private void appendBatch() throws IOException
+	{
+		RandomAccessFile file = new RandomAccessFile(columnFile, "rw");
+		try {
+			// Drop whatever an interrupted append left past the last complete batch
+			file.setLength(writtenLength);
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(file.getChannel().position(writtenLength)), 1 << 16));
+			writeBatch(out, writtenRows, rowCount);
+			out.flush();
+			file.getChannel().force(false); // The batch is on disk before the header counts it
+
+			// The row count and the length are updated by a single write
+			long length = file.length();
+			file.seek(ROW_COUNT_POSITION);
+			file.write(ByteBuffer.allocate(HEADER_LENGTH - ROW_COUNT_POSITION).putInt(rowCount).putLong(length).array());
+			markWritten(length);
+		}
+		finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * @param out Stream the batch is written to
+	 * @param from First row of the batch
+	 * @param to Row after the last row of the batch
+	 * @throws IOException If the batch could not be written
+	 */
+	private void writeBatch(DataOutputStream out, int from, int to) throws IOException
+	{
+		out.writeInt(to - from);
+		for (int i = from; i < to; i++) out.writeLong(offsets[i]);
+		writeInts(out, latitudes, from, to);
+		writeInts(out, longitudes, from, to);
+		writeInts(out, elevationMeters, from, to);
+		writeInts(out, elevationFeet, from, to);
+		states.write(out, from, to);
+		counties.write(out, from, to);
+		classes.write(out, from, to);
+		mapNames.write(out, from, to);
+		for (int i = from; i < to; i++) out.writeInt(nameStarts[i + 1] - nameStarts[i]);
+		out.write(nameHeap, nameStarts[from], nameStarts[to] - nameStarts[from]);
+	}
+
+	/**
+	 * Records that every row and every dictionary value is in the column file.
+	 *
+	 * @param length Length of the column file
+	 */
+	private void markWritten(long length)
+	{
+		writtenRows = rowCount;
+		writtenLength = length;
+		states.markWritten();
+		counties.markWritten();
+		classes.markWritten();
+		mapNames.markWritten();
+	}
+
+	/**
+	 * Replaces the columns with the contents of the column file.
+	 *
+	 * @throws IOException If the column file is missing, could not be read or is not a column store file
+	 */
+	public void read() throws IOException
+	{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(columnFile), 1 << 16));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) throw new IOException("Error: \"" + columnFile + "\" is not a column store file.");
+			int rows = in.readInt();
+			long length = in.readLong();
+			if (rows < 0) throw new IOException("Error: Column store file has a negative row count.");
+			if (length < HEADER_LENGTH || length > columnFile.length()) throw new IOException("Error: Column store file is shorter than its header says.");
+
+			int capacity = Math.max(rows, 1024);
+			rowCount = 0;
+			offsets = new long[capacity];
+			latitudes = new int[capacity];
+			longitudes = new int[capacity];
+			elevationMeters = new int[capacity];
+			elevationFeet = new int[capacity];
+			states = new Dictionary();
+			counties = new Dictionary();
+			classes = new Dictionary();
+			mapNames = new Dictionary();
+			nameStarts = new int[capacity + 1];
+			nameHeap = new byte[16 * 1024];
+
+			// Only the batches counted by the header are read, anything after them is an interrupted append
+			while (rowCount < rows) readBatch(in, rows);
+			markWritten(length);
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Adds the rows of a batch written by writeBatch() to the columns.
+	 *
+	 * @param in Stream positioned at a batch
+	 * @param rows Number of rows counted by the header of the file
+	 * @throws IOException If the batch could not be read
+	 */
+	private void readBatch(DataInputStream in, int rows) throws IOException
+	{
+		int count = in.readInt();
+		if (count <= 0 || count > rows - rowCount) throw new IOException("Error: Column store file has an invalid batch of " + count + " rows.");
+		int from = rowCount;
+		int to = from + count;
+		for (int i = from; i < to; i++) offsets[i] = in.readLong();
+		readInts(in, latitudes, from, to);
+		readInts(in, longitudes, from, to);
+		readInts(in, elevationMeters, from, to);
+		readInts(in, elevationFeet, from, to);
+		states.read(in, from, to);
+		counties.read(in, from, to);
+		classes.read(in, from, to);
+		mapNames.read(in, from, to);
+
+		int heapEnd = nameStarts[from];
+		for (int i = from; i < to; i++)
+		{
+			int length = in.readInt();
+			if (length < 0) throw new IOException("Error: Column store file has a negative name length.");
+			nameStarts[i + 1] = nameStarts[i] + length;
+		}
+		if (nameStarts[to] > nameHeap.length) nameHeap = Arrays.copyOf(nameHeap, Math.max(nameHeap.length * 2, nameStarts[to]));
+		in.readFully(nameHeap, heapEnd, nameStarts[to] - heapEnd);
+		rowCount = to;
+	}
+
+	/**
+	 * @return The database file offset of the last row, or -1 if the columns are empty
+	 */
+	public long getLastOffset()
+	{
+		return (rowCount > 0) ? offsets[rowCount - 1] : -1;
+	}
+
+	/**
+	 * @param fields Tokenizer positioned over a record line
+	 * @param field Index of the coordinate field
+	 * @param isLatitude True for a latitude, false for a longitude
+	 * @return The coordinate in seconds, or NO_VALUE if the field does not hold a coordinate that formats back to the same text
+	 */
+	private int coordinateColumn(RecordTokenizer fields, int field, boolean isLatitude)
+	{
+		long seconds;
+		try {
+			seconds = isLatitude ? RecordParser.parseLatitude(fields, field) : RecordParser.parseLongitude(fields, field);
+		}
+		catch (NumberFormatException e) {
+			return NO_VALUE;
+		}
+
+		// Only keep the number when the printed coordinate would be exactly the text of the record (e.g. hemisphere case)
+		coordinateBuilder.setLength(0);
+		if (isLatitude) RecordParser.appendLatitude(seconds, coordinateBuilder);
+		else RecordParser.appendLongitude(seconds, coordinateBuilder);
+
+		int start = fields.getFieldStart(field);
+		if (fields.getFieldLength(field) != coordinateBuilder.length()) return NO_VALUE;
+		for (int i = 0; i < coordinateBuilder.length(); i++)
+			if (fields.charAt(start + i) != coordinateBuilder.charAt(i)) return NO_VALUE;
+		return (int) seconds;
+	}
+
+	/**
+	 * @param text Text of a numeric field
+	 * @return The number, or NO_VALUE if the field is empty or does not print back as the same text
+	 */
+	private static int numberColumn(String text)
+	{
+		if (text.length() == 0 || text.length() > 10) return NO_VALUE;
+		try {
+			int value = Integer.parseInt(text);
+			return (value != NO_VALUE && Integer.toString(value).equals(text)) ? value : NO_VALUE;
+		}
+		catch (NumberFormatException e) {
+			return NO_VALUE;
+		}
+	}
+
+	/**
+	 * @param fields Tokenizer positioned over a record line whose feature name is appended to the name heap
+	 */
+	private void appendName(RecordTokenizer fields)
+	{
+		int start = fields.getFieldStart(RecordParser.FEATURE_NAME_FIELD);
+		int length = fields.getFieldLength(RecordParser.FEATURE_NAME_FIELD);
+		int heapEnd = nameStarts[rowCount];
+		if (heapEnd + length > nameHeap.length) nameHeap = Arrays.copyOf(nameHeap, Math.max(nameHeap.length * 2, heapEnd + length));
+
+		if (fields.getBytes() != null) System.arraycopy(fields.getBytes(), start, nameHeap, heapEnd, length);
+		else for (int i = 0; i < length; i++) nameHeap[heapEnd + i] = (byte) fields.charAt(start + i);
+		nameStarts[rowCount + 1] = heapEnd + length;
+	}
+
+	/**
+	 * Doubles the capacity of every column.
+	 */
+	private void grow()
+	{
+		int capacity = offsets.length * 2;
+		offsets = Arrays.copyOf(offsets, capacity);
+		latitudes = Arrays.copyOf(latitudes, capacity);
+		longitudes = Arrays.copyOf(longitudes, capacity);
+		elevationMeters = Arrays.copyOf(elevationMeters, capacity);
+		elevationFeet = Arrays.copyOf(elevationFeet, capacity);
+		nameStarts = Arrays.copyOf(nameStarts, capacity + 1);
+	}
+
+	/**
+	 * @param out Stream the values are written to
+	 * @param values Column to be written
+	 * @param from First row to write
+	 * @param to Row after the last row to write
+	 * @throws IOException If the values could not be written
+	 */
+	private static void writeInts(DataOutputStream out, int[] values, int from, int to) throws IOException
+	{
+		for (int i = from; i < to; i++) out.writeInt(values[i]);
+	}
+
+	/**
+	 * @param in Stream the values are read from
+	 * @param values Column that receives the values (with room for them)
+	 * @param from First row to read
+	 * @param to Row after the last row to read
+	 * @throws IOException If the values could not be read
+	 */
+	private static void readInts(DataInputStream in, int[] values, int from, int to) throws IOException
+	{
+		for (int i = from; i < to; i++) values[i] = in.readInt();
+	}
+
+	/**
+	 * A text column where every distinct value is stored once and each row only keeps the code of its value.
+	 */
+	private static class Dictionary
+	{
+		/** Code of every distinct value */
+		private HashMap<String, Integer> codes = new HashMap<String, Integer>();
+		/** Distinct values in the order they were first seen (the code is the index) */
+		private ArrayList<String> values = new ArrayList<String>();
+		/** Code of the value of each row */
+		private int[] rows = new int[1024];
+		/** Number of rows in the column */
+		private int rowCount = 0;
+		/** Number of values that are in the column file */
+		private int writtenValues = 0;
+
+		/**
+		 * @param value Value of the next row
+		 */
+		public void add(String value)
+		{
+			Integer code = codes.get(value);
+			if (code == null) {
+				code = values.size();
+				codes.put(value, code);
+				values.add(value);
+			}
+			if (rowCount == rows.length) rows = Arrays.copyOf(rows, rowCount * 2);
+			rows[rowCount++] = code;
+		}
+
+		/**
+		 * @param row Row of a record
+		 * @return The value of the row
+		 */
+		public String get(int row)
+		{
+			return values.get(rows[row]);
+		}
+
+		/**
+		 * @param out Stream the values that are not in the column file yet and the codes of the rows are written to
+		 * @param from First row to write
+		 * @param to Row after the last row to write
+		 * @throws IOException If the column could not be written
+		 */
+		public void write(DataOutputStream out, int from, int to) throws IOException
+		{
+			out.writeInt(values.size() - writtenValues);
+			for (int i = writtenValues; i < values.size(); i++) out.writeUTF(values.get(i));
+			writeInts(out, rows, from, to);
+		}
+
+		/**
+		 * Records that every value is in the column file.
+		 */
+		public void markWritten()
+		{
+			writtenValues = values.size();
+		}
+
+		/**
+		 * Adds the values and the codes written by write() to the column.
+		 *
+		 * @param in Stream positioned at a column written by write()
+		 * @param from First row to read
+		 * @param to Row after the last row to read
+		 * @throws IOException If the column could not be read
+		 */
+		public void read(DataInputStream in, int from, int to) throws IOException
+		{
+			int added = in.readInt();
+			if (added < 0) throw new IOException("Error: Column store file has a negative number of dictionary values.");
+			for (int i = 0; i < added; i++) {
+				String value = in.readUTF();
+				codes.put(value, values.size());
+				values.add(value);
+			}
+			if (to > rows.length) rows = Arrays.copyOf(rows, Math.max(rows.length * 2, to));
+			readInts(in, rows, from, to);
+			rowCount = to;
+			for (int i = from; i < to; i++)
+				if (rows[i] < 0 || rows[i] >= values.size()) throw new IOException("Error: Column store file has an invalid dictionary code.");
+		}
+	}
+
+}
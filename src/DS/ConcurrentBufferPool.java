@@ -0,0 +1,478 @@
+package DS;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+import Parsers.RecordTokenizer;
+import Types.Record;
+
+/**
+ * The purpose of this class is to buffer the records that are retrieved from the database file for several
+ * threads at once. The pool is split into stripes and each offset belongs to one stripe, chosen by a hash of
+ * the offset. Every stripe has its own lock, offset table and least recently used list, so threads that look up
+ * offsets of different stripes never wait for each other and the pool as a whole is an approximate LRU.<p>
+ *
+ * Records are read outside of the stripe locks. Misses on the same offset that happen at the same time are
+ * collapsed into a single read of the database file: the first thread reads and decodes the record and the
+ * others wait for it. Reads use a channel of the database file, which is safe to read from several threads
+ * at once. The record lengths are only read, so they must not change while lookups are in progress.<p>
+ *
+ * The records of a pool manifest loaded by warm() are added by whichever thread looks up a record next,
+ * and only to stripes that still have free slots.
+ */
+public class ConcurrentBufferPool implements RecordPool
+{
+	/** Largest number of stripes */
+	public static final int MAX_STRIPES = 16;
+	/** Smallest number of records a stripe holds when the capacity allows it, so small pools use only one or two stripes */
+	public static final int MIN_STRIPE_CAPACITY = 8;
+
+	/**
+	 * Records buffered by one stripe, guarded by the lock of the stripe.
+	 */
+	private static final class Stripe
+	{
+		/** Offset of the record buffered in each slot */
+		final long[] offsets;
+		/** Record line buffered in each slot */
+		final String[] lines;
+		/** Decoded record of each slot */
+		final Record[] records;
+		/** Slot of each buffered record keyed by its offset */
+		final OffsetTable index;
+		/** Slots in use, from the most to the least recently used */
+		final SlotList lru;
+		/** Number of slots in use */
+		int size = 0;
+		/** Number of lookups answered from the stripe */
+		long hits = 0;
+		/** Number of lookups that did not find their record in the stripe */
+		long misses = 0;
+		/** Number of records replaced to make room for another */
+		long evictions = 0;
+		/** Number of record bytes held by the stripe */
+		long bytesHeld = 0;
+
+		/**
+		 * @param capacity The maximum number of records buffered by the stripe
+		 */
+		Stripe(int capacity)
+		{
+			offsets = new long[capacity];
+			lines = new String[capacity];
+			records = new Record[capacity];
+			index = new OffsetTable(capacity);
+			lru = new SlotList(capacity);
+		}
+	}
+
+	/** Stripes of the pool, the number of stripes is a power of two */
+	private final Stripe[] stripes;
+	/** log2 of the number of stripes */
+	private final int stripeBits;
+	/** The maximum number of records buffered at once */
+	private final int POOL_CAPACITY;
+	/** Reads of the database file in progress keyed by offset, the threads that miss on the same offset share them */
+	private final ConcurrentHashMap<Long, CompletableFuture<Record>> loading = new ConcurrentHashMap<Long, CompletableFuture<Record>>();
+	/** Tokenizer of each thread, reused to split the record lines it reads */
+	private final ThreadLocal<RecordTokenizer> recordFields = ThreadLocal.withInitial(RecordTokenizer::new);
+	/** The database file that contains all of the imported records */
+	private final File dbFile;
+	/** Byte length of each record keyed by its offset (may be null) */
+	private final OffsetTable recordLengths;
+	/** The database file, opened by the first read */
+	private RandomAccessFile file;
+	/** Channel used for the positional reads of every thread */
+	private volatile FileChannel channel;
+	/** Reads the records of a pool manifest on a background thread (null once they have all been added) */
+	private volatile PoolWarmer warmer;
+
+	/** Number of misses that waited for the read of another thread instead of reading the record themselves */
+	private final AtomicLong sharedMisses = new AtomicLong();
+	/** Number of records read from the database file */
+	private final AtomicLong diskReads = new AtomicLong();
+	/** Number of records listed by the pool manifest (-1 when the pool was not warmed) */
+	private volatile int warmRequested = -1;
+	/** Number of records added to the pool from the manifest */
+	private final AtomicLong warmedRecords = new AtomicLong();
+
+	/**
+	 * @param databaseFile The database file that contains all of the imported records
+	 * @param lengths Byte length of each record keyed by its offset (may be null)
+	 * @param capacity The maximum number of records buffered at once (at least 1)
+	 * @param policyName Name of the eviction policy, only lru is supported
+	 * @throws IllegalArgumentException If the capacity is below 1 or the policy is not lru
+	 */
+	public ConcurrentBufferPool(File databaseFile, OffsetTable lengths, int capacity, String policyName)
+	{
+		if (capacity < 1) throw new IllegalArgumentException("Error: Buffer pool capacity must be at least 1.");
+		if (!policyName.equalsIgnoreCase("lru"))
+			throw new IllegalArgumentException("Error: The concurrent buffer pool only supports the lru policy (not \"" + policyName + "\").");
+
+		// Every stripe holds at least MIN_STRIPE_CAPACITY records (or the whole pool when it is smaller),
+		// the capacity is spread over the stripes as evenly as possible
+		int stripeCount = Integer.highestOneBit(Math.max(1, Math.min(capacity / MIN_STRIPE_CAPACITY, MAX_STRIPES)));
+		stripeBits = Integer.numberOfTrailingZeros(stripeCount);
+		stripes = new Stripe[stripeCount];
+		for (int i = 0; i < stripeCount; i++) stripes[i] = new Stripe(capacity / stripeCount + (i < capacity % stripeCount ? 1 : 0));
+		POOL_CAPACITY = capacity;
+		dbFile = databaseFile;
+		recordLengths = lengths;
+	}
+
+	/**
+	 * @param desiredOffset Offset value in the database file where the desired record is found
+	 * @return The desired record at the provided offset or null if the offset value wasnt found
+	 */
+	public Record grabRecordWithOffset(long desiredOffset)
+	{
+		if (warmer != null) installWarmed();
+		Stripe stripe = stripeOf(desiredOffset);
+		synchronized (stripe)
+		{
+			int slot = stripe.index.get(desiredOffset);
+			if (slot >= 0) {
+				stripe.hits++;
+				stripe.lru.moveToFront(slot);
+				return stripe.records[slot];
+			}
+			stripe.misses++;
+		}
+
+		// Wait for the thread that is already reading the record, if there is one
+		CompletableFuture<Record> load = new CompletableFuture<Record>();
+		CompletableFuture<Record> current = loading.putIfAbsent(desiredOffset, load);
+		if (current != null) {
+			sharedMisses.incrementAndGet();
+			return current.join();
+		}
+
+		Record record = null;
+		try
+		{
+			// Another thread may have buffered the record between the lookup and the registration of this read
+			synchronized (stripe) {
+				int slot = stripe.index.get(desiredOffset);
+				if (slot >= 0) record = stripe.records[slot];
+			}
+			if (record == null)
+			{
+				String line = readLine(desiredOffset);
+				if (line != null) {
+					record = new Record(recordFields.get().reset(line));
+					addRecord(stripe, desiredOffset, line, record, false);
+				}
+			}
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+		}
+		finally {
+			// The record is buffered before the read is unregistered, so later misses find it in the stripe
+			loading.remove(desiredOffset, load);
+			load.complete(record);
+		}
+		return record;
+	}
+
+	/**
+	 * @param offsets Offsets in the database file of the desired records
+	 * @return The record at each offset, in the order of the offsets (null for offsets where no record was found)
+	 * @see #grabRecordsWithOffsets(long[])
+	 */
+	public Record[] grabRecordsWithOffsets(Vector<Long> offsets)
+	{
+		long[] array = new long[offsets.size()];
+		for (int i = 0; i < array.length; i++) array[i] = offsets.get(i);
+		return grabRecordsWithOffsets(array);
+	}
+
+	/**
+	 * Looks up the records at several offsets on the threads of the fork-join pool.
+	 *
+	 * @param offsets Offsets in the database file of the desired records
+	 * @return The record at each offset, in the order of the offsets (null for offsets where no record was found)
+	 */
+	public Record[] grabRecordsWithOffsets(long[] offsets)
+	{
+		Record[] records = new Record[offsets.length];
+		IntStream.range(0, offsets.length).parallel().forEach(i -> records[i] = grabRecordWithOffset(offsets[i]));
+		return records;
+	}
+
+	/**
+	 * The concurrent pool fetches whole batches with grabRecordsWithOffsets() instead of prefetching them.
+	 *
+	 * @param offsets Offsets of the records that are about to be looked up, in lookup order
+	 * @return False, the records are never prefetched
+	 */
+	public boolean prefetch(Vector<Long> offsets)
+	{
+		return false;
+	}
+
+	/**
+	 * Does nothing, the records are never prefetched.
+	 */
+	public void endPrefetch()
+	{
+	}
+
+	/**
+	 * Starts loading the records listed by a pool manifest on a background thread. Only as many records as the pool
+	 * holds are loaded, the most valuable first; nothing is loaded when the record lengths are unknown.
+	 *
+	 * @param offsets Offsets of the records to be loaded, the most valuable first
+	 * @throws IOException If the database file could not be opened
+	 */
+	public synchronized void warm(long[] offsets) throws IOException
+	{
+		if (recordLengths == null) return;
+		if (warmer != null) warmer.close();
+		PoolWarmer newWarmer = new PoolWarmer(dbFile, recordLengths, Arrays.copyOf(offsets, Math.min(offsets.length, POOL_CAPACITY)));
+		warmRequested = newWarmer.getRecordCount();
+		warmer = newWarmer;
+	}
+
+	/**
+	 * Adds the lines read by the warmer so far to the stripes that have free slots.
+	 */
+	private void installWarmed()
+	{
+		PoolWarmer current = warmer;
+		if (current == null) return;
+		PoolWarmer.Batch batch;
+		while ((batch = current.poll()) != null)
+		{
+			for (int i = 0; i < batch.offsets.length; i++)
+			{
+				if (batch.lines[i] == null) continue;
+				Record record = new Record(recordFields.get().reset(batch.lines[i]));
+				if (addRecord(stripeOf(batch.offsets[i]), batch.offsets[i], batch.lines[i], record, true)) warmedRecords.incrementAndGet();
+			}
+		}
+		if (current.isDone()) 
+		{
+			synchronized (this) {
+				if (warmer == current) warmer = null;
+			}
+			current.close();
+		}
+	}
+
+	/**
+	 * @return The offsets of the buffered records, taking the most recently used record of each stripe in turn
+	 */
+	public long[] getHotOffsets()
+	{
+		int[][] orders = new int[stripes.length][];
+		long[][] stripeOffsets = new long[stripes.length][];
+		int total = 0;
+		for (int s = 0; s < stripes.length; s++)
+		{
+			synchronized (stripes[s]) {
+				orders[s] = new int[stripes[s].lru.size()];
+				stripes[s].lru.copyTo(orders[s], 0);
+				stripeOffsets[s] = stripes[s].offsets.clone();
+			}
+			total += orders[s].length;
+		}
+
+		long[] offsets = new long[total];
+		int count = 0;
+		for (int rank = 0; count < total; rank++)
+		{
+			for (int s = 0; s < stripes.length; s++) if (rank < orders[s].length) offsets[count++] = stripeOffsets[s][orders[s][rank]];
+		}
+		return offsets;
+	}
+
+	/**
+	 * @param stripe The stripe of the offset
+	 * @param offset Offset of the record in the database file
+	 * @param line The record line as stored in the database file
+	 * @param record The record decoded from the line
+	 * @param onlyIfFree Set to only add the record when the stripe has a free slot
+	 * @return True if the record was added
+	 */
+	private boolean addRecord(Stripe stripe, long offset, String line, Record record, boolean onlyIfFree)
+	{
+		synchronized (stripe)
+		{
+			int slot = stripe.index.get(offset);
+			if (slot >= 0) { // Buffered by another thread that read it after the last read was unregistered
+				if (!onlyIfFree) stripe.lru.moveToFront(slot);
+				return false;
+			}
+
+			if (stripe.size < stripe.offsets.length) slot = stripe.size++;
+			else if (onlyIfFree) return false;
+			else
+			{ // Need to replace the least recently used record of the stripe
+				slot = stripe.lru.last();
+				stripe.lru.remove(slot);
+				stripe.index.remove(stripe.offsets[slot]);
+				stripe.bytesHeld -= stripe.lines[slot].length();
+				stripe.evictions++;
+			}
+			stripe.offsets[slot] = offset;
+			stripe.lines[slot] = line;
+			stripe.records[slot] = record;
+			stripe.index.put(offset, slot);
+			stripe.lru.addFirst(slot);
+			stripe.bytesHeld += line.length();
+			return true;
+		}
+	}
+
+	/**
+	 * @param offset Offset of a record
+	 * @return The stripe that buffers the record
+	 */
+	private Stripe stripeOf(long offset)
+	{
+		if (stripeBits == 0) return stripes[0];
+		// Offsets follow the record lengths, so mix them before taking the high bits
+		return stripes[(int) ((offset * 0x9E3779B97F4A7C15L) >>> (64 - stripeBits))];
+	}
+
+	/**
+	 * @param offset Offset at which to find the record line in the Database file
+	 * @return The record line found at the offset, or null if the offset is past the end of the file
+	 * @throws IOException If the database file could not be read
+	 */
+	private String readLine(long offset) throws IOException
+	{
+		if (offset < 0) return null;
+		FileChannel source = openChannel();
+		diskReads.incrementAndGet();
+
+		// Read exactly the bytes of the record when its length is known, otherwise read blocks until the end of the line
+		int length = (recordLengths != null) ? recordLengths.get(offset) : -1;
+		if (length >= 0)
+		{
+			ByteBuffer line = ByteBuffer.allocate(length);
+			while (line.hasRemaining())
+			{
+				if (source.read(line, offset + line.position()) < 0)
+					throw new IOException("Error: Attempted to read past the end of the database file (offset " + offset + ").");
+			}
+			return new String(line.array(), 0, length, StandardCharsets.ISO_8859_1);
+		}
+
+		byte[] line = new byte[256];
+		int lineLength = 0;
+		while (true)
+		{
+			if (lineLength == line.length) line = Arrays.copyOf(line, line.length * 2);
+			int count = source.read(ByteBuffer.wrap(line, lineLength, line.length - lineLength), offset + lineLength);
+			if (count < 0) return (lineLength == 0) ? null : new String(line, 0, lineLength, StandardCharsets.ISO_8859_1);
+			for (int i = lineLength; i < lineLength + count; i++)
+			{
+				if (line[i] == '\n') return new String(line, 0, i, StandardCharsets.ISO_8859_1);
+			}
+			lineLength += count;
+		}
+	}
+
+	/**
+	 * @return The channel of the database file, opened the first time it is needed
+	 * @throws IOException If the database file could not be opened
+	 */
+	private FileChannel openChannel() throws IOException
+	{
+		FileChannel source = channel;
+		if (source != null) return source;
+		synchronized (this)
+		{
+			if (channel == null) {
+				file = new RandomAccessFile(dbFile, "r");
+				channel = file.getChannel();
+			}
+			return channel;
+		}
+	}
+
+	/**
+	 * Closes the database file.
+	 */
+	public synchronized void close()
+	{
+		if (warmer != null) warmer.close();
+		warmer = null;
+		try {
+			if (file != null) file.close();
+			file = null;
+			channel = null;
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * @return The maximum number of records buffered at once
+	 */
+	public int getCapacity() {
+		return POOL_CAPACITY;
+	}
+
+	/**
+	 * @return The name of the eviction policy
+	 */
+	public String getPolicyName() {
+		return "lru";
+	}
+
+	/**
+	 * @param writer The writer with a reference to the file that will receive the output of the pool
+	 */
+	public void printToFile(Writer writer)
+	{
+		try {
+			writer.write("MRU (of each stripe)\n"); // Header information for print out
+
+			long hits = 0, misses = 0, evictions = 0, bytesHeld = 0;
+			int size = 0;
+			for (Stripe stripe : stripes)
+			{
+				synchronized (stripe)
+				{
+					int[] order = new int[stripe.lru.size()];
+					stripe.lru.copyTo(order, 0);
+					for (int slot : order) writer.write(stripe.offsets[slot] + ":\t" + stripe.lines[slot] + "\n");
+					hits += stripe.hits;
+					misses += stripe.misses;
+					evictions += stripe.evictions;
+					bytesHeld += stripe.bytesHeld;
+					size += stripe.size;
+				}
+			}
+			writer.write("LRU (of each stripe)\n");
+
+			// Statistics of the pool since it was created
+			long lookups = hits + misses;
+			writer.write("Pool policy: lru in " + stripes.length + " stripes, capacity: " + POOL_CAPACITY + ", records held: " + size
+					+ ", bytes held: " + bytesHeld + "\n");
+			writer.write("Pool lookups: " + lookups + ", hits: " + hits
+					+ String.format(" (%.1f%%)", lookups == 0 ? 0.0 : 100.0 * hits / lookups) + ", misses: " + misses
+					+ ", evictions: " + evictions + ", rejected: 0\n");
+			writer.write("Pool disk reads: " + diskReads.get() + ", misses that shared a read: " + sharedMisses.get() + "\n");
+			if (warmRequested >= 0) writer.write("Pool warm start: " + warmedRecords.get() + " records added of " + warmRequested + " in the manifest\n");
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+}
@@ -0,0 +1,59 @@
+package DS;
+
+/**
+ * The purpose of this interface is to let the buffer pool choose which buffered record to replace.
+ * The pool keeps its records in a fixed number of slots (numbered from 0 to capacity - 1); a policy is told
+ * about every lookup, hit and insertion, and picks the slot to be emptied when the pool is full.
+ * A policy may also refuse to admit a new record when it expects the record it would replace to be
+ * more useful, in which case the new record is handed out without being buffered.
+ */
+public interface EvictionPolicy 
+{
+	/**
+	 * @return The name of the policy as given on the command line or in a script
+	 */
+	public String getName();
+
+	/**
+	 * Called for every lookup, whether or not the record is buffered.
+	 * 
+	 * @param offset Offset of the record that was looked up
+	 */
+	public void recordAccess(long offset);
+
+	/**
+	 * @param slot Slot of the buffered record that was just used
+	 */
+	public void recordHit(int slot);
+
+	/**
+	 * @param slot Empty slot that now holds a new record
+	 * @param offset Offset of the new record
+	 */
+	public void recordInsert(int slot, long offset);
+
+	/**
+	 * Chooses the record to be replaced when the pool is full. The slot stays in use until remove() is called.
+	 * 
+	 * @return The slot of the record that should be replaced next
+	 */
+	public int victim();
+
+	/**
+	 * @param slot Slot whose record is being dropped from the pool
+	 */
+	public void remove(int slot);
+
+	/**
+	 * @param candidateOffset Offset of a record that is not buffered
+	 * @param victimOffset Offset of the record that would be replaced to buffer it
+	 * @return True if the candidate should replace the victim
+	 */
+	public boolean admit(long candidateOffset, long victimOffset);
+
+	/**
+	 * @return The slots in use, from the record the policy would keep longest to the one it would replace next
+	 */
+	public int[] order();
+
+}
@@ -6,42 +6,60 @@ package DS;
  * 
  */
 
-import java.io.FileWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.Writer;
 import java.io.IOException;
-import java.util.Vector;
+import java.util.Arrays;
 
 
 /**
  * @author Carlos Folgar
  *
  * @param <K> The generic key type (most often strings) for the hash table
- * @param <V> The values stored at the hashed-to location
  * 
  * The purpose of this class is store generic key-value pairs that allow for
- * quick retrieval through the use of a key
+ * quick retrieval through the use of a key. The values are file offsets; the offsets of
+ * the entries with the same key are kept in a list of primitive longs.
+ * 
+ * Keys are case-insensitive: a key is hashed over its case-folded characters with a 64-bit
+ * FNV-1a hash followed by the MurmurHash3 finalizer, so keys that only differ in case share a
+ * home slot. The hash of each entry is kept with it, so probing compares hashes before keys and
+ * resizing never hashes a key again.
+ * 
+ * The table grows incrementally: a resize only allocates the larger table, and every following
+ * insertion or lookup moves a bounded number of slots of the previous table into it. Until every
+ * slot has been moved both tables are searched, so no single operation pays for the whole rehash.
+ * Table sizes are primes; past the listed ones each size is computed, so the table grows until it
+ * reaches the largest array the virtual machine allows. Probe steps are computed without overflow.
+ * 
+ * The entries of a table are not objects of their own: each table keeps the hashes, the keys and the
+ * offset lists of its slots in parallel arrays. String keys may be kept in a key arena instead of as
+ * String objects: a key is appended to the arena when it first takes a slot, the slot then only holds
+ * its handle and its hash, and keys are compared in place.
  * 
  */
-public class HashTable <K, V> {
+public class HashTable <K> {
 
 	/* Private member variables */
 	
 	/**
-	 * Array of table sizes numbers (all primes - for quadratic probing) used when the table needs to resize itself
+	 * Array of table sizes numbers (all primes - for quadratic probing) used when the table needs to resize itself.
+	 * Past the last of them each size is the smallest prime that is at least twice the previous size.
 	 */
-	private int[] tableSizes = {1019,2027,4079,8123, 16267,32503,65011,130027,260111,520279,1040387,2080763,4161539,8323151,16646323};
+	private static final int[] tableSizes = {1019,2027,4079,8123, 16267,32503,65011,130027,260111,520279,1040387,2080763,4161539,8323151,16646323};
 	/**
-	 * Index in the tableSizes array at which the maximum size of the hashtable can be found
+	 * Largest number of slots of a single table (the largest array the virtual machine allows)
 	 */
-	private final int MAX_SIZE_INDEX = 14;
+	private static final int MAX_TABLE_LENGTH = Integer.MAX_VALUE - 8;
 	/**
-	 * Current table size index
+	 * Set once the table has the largest size it can grow to, from then on it fills up past its load factor
 	 */
-	private int currentTableSizeIndex = 0;
-	
+	private boolean fullyGrown = false;
 	/**
-	 * Enum used to describe the state of a specific slot
+	 * Current table size index
 	 */
-	private enum SlotCondition {TOMB, FULL};
+	private int currentTableSizeIndex = 0;
 	
 	/**
 	 * The number of entries that can be placed inside this table. Initially 1019.
@@ -53,15 +71,10 @@ public class HashTable <K, V> {
 	 */
 	private int count = 0;
 	
-	/**
-	 * The conditions of slots inside the table
-	 */
-	private SlotCondition[] slotConditions;
-	
 	/**
 	 * The set of entries, each a key-value pair, that are stored within the table.
 	 */
-	private KeyVal[] table;
+	private Slots table;
 	
 	
 	/**
@@ -70,81 +83,147 @@ public class HashTable <K, V> {
 	 */
 	private float loadFactor = .70f;	
 	
-	/* Nested Class: KeyVal */
 	/**
-	 * The KeyVal class represents objects that are the entries in the hashtable.  Its function
-	 * is to store a key-value (String and a Long respectively) pair during table insertions.
+	 * Arena that holds the keys of the entries as UTF-8 bytes (null when the entries hold their keys)
+	 */
+	private KeyArena keyArena = null;
+	
+	/**
+	 * Number of slots of the previous table moved into the current one by every insertion or lookup
+	 */
+	private static final int MIGRATION_STEP = 64;
+	
+	/**
+	 * The previous table while its entries are being moved into the current one (null when no resize is in progress).
+	 * Its slots are never emptied, so its probe sequences stay intact; the offsets of moved slots are replaced by MOVED instead.
+	 */
+	private Slots oldTable = null;
+	
+	/**
+	 * Offsets of the slots of the previous table whose entries were moved into the current one
+	 */
+	private static final LongList MOVED = new LongList(0);
+	
+	/**
+	 * Next slot of the previous table to be moved into the current one
+	 */
+	private int migrationIndex = 0;
+	
+	/**
+	 * Number of distinct keys in the table
+	 */
+	private int entries = 0;
+	
+	/**
+	 * The values of the key of the last insertion
 	 */
-	private class KeyVal 
-	{		
+	private LongList lastInserted = null;
+	
+	/* Nested Class: Slots */
+	/**
+	 * The Slots class holds the entries of one table in parallel arrays, indexed by slot.  A slot holds
+	 * the hash of its key, the key itself or its handle in the key arena, and the file offsets of the
+	 * records with that key.  A slot is empty while it has no offsets.
+	 */
+	private static final class Slots
+	{
 		/**
-		 * A key value (String) that can be hashed in order to be inserted into a table.
+		 * The key of each slot (null when the keys are kept in the key arena)
 		 */
-		private K key;
+		private final Object[] keys;
 		
 		/**
-		 * A hash-table value (Long) that is found at an index equivalent to its corresponding hashed key value.
+		 * Handle in the key arena of the key of each slot (null when the slots hold their keys)
 		 */
-		private V value;
+		private final long[] keyHandles;
 		
 		/**
-		 * A collection of file offset values (for the DB file) for entries with the same key.
+		 * The hash of the case-folded key of each slot
 		 */
-		private Vector<V> recordOffsets;
+		private final long[] hashes;
 		
 		/**
-		 * A count of the number of duplicate keys in the hash-table where this key-value pair resides.
+		 * The file offsets of the records with the key of each slot (null for an empty slot)
 		 */
-		private int duplicates;
+		private final LongList[] values;
 		
 		/**
-		 * Constructor for the KeyVal class that stores a key and a value in order to store into a table.
-		 * 
-		 * @param keyString String representation of the key for this entry
-		 * @param valueLong Value of at the location found by hashing the key
+		 * @param length Number of slots of the table
+		 * @param arenaKeys True if the keys are kept in the key arena
 		 */
-		public KeyVal(K keyString, V valueLong) 
+		private Slots(int length, boolean arenaKeys)
 		{
-			this.key = keyString;
-			this.value = valueLong;
-			this.duplicates = 0;
-			recordOffsets = new Vector<V>();
-			recordOffsets.add(valueLong); // Update our offset collection
+			keys = arenaKeys ? null : new Object[length];
+			keyHandles = arenaKeys ? new long[length] : null;
+			hashes = new long[length];
+			values = new LongList[length];
 		}
 		
 		/**
-		 * @return String representation of the key-value pair entry
+		 * @return The number of slots of the table
 		 */
-		@Override
-		public String toString()
-		{
-			StringBuilder builder = new StringBuilder();
-			builder.append("[ " + this.key + ", [ ");
-			for ( V val : recordOffsets) {
-				builder.append(val.toString() + " ");
-			}
-			builder.append("]]");
-			return builder.toString();
+		private int length() {
+			return hashes.length;
+		}
+		
+		/**
+		 * @param slot A slot of the table
+		 * @return True if the slot holds an entry that has not been moved into another table
+		 */
+		private boolean isFull(int slot) {
+			return values[slot] != null && values[slot] != MOVED;
 		}
 	}
 	
 	
 	/**
 	 * Default constructor for the HashTabl. Initializes a table to a size 1019
-	 * and also creates a corresponding condition table to keep track of slot conditions
 	 */
-	@SuppressWarnings("unchecked")
 	public HashTable() 
 	{
-		slotConditions = new SlotCondition[tableSizes[currentTableSizeIndex]]; 	// Initially all empty
-		table = new HashTable.KeyVal[tableSizes[currentTableSizeIndex]];		// Initially all full
+		table = new Slots(tableSizes[currentTableSizeIndex], false);		// Initially all empty
 	}
 	
 	/**
 	 * @return The current size of the hash table.
 	 */
 	public int getSize() {
-		return size = tableSizes[currentTableSizeIndex];
+		finishMigration();
+		return size = table.length();
+	}
+	
+	/**
+	 * @return The number of distinct keys in the table
+	 */
+	public int getKeyCount() {
+		return entries;
+	}
+	
+	/**
+	 * @return Read-only list of the values of the key of the last insertion, without searching the table for the key again
+	 */
+	public LongList getLastInserted() {
+		return lastInserted;
+	}
+	
+	/**
+	 * @param slot A slot of the table, smaller than getSize()
+	 * @return The key held by the slot, or null if the slot is empty
+	 */
+	public K keyAt(int slot)
+	{
+		finishMigration();
+		return (table.values[slot] != null) ? getKey(table, slot) : null;
+	}
+	
+	/**
+	 * @param slot A slot of the table, smaller than getSize()
+	 * @return Read-only list of the values of the key held by the slot, or null if the slot is empty
+	 */
+	public LongList valuesAt(int slot)
+	{
+		finishMigration();
+		return table.values[slot];
 	}
 	
 	/**
@@ -152,99 +231,296 @@ public class HashTable <K, V> {
 	 */
 	public void updateSize()
 	{
-		size = tableSizes[currentTableSizeIndex];
+		size = tableSize(currentTableSizeIndex);
 	}
 	
+	/**
+	 * @param index Index of a table size, 0 for the initial size
+	 * @return The number of slots of a table of that index, or -1 if it would be larger than MAX_TABLE_LENGTH
+	 */
+	private static int tableSize(int index)
+	{
+		if (index < 0) return -1;
+		if (index < tableSizes.length) return tableSizes[index];
+		
+		long length = tableSizes[tableSizes.length - 1];
+		for (int i = tableSizes.length; i <= index; i++)
+		{
+			length = nextPrime(2 * length);
+			if (length > MAX_TABLE_LENGTH) return -1;
+		}
+		return (int) length;
+	}
+	
+	/**
+	 * @param from Smallest number to be considered (at least 3)
+	 * @return The smallest prime number that is not smaller than from
+	 */
+	private static long nextPrime(long from)
+	{
+		long candidate = from | 1;
+		while (true)
+		{
+			boolean prime = true;
+			for (long divisor = 3; divisor * divisor <= candidate && prime; divisor += 2) 
+				prime = candidate % divisor != 0;
+			if (prime) return candidate;
+			candidate += 2;
+		}
+	}
+	
+	
+	/**
+	 * Keeps the keys of the table in a key arena from now on. Only supported for String keys.
+	 * 
+	 * @throws IllegalStateException If the table already holds entries
+	 */
+	public void useKeyArena()
+	{
+		if (entries > 0) throw new IllegalStateException("Error: The hash table must be empty to keep its keys in a key arena.");
+		if (keyArena == null) {
+			keyArena = new KeyArena();
+			table = new Slots(table.length(), true);
+		}
+	}
+	
+	/**
+	 * @return True if the keys of the table are kept in a key arena
+	 */
+	public boolean usesKeyArena() {
+		return keyArena != null;
+	}
 	
 	/**
 	 * @param keyString Key string that will be hashed into the table
 	 * @param value Value of type long that will be inserted into the table
 	 * @return Success value of the insertion operation
 	 */
-	public int insert(K keyString, V value)
+	public int insert(K keyString, long value)
 	{
 		if (keyString == null) throw new NullPointerException("Error: Provided key for Hash-Table is null.");
-		return insertHelper(new KeyVal(keyString, value));
+		return insert(keyString, hashKey(keyString), value);
 	}
 	
 	/**
-	 * @param entry Key-Value entry object to be inserted into the hash table
+	 * @param keyString Key string that will be hashed into the table
+	 * @param hash The hash of the key, as returned by hashKey()
+	 * @param value Value of type long that will be inserted into the table
+	 * @return Success value of the insertion operation
+	 * @throws IllegalStateException If the table can not grow any further and has no free slot for the key
+	 */
+	public int insert(K keyString, long hash, long value)
+	{
+		if (keyString == null) throw new NullPointerException("Error: Provided key for Hash-Table is null.");
+		if (oldTable != null) 
+		{
+			migrate(MIGRATION_STEP);
+			
+			// A key that has not been moved yet is moved now, so the value joins it in the current table
+			int oldSlot = (oldTable != null) ? findInOldTable(keyString, hash) : -1;
+			if (oldSlot >= 0) moveOldSlot(oldSlot);
+		}
+		return insertHelper(keyString, hash, value);
+	}
+	
+	/**
+	 * @param keyString Key string that will be hashed into the table
+	 * @param hash The hash of the key
+	 * @param value Value of type long that will be inserted into the table
 	 * @return Longest probe sequence required in the insertion into the hash table
 	 */
-	private int insertHelper(KeyVal entry) {
+	private int insertHelper(K keyString, long hash, long value) {
 		
-		if (entry == null) // Avoid invalid entry insertions
-			return -1;
-		
-		// Obtain the home slot by hashing the key
-		int homeSlotIndex = elfHash(entry.key) % table.length;
+		// Obtain the home slot from the hash of the key
+		int homeSlotIndex = homeSlot(hash, table.length());
 
 		// Keeps track of next index as calculated by probing
-		int nextLocation; 
-		int i = 0;
-		while (true)
+		int nextLocation = homeSlotIndex;
+		for (int i = 0; i < table.length(); i++)
 		{
-			// Calculate step size with quadratic probing. Obtain the location of next index.
-			int stepSize = (i*i + i)/2;
-			nextLocation =  (homeSlotIndex + stepSize) % table.length;
-			
-			// Watch for overflow when step size how 
-			if (stepSize < 0) {
-				System.out.println("Error in the hashtable when probing for an available slot. (overflow)");
-				System.exit(-1);
-			}								
-			
 			// Attempt to see if the entry's key has been previuosly hashed and we just need to add to collection of offsets
-			if (slotConditions[nextLocation] == SlotCondition.FULL && ((String) table[nextLocation].key).equalsIgnoreCase((String) entry.key)) 
+			if (table.values[nextLocation] != null && matches(table, nextLocation, hash, keyString))
 			{
-				table[nextLocation].recordOffsets.add(entry.value);
+				table.values[nextLocation].add(value);
+				lastInserted = table.values[nextLocation];
 				count++;
 				resizeIfNeeded();
 				return i;
 			}
 			// Check if slot is available for insertion
-			else if (slotConditions[nextLocation] != SlotCondition.FULL || table[nextLocation] == null) {
-				table[nextLocation] = entry; // insert
-				slotConditions[nextLocation] = SlotCondition.FULL;				
+			else if (table.values[nextLocation] == null) {
+				storeKey(nextLocation, keyString);
+				table.hashes[nextLocation] = hash;
+				table.values[nextLocation] = new LongList(1);
+				table.values[nextLocation].add(value); // insert
+				lastInserted = table.values[nextLocation];
 				count++;
+				entries++;
 				resizeIfNeeded();
 				return i;
 			}
-			i++;
+			
+			// Quadratic probing, obtain the location of next index
+			nextLocation = nextProbe(nextLocation, i + 1, table.length());
 		}
 		
+		// Every slot the key may use is taken, so the table grows even below its load factor
+		if (!resize()) throw new IllegalStateException("Error: Hash table of " + table.length() + " slots has no free slot left for the key \"" + keyString + "\".");
+		return insertHelper(keyString, hash, value);
+	}
+	
+	/**
+	 * @param slot Empty slot of the current table that receives the key
+	 * @param keyString The key, appended to the key arena if the table keeps one
+	 */
+	private void storeKey(int slot, K keyString)
+	{
+		if (keyArena != null) table.keyHandles[slot] = keyArena.add((String) keyString);
+		else table.keys[slot] = keyString;
+	}
+	
+	/**
+	 * @param slots A table
+	 * @param slot A slot of the table that holds an entry
+	 * @return The key of the entry, decoded from the key arena if it is kept there
+	 */
+	@SuppressWarnings("unchecked")
+	private K getKey(Slots slots, int slot)
+	{
+		return (slots.keyHandles != null) ? (K) keyArena.getString(slots.keyHandles[slot]) : (K) slots.keys[slot];
+	}
+
+	/**
+	 * @param location Slot probed by the previous step
+	 * @param step Number of the next step, starting at 1
+	 * @param length The number of slots of the table
+	 * @return The slot probed by the step. Step i lies i*(i+1)/2 slots past the home slot, computed without overflow.
+	 */
+	private static int nextProbe(int location, int step, int length)
+	{
+		long next = (long) location + step;
+		return (int) (next < length ? next : next % length);
+	}
+	
+	/**
+	 * Places an entry of the previous table into the first free slot of its probe sequence in the current table.
+	 * The key can not be in the current table yet, and the counts do not change.
+	 * 
+	 * @param slot Slot of the previous table whose entry is placed
+	 */
+	private void placeEntry(int slot)
+	{
+		int nextLocation = homeSlot(oldTable.hashes[slot], table.length());
+		for (int i = 0; ; i++)
+		{
+			if (table.values[nextLocation] == null) {
+				if (table.keys != null) table.keys[nextLocation] = oldTable.keys[slot];
+				else table.keyHandles[nextLocation] = oldTable.keyHandles[slot];
+				table.hashes[nextLocation] = oldTable.hashes[slot];
+				table.values[nextLocation] = oldTable.values[slot];
+				return;
+			}
+			nextLocation = nextProbe(nextLocation, i + 1, table.length());
+		}
+	}
+	
+	/**
+	 * @param keyString Key to be searched for in the previous table
+	 * @param hash The hash of the key
+	 * @return The slot of the previous table that holds the key and has not been moved yet, or -1 if there is none
+	 */
+	private int findInOldTable(K keyString, long hash)
+	{
+		int nextLocation = homeSlot(hash, oldTable.length());
+		for (int i = 0; i < oldTable.length(); i++)
+		{
+			if (oldTable.values[nextLocation] == null) return -1; // End of the probe sequence
+			if (oldTable.isFull(nextLocation) && matches(oldTable, nextLocation, hash, keyString))
+				return nextLocation;
+			nextLocation = nextProbe(nextLocation, i + 1, oldTable.length());
+		}
+		return -1;
+	}
+	
+	/**
+	 * @param slot Slot of the previous table whose entry is moved into the current table
+	 */
+	private void moveOldSlot(int slot)
+	{
+		placeEntry(slot);
+		oldTable.values[slot] = MOVED;
+	}
+	
+	/**
+	 * Moves slots of the previous table into the current one, in slot order, dropping the previous table once all are moved.
+	 * 
+	 * @param slots Most slots of the previous table to be examined
+	 */
+	private void migrate(int slots)
+	{
+		int end = (int) Math.min((long) migrationIndex + slots, oldTable.length());
+		for (; migrationIndex < end; migrationIndex++)
+		{
+			if (oldTable.isFull(migrationIndex)) moveOldSlot(migrationIndex);
+		}
+		if (migrationIndex == oldTable.length()) {
+			oldTable = null;
+			migrationIndex = 0;
+		}
+	}
+	
+	/**
+	 * Moves every remaining slot of the previous table into the current one.
+	 */
+	private void finishMigration()
+	{
+		if (oldTable != null) migrate(oldTable.length());
+	}
+	
+	/**
+	 * @param keyString String key value for which we will search duplicates for
+	 * @return Read-only list of the values found matching the hashed key string provided (empty if none were found)
+	 */
+	public LongList findEntriesWithKey(K keyString)
+	{
+		return findEntriesWithKey(keyString, hashKey(keyString));
 	}
 	
 	/**
 	 * @param keyString String key value for which we will search duplicates for
-	 * @return Vector of values found matching the hashed key string provided
+	 * @param hash The hash of the key, as returned by hashKey()
+	 * @return Read-only list of the values found matching the hashed key string provided (empty if none were found)
 	 */
-	public Vector<V> findEntriesWithKey(K keyString)
+	public LongList findEntriesWithKey(K keyString, long hash)
 	{
 		// Store the results of the multi-key search
-		Vector<V> results = new Vector<V>();
+		LongList results = new LongList(0);
 		
-		// Obtain the home slot by hashing the key
-		int homeSlotIndex = elfHash(keyString) % table.length;		
-
-		// Traverse the table looking for the specified key
-		int nextLocation;
-		for (int i = 0; i < table.length; i++)
+		// A key that has not been moved out of the previous table yet is found there
+		if (oldTable != null)
+		{
+			migrate(MIGRATION_STEP);
+			int oldSlot = (oldTable != null) ? findInOldTable(keyString, hash) : -1;
+			if (oldSlot >= 0) return oldTable.values[oldSlot];
+		}
+		
+		// Obtain the home slot from the hash of the key
+		int nextLocation = homeSlot(hash, table.length());
+		
+		// Traverse the table looking for the specified key, the current table never empties a slot so an empty one ends the search
+		for (int i = 0; i < table.length() && table.values[nextLocation] != null; i++)
 		{
-			// Calculate step size with quadratic probing. Obtain the location of next index.
-			int stepSize = (i*i + i)/2;
-			
-			if(stepSize < 0 ) return results; // Overflow watch
-			nextLocation =  (homeSlotIndex + stepSize) % table.length;
-			
 			// Attempt to see if the entry's key has been previuosly hashed and we just need to add to collection of offsets
-			if (slotConditions[nextLocation] == SlotCondition.FULL && ((String) table[nextLocation].key).equalsIgnoreCase((String) keyString)) 
+			if (matches(table, nextLocation, hash, keyString))
 			{
-				results = table[nextLocation].recordOffsets;
+				results = table.values[nextLocation];
 				return results;
 			}
+			
+			// Quadratic probing, obtain the location of next index
+			nextLocation = nextProbe(nextLocation, i + 1, table.length());
 		}
-		return results; // Return an empty vector if nothing found
+		return results; // Return an empty list if nothing found
 	}
 	
 	
@@ -254,25 +530,16 @@ public class HashTable <K, V> {
 	 */
 	public int numberOfKeyOccurences(K key)
 	{
-		// Obtain the home slot by hashing the key
-		int homeSlotIndex = elfHash(key) % table.length;		
-
-		// If we find something at the home-slot, check if there are any duplicates
-		if (slotConditions[homeSlotIndex] == SlotCondition.FULL) 		
-			return table[homeSlotIndex].recordOffsets.size(); // Return the number of occurences
-		 else 
-			return 0;		
+		return findEntriesWithKey(key).size();
 	}
 	
 	/**
 	 * @param key Key that will be hashed and checked for in the table to find occurences, each time printings the value found
 	 */
 	public void printAllOffsetsForKey(K key) {		
-		Vector<V> searchResults = findEntriesWithKey(key);
-		if (searchResults != null) {
-			for (V offsetLong: searchResults) {
-				System.out.println("Value: " + offsetLong);
-			}
+		LongList searchResults = findEntriesWithKey(key);
+		for (int i = 0; i < searchResults.size(); i++) {
+			System.out.println("Value: " + searchResults.get(i));
 		}
 	}
 	
@@ -282,78 +549,238 @@ public class HashTable <K, V> {
 	 */
 	private void resizeIfNeeded() 
 	{
-		if (this.count >= loadFactor * table.length)
+		if (!fullyGrown && this.count >= loadFactor * table.length())
 			resize();		
 	}
 	
 	/**
-	 * Used by the table to resize the size of the hash table and rehash all the needed values
+	 * Used by the table to increase the size of the hash table. The entries are moved into the larger
+	 * table a few slots at a time by the following insertions and lookups.
+	 * 
+	 * @return False if the table already has the largest size it can grow to
 	 */
-	@SuppressWarnings("unchecked")
-	private void resize() 
+	private boolean resize() 
 	{
+		// A resize still in progress is completed before the next one starts
+		finishMigration();
+		
+		// Check if the size is too large, the table then keeps filling up past its load factor
+		int nextSize = tableSize(currentTableSizeIndex + 1);
+		if (nextSize < 0) {
+			fullyGrown = true;
+			return false;
+		}
+		
 		// Store previous entries and increase the table size to next prime number
-		KeyVal[] prevEntries = table;
 		currentTableSizeIndex++;
+		oldTable = table;
+		migrationIndex = 0;
 		
-		// Check if the size is too large
-		if (currentTableSizeIndex <= MAX_SIZE_INDEX) 
-		{
-			// Create new containers for conditions and key-vals
-			updateSize();
-			slotConditions = new SlotCondition[size];
-			table = new HashTable.KeyVal[size];
-			this.count = 0;
-			
-			// Place back all of the entries into the table
-			for (KeyVal entry: prevEntries) {
-				if (entry != null) 
-					insertHelper(entry);
-			}			
-		} 
-		else
-		{ // Attempting to make large table
-			System.err.println("Error: Terminating program to prevent memory problems (Hash table size has exceeded its limit of 16,646,323)");
-			System.exit(0);
-		}			
+		// Create new containers for the slots
+		size = nextSize;
+		table = new Slots(size, keyArena != null);
+		this.count = entries; // As if every entry had been inserted again
+		return true;
 	}
 	
 	
 	
 	/**
 	 * @param toHash The string object that will be manipulated to obtain a hash value
-	 * @return The hash value that resulted from various operations on the string
-	 */
-	public int elfHash(K toHash) {
-		int hashValue = 0;
-		for (int Pos = 0; Pos < ((String) toHash).length(); Pos++) {      	// use all elements
-			hashValue = (hashValue << 4) + ((String) toHash).charAt(Pos);  // shift/mix
-			int hiBits = hashValue & 0xF0000000;                // get high nybble
-			if (hiBits != 0)
-				hashValue ^= hiBits >> 24;    					// xor high nybble with second nybble
-			hashValue &= ~hiBits;            					// clear high nybble
+	 * @return The 64-bit hash of the case-folded characters of the string
+	 */
+	public long hashKey(K toHash) {
+		// FNV-1a over the characters folded the same way equalsIgnoreCase() compares them
+		String key = (String) toHash;
+		long hashValue = 0xcbf29ce484222325L;
+		for (int pos = 0; pos < key.length(); pos++) {
+			hashValue ^= Character.toLowerCase(Character.toUpperCase(key.charAt(pos)));
+			hashValue *= 0x100000001b3L;
 		}
+		
+		// MurmurHash3 finalizer, so every bit of the key affects the low bits used for the home slot
+		hashValue ^= hashValue >>> 33;
+		hashValue *= 0xff51afd7ed558ccdL;
+		hashValue ^= hashValue >>> 33;
+		hashValue *= 0xc4ceb9fe1a85ec53L;
+		hashValue ^= hashValue >>> 33;
 		return hashValue;
 	}
 	
+	/**
+	 * @param hash The hash of a key
+	 * @param length The number of slots of a table
+	 * @return The home slot of the key in that table
+	 */
+	private static int homeSlot(long hash, int length)
+	{
+		return (int) Long.remainderUnsigned(hash, length);
+	}
+	
+	/**
+	 * @param slots A table
+	 * @param slot A slot of the table that holds an entry
+	 * @param hash The hash of a key
+	 * @param key The key
+	 * @return True if the slot holds the key, ignoring case
+	 */
+	private boolean matches(Slots slots, int slot, long hash, K key)
+	{
+		if (slots.hashes[slot] != hash) return false;
+		if (slots.keyHandles != null) return keyArena.equalsIgnoreCase(slots.keyHandles[slot], (String) key);
+		return ((String) slots.keys[slot]).equalsIgnoreCase((String) key);
+	}
+	
+	/**
+	 * @param slot A slot of the current table that holds an entry
+	 * @return String representation of the key-value pair entry of the slot
+	 */
+	private String entryToString(int slot)
+	{
+		StringBuilder builder = new StringBuilder();
+		builder.append("[ " + getKey(table, slot) + ", [ ");
+		LongList offsets = table.values[slot];
+		for (int i = 0; i < offsets.size(); i++) {
+			builder.append(offsets.get(i)).append(' ');
+		}
+		builder.append("]]");
+		return builder.toString();
+	}
+	
+	/**
+	 * @param slot An occupied slot of the table
+	 * @return The number of probes past the home slot needed to reach the slot
+	 */
+	private int probeLength(int slot)
+	{
+		int nextLocation = homeSlot(table.hashes[slot], table.length());
+		for (int i = 0; i < table.length(); i++)
+		{
+			if (nextLocation == slot) return i;
+			nextLocation = nextProbe(nextLocation, i + 1, table.length());
+		}
+		return table.length();
+	}
+	
+	/**
+	 * @param fileWriter Output stream that receives how many keys need each number of probes to be found
+	 * @throws IOException If the histogram could not be written
+	 */
+	private void printProbeHistogram(Writer fileWriter) throws IOException
+	{
+		int[] histogram = new int[16];
+		long totalProbes = 0;
+		int keys = 0;
+		for (int slot = 0; slot < table.length(); slot++)
+		{
+			if (table.values[slot] == null) continue;
+			int probes= probeLength(slot);
+			if (probes >= histogram.length) histogram = Arrays.copyOf(histogram, Math.max(probes + 1, histogram.length * 2));
+			histogram[probes]++;
+			totalProbes += probes;
+			keys++;
+		}
+		
+		fileWriter.write("\nProbe length histogram (probes past the home slot: number of keys)\n");
+		for (int probes = 0; probes < histogram.length; probes++)
+		{
+			if (histogram[probes] > 0) fileWriter.write(probes + ":\t" + histogram[probes] + "\n");
+		}
+		fileWriter.write(String.format("Average probe length: %.3f\n", keys == 0 ? 0.0 : (double) totalProbes / keys));
+	}
+	
+	
+	/**
+	 * Writes every occupied slot of the table, with the hash of its key, so it can be restored exactly, without hashing the keys again.
+	 * Only supported for String keys.
+	 * 
+	 * @param out Stream that receives the table
+	 * @throws IOException If the table could not be written
+	 */
+	public void writeSnapshot(DataOutputStream out) throws IOException
+	{
+		finishMigration();
+		int occupied = 0;
+		for (LongList offsets : table.values) if (offsets != null) occupied++;
+		
+		out.writeInt(currentTableSizeIndex);
+		out.writeInt(count);
+		out.writeInt(occupied);
+		for (int slot = 0; slot < table.length(); slot++)
+		{
+			if (table.values[slot] == null) continue;
+			out.writeInt(slot);
+			out.writeUTF((String) getKey(table, slot));
+			out.writeLong(table.hashes[slot]);
+			out.writeInt(table.values[slot].size());
+			LongList offsets = table.values[slot];
+			for (int v = 0; v < offsets.size(); v++) out.writeLong(offsets.get(v));
+		}
+	}
+	
+	/**
+	 * Replaces the contents of the table with a table written by writeSnapshot().
+	 * 
+	 * @param in Stream positioned at a table written by writeSnapshot()
+	 * @throws IOException If the table could not be read
+	 */
+	@SuppressWarnings("unchecked")
+	public void readSnapshot(DataInputStream in) throws IOException
+	{
+		int sizeIndex = in.readInt();
+		int snapshotSize = tableSize(sizeIndex);
+		if (snapshotSize < 0) throw new IOException("Error: Hash table snapshot has an invalid table size.");
+		
+		currentTableSizeIndex = sizeIndex;
+		size = snapshotSize;
+		fullyGrown = false;
+		table = new Slots(size, keyArena != null);
+		oldTable = null;
+		migrationIndex = 0;
+		lastInserted = null;
+		if (keyArena != null) keyArena = new KeyArena(); // The keys of the snapshot replace the current ones
+		count = in.readInt();
+		
+		int occupied = in.readInt();
+		entries = occupied;
+		for (int i = 0; i < occupied; i++)
+		{
+			int slot = in.readInt();
+			if (slot < 0 || slot >= size) throw new IOException("Error: Hash table snapshot has an invalid slot " + slot + ".");
+			K key = (K) in.readUTF();
+			long hash = in.readLong();
+			int values = in.readInt();
+			if (values < 1) throw new IOException("Error: Hash table snapshot has an entry without values.");
+			
+			if (table.values[slot] != null) throw new IOException("Error: Hash table snapshot has slot " + slot + " twice.");
+			storeKey(slot, key);
+			table.hashes[slot] = hash;
+			table.values[slot] = new LongList(values);
+			for (int v = 0; v < values; v++) table.values[slot].add(in.readLong());
+		}
+	}
+	
 	
 	/**
 	 * @param fileWriter Output stream to a file that we will write the hash table representation to
 	 */
-	public void printToFile(FileWriter fileWriter)
+	public void printToFile(Writer fileWriter)
 	{
 		// Get the cur index
 		int curIndex = 0;
+		finishMigration();
 
 		try {
 			// Output header line
-			fileWriter.write("Format of display is\nSlot number: data record\nCurrent table size is " + table.length + "\nNumber of elements in table is " + count + "\n\n");
-			for (KeyVal keyval: table)
+			fileWriter.write("Format of display is\nSlot number: data record\nCurrent table size is " + table.length() + "\nNumber of elements in table is " + count + "\n\n");
+			for (LongList offsets: table.values)
 			{
-				if (keyval != null) // Write the values for this entry
-					fileWriter.write(curIndex + ":\t" + keyval + "\n");
+				if (offsets != null) // Write the values for this entry
+					fileWriter.write(curIndex + ":\t" + entryToString(curIndex) + "\n");
 				curIndex++;
 			}
+			printProbeHistogram(fileWriter);
+			if (keyArena != null) fileWriter.write("Key arena bytes stored: " + keyArena.getBytesStored() + ", bytes allocated: " + keyArena.getBytesAllocated() + "\n");
 		}
 		catch (IOException e) {
 			e.printStackTrace();
@@ -366,15 +793,16 @@ public class HashTable <K, V> {
 	@Override
 	public String toString()
 	{
+		finishMigration();
 		StringBuilder stringBuilder = new StringBuilder();
 		int curIndex = 0;
-		for (KeyVal keyval: table)
+		for (LongList offsets: table.values)
 		{
-			if (keyval != null)
-				stringBuilder.append(curIndex + ":\t" + keyval + "\n");
+			if (offsets != null)
+				stringBuilder.append(curIndex + ":\t" + entryToString(curIndex) + "\n");
 			curIndex++;
 		}
-		stringBuilder.insert(0,"Format of display is\nSlot number: data record\nCurrent table size is " + table.length + "\nNumber of elements in table is " + count + "\n\n");
+		stringBuilder.insert(0,"Format of display is\nSlot number: data record\nCurrent table size is " + table.length() + "\nNumber of elements in table is " + count + "\n\n");
 		return stringBuilder.toString();
 	}
 	
@@ -0,0 +1,138 @@
+package DS;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The purpose of this class is to hold the keys of the name index as UTF-8 bytes packed into large byte arrays,
+ * instead of as one String object (and one array) per key. Keys are only ever appended. Each key is stored as a
+ * 2-byte length followed by its bytes, and is referred to by a handle that holds its chunk and its position in
+ * the chunk. A key never spans two chunks. Keys are compared with a String in place, without decoding them.
+ */
+public class KeyArena
+{
+	/** Number of bits of a handle that hold the position inside of a chunk */
+	private static final int CHUNK_BITS = 20;
+	/** Number of bytes of each chunk */
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	/** Largest number of bytes of a key, the length must fit in its 2-byte header */
+	public static final int MAX_KEY_BYTES = 0xFFFF;
+
+	/** Chunks of the arena, only the first chunkCount of them are in use */
+	private byte[][] chunks = new byte[4][];
+	/** Number of chunks in use */
+	private int chunkCount = 0;
+	/** Position of the next free byte of the last chunk */
+	private int position = CHUNK_SIZE;
+	/** Number of bytes taken by the keys and their lengths */
+	private long bytesStored = 0;
+
+	/**
+	 * @param key Key to be appended to the arena
+	 * @return The handle of the key
+	 * @throws IllegalArgumentException If the key takes more than MAX_KEY_BYTES bytes
+	 */
+	public long add(String key)
+	{
+		// Keys of plain ASCII characters are copied straight into the chunk, the others are encoded first
+		byte[] encoded = null;
+		int length = key.length();
+		for (int i = 0; i < key.length(); i++)
+		{
+			if (key.charAt(i) >= 0x80) {
+				encoded = key.getBytes(StandardCharsets.UTF_8);
+				length = encoded.length;
+				break;
+			}
+		}
+		if (length > MAX_KEY_BYTES) throw new IllegalArgumentException("Error: Key of " + length + " bytes is too long for the key arena.");
+
+		if (position + 2 + length > CHUNK_SIZE)
+		{
+			if (chunkCount == chunks.length) {
+				byte[][] grown = new byte[chunkCount * 2][];
+				System.arraycopy(chunks, 0, grown, 0, chunkCount);
+				chunks = grown;
+			}
+			chunks[chunkCount++] = new byte[CHUNK_SIZE];
+			position = 0;
+		}
+
+		byte[] chunk = chunks[chunkCount - 1];
+		long handle = ((long) (chunkCount - 1) << CHUNK_BITS) | position;
+		chunk[position] = (byte) (length >>> 8);
+		chunk[position + 1] = (byte) length;
+		if (encoded != null) System.arraycopy(encoded, 0, chunk, position + 2, length);
+		else for (int i = 0; i < length; i++) chunk[position + 2 + i] = (byte) key.charAt(i);
+
+		position += 2 + length;
+		bytesStored += 2 + length;
+		return handle;
+	}
+
+	/**
+	 * @param handle Handle of a key of the arena
+	 * @return The number of bytes of the key
+	 */
+	public int length(long handle)
+	{
+		byte[] chunk = chunks[(int) (handle >>> CHUNK_BITS)];
+		int start = (int) (handle & (CHUNK_SIZE - 1));
+		return ((chunk[start] & 0xFF) << 8) | (chunk[start + 1] & 0xFF);
+	}
+
+	/**
+	 * @param handle Handle of a key of the arena
+	 * @return The key decoded into a new String
+	 */
+	public String getString(long handle)
+	{
+		byte[] chunk = chunks[(int) (handle >>> CHUNK_BITS)];
+		int start = (int) (handle & (CHUNK_SIZE - 1));
+		return new String(chunk, start + 2, length(handle), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Compares a key of the arena with a String the way String.equalsIgnoreCase() does.
+	 *
+	 * @param handle Handle of a key of the arena
+	 * @param key String to be compared with the key
+	 * @return True if the key and the String are equal, ignoring case
+	 */
+	public boolean equalsIgnoreCase(long handle, String key)
+	{
+		byte[] chunk = chunks[(int) (handle >>> CHUNK_BITS)];
+		int start = (int) (handle & (CHUNK_SIZE - 1)) + 2;
+		int length = length(handle);
+		if (length < key.length()) return false; // Every character takes at least one byte
+
+		for (int i = 0; i < length; i++)
+		{
+			int stored = chunk[start + i];
+			if (stored < 0) return getString(handle).equalsIgnoreCase(key); // Multi-byte characters are decoded first
+			if (i >= key.length()) return false;
+
+			char c1 = (char) stored;
+			char c2 = key.charAt(i);
+			if (c1 == c2) continue;
+			char u1 = Character.toUpperCase(c1);
+			char u2 = Character.toUpperCase(c2);
+			if (u1 != u2 && Character.toLowerCase(u1) != Character.toLowerCase(u2)) return false;
+		}
+		return length == key.length();
+	}
+
+	/**
+	 * @return The number of bytes taken by the keys and their lengths
+	 */
+	public long getBytesStored() {
+		return bytesStored;
+	}
+
+	/**
+	 * @return The number of bytes of the chunks
+	 */
+	public long getBytesAllocated() {
+		return (long) chunkCount * CHUNK_SIZE;
+	}
+
+}
@@ -0,0 +1,76 @@
+package DS;
+
+import java.util.Arrays;
+
+/**
+ * The purpose of this class is to hold a growable list of primitive long values, such as the file offsets of
+ * the records that share a key of the hash table, without boxing every value into a Long. The values live in
+ * a single array that grows by half of its length when it is full, so a key with one record costs one slot.
+ * Only classes of this package may add values; every other class gets a read-only view of the list.
+ */
+public class LongList
+{
+	/** The values of the list, only the first size of them are in use */
+	private long[] values;
+	/** Number of values in the list */
+	private int size = 0;
+
+	/**
+	 * Constructs an empty list with room for one value.
+	 */
+	public LongList()
+	{
+		this(1);
+	}
+
+	/**
+	 * @param capacity Number of values that fit before the list grows
+	 */
+	public LongList(int capacity)
+	{
+		values = new long[Math.max(capacity, 0)];
+	}
+
+	/**
+	 * @param value Value to be appended to the list
+	 */
+	void add(long value)
+	{
+		if (size == values.length) values = Arrays.copyOf(values, Math.max(size + (size >> 1), size + 1));
+		values[size++] = value;
+	}
+
+	/**
+	 * @param index Position of a value in the list
+	 * @return The value at the position
+	 * @throws IndexOutOfBoundsException If the position is not inside of the list
+	 */
+	public long get(int index)
+	{
+		if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Error: Index " + index + " is outside of a list of " + size + " values.");
+		return values[index];
+	}
+
+	/**
+	 * @return The number of values in the list
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return True if the list holds no values
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @return A copy of the values of the list
+	 */
+	public long[] toArray()
+	{
+		return Arrays.copyOf(values, size);
+	}
+
+}
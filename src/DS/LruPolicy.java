@@ -0,0 +1,95 @@
+package DS;
+
+/**
+ * Least recently used replacement: every hit moves the record to the front of a list and the record at the back is replaced.
+ */
+public class LruPolicy implements EvictionPolicy 
+{
+	/** Slots in use from the most to the least recently used */
+	private SlotList recency;
+
+	/**
+	 * @param capacity Number of slots in the pool
+	 */
+	public LruPolicy(int capacity)
+	{
+		recency = new SlotList(capacity);
+	}
+
+	/**
+	 * @return The name of the policy, "lru"
+	 */
+	@Override
+	public String getName() {
+		return "lru";
+	}
+
+	/**
+	 * Lookups of records that are not buffered do not change the recency order.
+	 * 
+	 * @param offset Offset of the record that was looked up
+	 */
+	@Override
+	public void recordAccess(long offset) {
+	}
+
+	/**
+	 * Moves the record to the front of the recency list.
+	 * 
+	 * @param slot Slot of the buffered record that was just used
+	 */
+	@Override
+	public void recordHit(int slot) {
+		recency.moveToFront(slot);
+	}
+
+	/**
+	 * New records start at the front of the recency list.
+	 * 
+	 * @param slot Empty slot that now holds a new record
+	 * @param offset Offset of the new record
+	 */
+	@Override
+	public void recordInsert(int slot, long offset) {
+		recency.addFirst(slot);
+	}
+
+	/**
+	 * @return The slot of the least recently used record
+	 */
+	@Override
+	public int victim() {
+		return recency.last();
+	}
+
+	/**
+	 * @param slot Slot whose record is being dropped from the pool
+	 */
+	@Override
+	public void remove(int slot) {
+		recency.remove(slot);
+	}
+
+	/**
+	 * Every new record is buffered.
+	 * 
+	 * @param candidateOffset Offset of a record that is not buffered
+	 * @param victimOffset Offset of the record that would be replaced to buffer it
+	 * @return Always true
+	 */
+	@Override
+	public boolean admit(long candidateOffset, long victimOffset) {
+		return true;
+	}
+
+	/**
+	 * @return The slots in use from the most to the least recently used
+	 */
+	@Override
+	public int[] order() {
+		int[] order = new int[recency.size()];
+		recency.copyTo(order, 0);
+		return order;
+	}
+
+}
@@ -0,0 +1,173 @@
+package DS;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The purpose of this class is to read record lines out of the database file through memory mapped
+ * segments instead of opening, seeking and reading the file for every record.  The file is mapped in
+ * fixed size segments; when imports append to the file, the partial last segment is remapped and new
+ * segments are mapped as needed, so the mapping stays valid while the database grows.
+ */
+public class MappedDatabaseFile implements RecordSource
+{
+
+	/** Each segment maps 2^SEGMENT_SHIFT bytes of the file (64 MB) */
+	private static final int SEGMENT_SHIFT = 26;
+	/** Number of bytes covered by a full segment */
+	private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+	/** Mask that extracts the position inside of a segment from a file offset */
+	private static final long SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+	/** The database file that is mapped */
+	private RandomAccessFile file;
+	/** Channel used to map the segments of the database file */
+	private FileChannel channel;
+	/** Mapped segments, segment i covers offsets [i * SEGMENT_SIZE, (i+1) * SEGMENT_SIZE) */
+	private MappedByteBuffer[] segments = new MappedByteBuffer[4];
+	/** Number of segments that are currently mapped */
+	private int segmentCount = 0;
+	/** Number of bytes of the file that are currently mapped */
+	private long mappedLength = 0;
+
+	/**
+	 * @param databaseFile The database file that will be mapped
+	 * @throws IOException If the database file could not be opened
+	 */
+	public MappedDatabaseFile(File databaseFile) throws IOException
+	{
+		file = new RandomAccessFile(databaseFile, "r");
+		channel = file.getChannel();
+		refresh();
+	}
+
+	/**
+	 * Maps any bytes that were appended to the database file since the last refresh.
+	 *
+	 * @throws IOException If the database file could not be mapped
+	 */
+	public void refresh() throws IOException
+	{
+		long fileLength = channel.size();
+		if (fileLength <= mappedLength) return;
+
+		// The last segment may only be partially mapped, start remapping from it
+		int first = (int) (mappedLength >>> SEGMENT_SHIFT);
+		int needed = (int) ((fileLength + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT);
+		if (needed > segments.length)
+		{
+			MappedByteBuffer[] larger = new MappedByteBuffer[Math.max(needed, segments.length * 2)];
+			System.arraycopy(segments, 0, larger, 0, segmentCount);
+			segments = larger;
+		}
+		for (int i = first; i < needed; i++)
+		{
+			long start = (long) i << SEGMENT_SHIFT;
+			segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, fileLength - start));
+		}
+		segmentCount = needed;
+		mappedLength = fileLength;
+	}
+
+	/**
+	 * @return The number of bytes of the database file that are mapped
+	 */
+	public long length()
+	{
+		return mappedLength;
+	}
+
+	/**
+	 * @param offset Offset of the start of a record line
+	 * @return The number of bytes in the line (without its terminator), or -1 if the offset is past the end of the file
+	 * @throws IOException If newly appended bytes could not be mapped
+	 */
+	public int lineLength(long offset) throws IOException
+	{
+		if (offset < 0) return -1;
+		if (offset >= mappedLength) refresh();
+		if (offset >= mappedLength) return -1;
+
+		long position = offset;
+		boolean refreshed = false;
+		while (true)
+		{
+			// Scan the rest of the segment that holds the position for the terminator
+			MappedByteBuffer segment = segments[(int) (position >>> SEGMENT_SHIFT)];
+			int index = (int) (position & SEGMENT_MASK);
+			int limit = segment.limit();
+			while (index < limit && segment.get(index) != '\n') index++;
+
+			position = (position & ~SEGMENT_MASK) + index;
+			if (index < limit) return (int) (position - offset); // Found the terminator
+
+			if (position >= mappedLength)
+			{
+				// Reached the end of the mapping - the file may have grown since it was mapped
+				if (refreshed) return (int) (position - offset);
+				refresh();
+				refreshed = true;
+				if (position >= mappedLength) return (int) (position - offset);
+			}
+		}
+	}
+
+	/**
+	 * @param offset Offset of the start of a record line
+	 * @return The record line found at the offset, or null if the offset is past the end of the file
+	 * @throws IOException If newly appended bytes could not be mapped
+	 */
+	public String readLine(long offset) throws IOException
+	{
+		int length = lineLength(offset);
+		if (length < 0) return null;
+
+		byte[] line = new byte[length];
+		read(offset, line, 0, length);
+		return new String(line, 0, length, StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * @param offset Offset of the first byte to copy
+	 * @param destination Array that will receive the bytes
+	 * @param destOffset Position inside of the destination of the first byte
+	 * @param length Number of bytes to copy
+	 * @throws IOException If the bytes are past the end of the database file
+	 */
+	public void read(long offset, byte[] destination, int destOffset, int length) throws IOException
+	{
+		if (offset < 0 || offset + length > mappedLength) refresh();
+		if (offset < 0 || offset + length > mappedLength)
+			throw new IOException("Error: Attempted to read past the end of the database file (offset " + offset + ").");
+
+		while (length > 0)
+		{
+			MappedByteBuffer segment = segments[(int) (offset >>> SEGMENT_SHIFT)];
+			int index = (int) (offset & SEGMENT_MASK);
+			int count = Math.min(length, segment.limit() - index);
+			segment.get(index, destination, destOffset, count);
+
+			offset += count;
+			destOffset += count;
+			length -= count;
+		}
+	}
+
+	/**
+	 * Closes the database file. The mapped segments are released once they are garbage collected.
+	 *
+	 * @throws IOException If the database file could not be closed
+	 */
+	public void close() throws IOException
+	{
+		segments = new MappedByteBuffer[0];
+		segmentCount = 0;
+		mappedLength = 0;
+		file.close();
+	}
+
+}
@@ -0,0 +1,456 @@
+package DS;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Vector;
+
+import Types.Coordinate;
+
+/**
+ * The purpose of this class is to answer coordinate queries straight from a read-only, memory mapped image of a
+ * PR quadtree, without building any node or coordinate objects.  The image is a flat array of fixed size node
+ * records followed by an array of points and an array of offsets, so opening it costs the same no matter how
+ * large the tree is, and several processes mapping the same image share its pages.  Searches walk the image with
+ * exactly the same geometry as prQuadtree, so they return the same results in the same order.
+ *
+ * <b>Format of file:</b> header, nodes (kind and four ints each), points (x, y, first offset, offset count), offsets.
+ * An internal node lists the node index of its NW, NE, SE and SW children (-1 for an empty child), a leaf lists the
+ * index of its first point and its number of points.
+ */
+public class MappedQuadtree
+{
+	/** Identifies a quadtree image file ("GISQ") */
+	private static final int MAGIC = 0x47495351;
+	/** Version of the image format */
+	private static final int VERSION = 1;
+	/** Size of the header: magic, version, bucket size, four boundaries, node/point/offset counts and the root */
+	private static final int HEADER_SIZE = 3 * 4 + 4 * 8 + 4 * 4;
+	/** Number of ints in a node record and in a point record */
+	private static final int NODE_INTS = 5, POINT_INTS = 4;
+	/** Kinds of node records */
+	private static final int INTERNAL_NODE = 1, LEAF_NODE = 2;
+	/** Position of the children of an internal node inside of its record */
+	private static final int NW = 1, NE = 2, SE = 3, SW = 4;
+
+	/** The mapped image */
+	private MappedByteBuffer image;
+	/** Boundaries of the world covered by the tree */
+	private long xMin, xMax, yMin, yMax;
+	/** Bucket size of the leaves */
+	private int bucketSize;
+	/** Index of the root node (-1 for an empty tree) */
+	private int root;
+	/** Position of the node, point and offset arrays inside of the image */
+	private int nodesStart, pointsStart, offsetsStart;
+
+	/**
+	 * @param imageFile The quadtree image to be mapped
+	 * @throws IOException If the image could not be mapped or is not a quadtree image
+	 */
+	public MappedQuadtree(File imageFile) throws IOException
+	{
+		RandomAccessFile imageRAF = new RandomAccessFile(imageFile, "r");
+		try {
+			long length = imageRAF.length();
+			if (length < HEADER_SIZE || length > Integer.MAX_VALUE) throw new IOException("Error: \"" + imageFile + "\" is not a quadtree image.");
+			image = imageRAF.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+		}
+		finally {
+			imageRAF.close(); // The mapping stays valid after the file is closed
+		}
+
+		if (image.getInt(0) != MAGIC || image.getInt(4) != VERSION) throw new IOException("Error: \"" + imageFile + "\" is not a quadtree image.");
+		bucketSize = image.getInt(8);
+		xMin = image.getLong(12);
+		xMax = image.getLong(20);
+		yMin = image.getLong(28);
+		yMax = image.getLong(36);
+		int nodeCount = image.getInt(44);
+		int pointCount = image.getInt(48);
+		int offsetCount = image.getInt(52);
+		root = image.getInt(56);
+
+		nodesStart = HEADER_SIZE;
+		pointsStart = nodesStart + nodeCount * NODE_INTS * 4;
+		offsetsStart = pointsStart + pointCount * POINT_INTS * 4;
+		if (nodeCount < 0 || pointCount < 0 || offsetCount < 0 || root >= nodeCount || (long) offsetsStart + offsetCount * 8L != image.capacity())
+			throw new IOException("Error: Quadtree image \"" + imageFile + "\" is damaged.");
+	}
+
+	/**
+	 * Writes the image of a quadtree. Nodes are numbered in pre-order.
+	 *
+	 * @param tree The tree to be written
+	 * @param imageFile The file that receives the image
+	 * @throws IOException If the image could not be written
+	 */
+	public static void write(prQuadtree<Coordinate> tree, File imageFile) throws IOException
+	{
+		ImageBuilder builder = new ImageBuilder();
+		int rootIndex = builder.addNode(tree.root);
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(imageFile), 1 << 16));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(tree.bucket_size);
+			out.writeLong(tree.xMin);
+			out.writeLong(tree.xMax);
+			out.writeLong(tree.yMin);
+			out.writeLong(tree.yMax);
+			out.writeInt(builder.nodeCount);
+			out.writeInt(builder.pointCount);
+			out.writeInt(builder.offsetCount);
+			out.writeInt(rootIndex);
+			for (int i = 0; i < builder.nodeCount * NODE_INTS; i++) out.writeInt(builder.nodes[i]);
+			for (int i = 0; i < builder.pointCount * POINT_INTS; i++) out.writeInt(builder.points[i]);
+			for (int i = 0; i < builder.offsetCount; i++) out.writeLong(builder.offsets[i]);
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * @return The west boundary of the tree
+	 */
+	public long getXMin() { return xMin; }
+
+	/**
+	 * @return The east boundary of the tree
+	 */
+	public long getXMax() { return xMax; }
+
+	/**
+	 * @return The south boundary of the tree
+	 */
+	public long getYMin() { return yMin; }
+
+	/**
+	 * @return The north boundary of the tree
+	 */
+	public long getYMax() { return yMax; }
+
+	/**
+	 * @param x X-coordinate of the point to find
+	 * @param y Y-coordinate of the point to find
+	 * @return The offsets stored with the point, or null if the point is not in the tree
+	 */
+	public Vector<Long> find(long x, long y)
+	{
+		if (root < 0 || !inBox(x, y, xMin, xMax, yMin, yMax)) return null;
+
+		int node = root;
+		double xLo = xMin, xHi = xMax, yLo = yMin, yHi = yMax;
+		while (node >= 0)
+		{
+			if (nodeInt(node, 0) == LEAF_NODE)
+			{
+				int first = nodeInt(node, 1);
+				int count = nodeInt(node, 2);
+				for (int point = first; point < first + count; point++)
+					if (pointInt(point, 0) == x && pointInt(point, 1) == y) return offsetsOf(point, new Vector<Long>());
+				return null;
+			}
+
+			// Descend into the quadrant that holds the point, exactly like prQuadtree.findHelper()
+			if (xLo == xHi || yLo == yHi || !inBox(x, y, xLo, xHi, yLo, yHi)) return null;
+			double midX = xLo + (xHi - xLo) / 2;
+			double midY = yLo + (yHi - yLo) / 2;
+			if ((x > midX && y >= midY) || (x == midX && y == midY)) {
+				node = nodeInt(node, NE);
+				xLo = midX;
+				yLo = midY;
+			}
+			else if (x <= midX && y > midY) {
+				node = nodeInt(node, NW);
+				xHi = midX;
+				yLo = midY;
+			}
+			else if (x < midX && y <= midY) {
+				node = nodeInt(node, SW);
+				xHi = midX;
+				yHi = midY;
+			}
+			else {
+				node = nodeInt(node, SE);
+				xLo = midX;
+				yHi = midY;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param xLo West side of the search region
+	 * @param xHi East side of the search region
+	 * @param yLo South side of the search region
+	 * @param yHi North side of the search region
+	 * @return The offsets of every point inside of the region (in the order prQuadtree finds the points), or null
+	 *         if the region does not overlap the tree or the tree is empty
+	 */
+	public Vector<Long> find(long xLo, long xHi, long yLo, long yHi)
+	{
+		if (!overlaps(xLo, xHi, yLo, yHi, xMin, xMax, yMin, yMax) || root < 0) return null;
+		return collectFind(xLo, xHi, yLo, yHi, new Vector<Long>(), root, xMin, xMax, yMin, yMax);
+	}
+
+	/**
+	 * Prints the tree in the same layout as prQuadtree.printToFile().
+	 *
+	 * @param writer Writer with a reference to a file to receive the printed tree
+	 */
+	public void printToFile(Writer writer)
+	{
+		try {
+			printToFileHelper(root, "", writer);
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Rebuilds the tree as prQuadtree objects, node for node, so that it can be changed again.
+	 *
+	 * @return A prQuadtree with the same boundaries, nodes and buckets as the image
+	 */
+	public prQuadtree<Coordinate> inflate()
+	{
+		prQuadtree<Coordinate> tree = new prQuadtree<Coordinate>(xMin, xMax, yMin, yMax, bucketSize);
+		tree.root = inflateNode(tree, root);
+		return tree;
+	}
+
+	/**
+	 * @param tree Tree that the nodes are created for
+	 * @param node Index of the node to be rebuilt
+	 * @return The rebuilt node along with all of its children
+	 */
+	private prQuadtree<Coordinate>.prQuadNode inflateNode(prQuadtree<Coordinate> tree, int node)
+	{
+		if (node < 0) return null;
+		if (nodeInt(node, 0) == LEAF_NODE)
+		{
+			int first = nodeInt(node, 1);
+			int count = nodeInt(node, 2);
+			prQuadtree<Coordinate>.prQuadLeaf leaf = tree.new prQuadLeaf(coordinateOf(first));
+			for (int point = first + 1; point < first + count; point++) leaf.Elements.add(coordinateOf(point));
+			return leaf;
+		}
+		prQuadtree<Coordinate>.prQuadInternal internal = tree.new prQuadInternal();
+		internal.NW = inflateNode(tree, nodeInt(node, NW));
+		internal.NE = inflateNode(tree, nodeInt(node, NE));
+		internal.SE = inflateNode(tree, nodeInt(node, SE));
+		internal.SW = inflateNode(tree, nodeInt(node, SW));
+		return internal;
+	}
+
+	/**
+	 * @param point Index of a point
+	 * @return The point as a coordinate holding all of its offsets
+	 */
+	private Coordinate coordinateOf(int point)
+	{
+		int first = pointInt(point, 2);
+		Coordinate coordinate = new Coordinate(pointInt(point, 0), pointInt(point, 1), offsetAt(first));
+		for (int i = first + 1; i < first + pointInt(point, 3); i++) coordinate.addOffset(offsetAt(i));
+		return coordinate;
+	}
+
+	/**
+	 * Same traversal as prQuadtree.collectFind(): NE, NW, SE and then SW.
+	 */
+	private Vector<Long> collectFind(long sxLo, long sxHi, long syLo, long syHi, Vector<Long> results, int node,
+			double xLo, double xHi, double yLo, double yHi)
+	{
+		if (node < 0) return results;
+
+		if (nodeInt(node, 0) == LEAF_NODE)
+		{
+			int first = nodeInt(node, 1);
+			int count = nodeInt(node, 2);
+			for (int point = first; point < first + count; point++)
+				if (inBox(pointInt(point, 0), pointInt(point, 1), sxLo, sxHi, syLo, syHi)) offsetsOf(point, results);
+			return results;
+		}
+
+		double midX = xLo + (xHi - xLo) / 2;
+		double midY = yLo + (yHi - yLo) / 2;
+		if (overlaps(sxLo, sxHi, syLo, syHi, midX, xHi, midY, yHi))
+			results = collectFind(sxLo, sxHi, syLo, syHi, results, nodeInt(node, NE), midX, xHi, midY, yHi);
+		if (overlaps(sxLo, sxHi, syLo, syHi, xLo, midX, midY, yHi))
+			results = collectFind(sxLo, sxHi, syLo, syHi, results, nodeInt(node, NW), xLo, midX, midY, yHi);
+		if (overlaps(sxLo, sxHi, syLo, syHi, midX, xHi, yLo, midY))
+			results = collectFind(sxLo, sxHi, syLo, syHi, results, nodeInt(node, SE), midX, xHi, yLo, midY);
+		if (overlaps(sxLo, sxHi, syLo, syHi, xLo, midX, yLo, midY))
+			results = collectFind(sxLo, sxHi, syLo, syHi, results, nodeInt(node, SW), xLo, midX, yLo, midY);
+		return results;
+	}
+
+	/**
+	 * Same layout as prQuadtree.printToFileHelper(): SW and SE subtrees, the node, then the NE and NW subtrees.
+	 */
+	private void printToFileHelper(int node, String padding, Writer fileWriter) throws IOException
+	{
+		if (node < 0) {
+			fileWriter.write(padding + "*\n");
+			return;
+		}
+
+		boolean internal = nodeInt(node, 0) == INTERNAL_NODE;
+		if (internal) {
+			printToFileHelper(nodeInt(node, SW), padding + "    ", fileWriter);
+			printToFileHelper(nodeInt(node, SE), padding + "    ", fileWriter);
+			fileWriter.write(padding + "@\n");
+			printToFileHelper(nodeInt(node, NE), padding + "    ", fileWriter);
+			printToFileHelper(nodeInt(node, NW), padding + "    ", fileWriter);
+			return;
+		}
+
+		// Same text as Coordinate.toString() for every point in the bucket
+		StringBuilder builder = new StringBuilder(padding);
+		int first = nodeInt(node, 1);
+		for (int point = first; point < first + nodeInt(node, 2); point++)
+		{
+			builder.append("[(").append(pointInt(point, 0)).append(", ").append(pointInt(point, 1)).append("), ");
+			int firstOffset = pointInt(point, 2);
+			for (int i = firstOffset; i < firstOffset + pointInt(point, 3); i++) builder.append(offsetAt(i)).append(' ');
+			builder.append(']');
+		}
+		fileWriter.write(builder.append('\n').toString());
+	}
+
+	/**
+	 * @param point Index of a point
+	 * @param results Collection that receives the offsets of the point
+	 * @return The collection of offsets
+	 */
+	private Vector<Long> offsetsOf(int point, Vector<Long> results)
+	{
+		int first = pointInt(point, 2);
+		for (int i = first; i < first + pointInt(point, 3); i++) results.add(offsetAt(i));
+		return results;
+	}
+
+	/**
+	 * @param node Index of a node
+	 * @param field Position of the int inside of the node record
+	 * @return The int stored in the node record
+	 */
+	private int nodeInt(int node, int field)
+	{
+		return image.getInt(nodesStart + (node * NODE_INTS + field) * 4);
+	}
+
+	/**
+	 * @param point Index of a point
+	 * @param field Position of the int inside of the point record
+	 * @return The int stored in the point record
+	 */
+	private int pointInt(int point, int field)
+	{
+		return image.getInt(pointsStart + (point * POINT_INTS + field) * 4);
+	}
+
+	/**
+	 * @param index Index inside of the offset array
+	 * @return The offset stored at the index
+	 */
+	private long offsetAt(int index)
+	{
+		return image.getLong(offsetsStart + index * 8);
+	}
+
+	/**
+	 * Same test as Coordinate.inBox().
+	 */
+	private static boolean inBox(long x, long y, double xLo, double xHi, double yLo, double yHi)
+	{
+		return x >= xLo && x <= xHi && y >= yLo && y <= yHi;
+	}
+
+	/**
+	 * Same test as the RectRegion.overlapsWith() of prQuadtree (the search region is the first rectangle).
+	 */
+	private static boolean overlaps(double sxLo, double sxHi, double syLo, double syHi, double xLo, double xHi, double yLo, double yHi)
+	{
+		return !(sxLo >= xHi || sxHi <= xLo || syHi <= yLo || syLo >= yHi);
+	}
+
+	/**
+	 * Flattens the nodes of a prQuadtree into growable int and long arrays.
+	 */
+	private static class ImageBuilder
+	{
+		int[] nodes = new int[NODE_INTS * 1024];
+		int[] points = new int[POINT_INTS * 1024];
+		long[] offsets = new long[1024];
+		int nodeCount = 0, pointCount = 0, offsetCount = 0;
+
+		/**
+		 * @param sRoot Node to be added along with all of its children
+		 * @return Index of the node, or -1 for an empty node
+		 */
+		int addNode(prQuadtree<Coordinate>.prQuadNode sRoot)
+		{
+			if (sRoot == null) return -1;
+
+			int node = nodeCount++;
+			if (nodeCount * NODE_INTS > nodes.length) nodes = Arrays.copyOf(nodes, nodes.length * 2);
+
+			if (sRoot instanceof prQuadtree.prQuadInternal)
+			{
+				prQuadtree<Coordinate>.prQuadInternal internal = (prQuadtree<Coordinate>.prQuadInternal) sRoot;
+				nodes[node * NODE_INTS] = INTERNAL_NODE;
+				// Children are added after the node itself, so their indices are stored once they are known
+				int nw = addNode(internal.NW);
+				int ne = addNode(internal.NE);
+				int se = addNode(internal.SE);
+				int sw = addNode(internal.SW);
+				nodes[node * NODE_INTS + NW] = nw;
+				nodes[node * NODE_INTS + NE] = ne;
+				nodes[node * NODE_INTS + SE] = se;
+				nodes[node * NODE_INTS + SW] = sw;
+			}
+			else
+			{
+				prQuadtree<Coordinate>.prQuadLeaf leaf = (prQuadtree<Coordinate>.prQuadLeaf) sRoot;
+				nodes[node * NODE_INTS] = LEAF_NODE;
+				nodes[node * NODE_INTS + 1] = pointCount;
+				nodes[node * NODE_INTS + 2] = leaf.Elements.size();
+				for (Coordinate coordinate : leaf.Elements) addPoint(coordinate);
+			}
+			return node;
+		}
+
+		/**
+		 * @param coordinate Point to be added along with all of its offsets
+		 */
+		void addPoint(Coordinate coordinate)
+		{
+			if ((pointCount + 1) * POINT_INTS > points.length) points = Arrays.copyOf(points, points.length * 2);
+			Vector<Long> pointOffsets = coordinate.grabOffsets();
+
+			int base = pointCount++ * POINT_INTS;
+			points[base] = (int) coordinate.getX();
+			points[base + 1] = (int) coordinate.getY();
+			points[base + 2] = offsetCount;
+			points[base + 3] = pointOffsets.size();
+			for (Long offset : pointOffsets)
+			{
+				if (offsetCount == offsets.length) offsets = Arrays.copyOf(offsets, offsets.length * 2);
+				offsets[offsetCount++] = offset;
+			}
+		}
+	}
+
+}
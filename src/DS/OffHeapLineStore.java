@@ -0,0 +1,203 @@
+package DS;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The purpose of this class is to hold record lines outside of the Java heap, so that a large buffer pool does not
+ * grow the heap or the garbage collection pauses. Lines are stored as their raw bytes in slabs of direct byte buffers.
+ * Each slab serves one size class (a power of two from 64 bytes to 64 KB) and is cut into chunks of that size; a chunk
+ * holds the length of the line in its first two bytes, followed by the bytes of the line. Freed chunks are kept on a
+ * free list of their size class and reused before a new slab is allocated. A line too long for the largest class is
+ * given a direct buffer of its own.<p>
+ *
+ * A stored line is identified by a handle (the slab number in the high half and the position of the chunk in the low half).
+ */
+public class OffHeapLineStore
+{
+	/** Bytes in a slab */
+	private static final int SLAB_SIZE = 1 << 20;
+	/** log2 of the smallest chunk size */
+	private static final int MIN_CLASS_SHIFT = 6;
+	/** log2 of the largest chunk size */
+	private static final int MAX_CLASS_SHIFT = 16;
+	/** Bytes in front of each line that hold its length */
+	private static final int HEADER = 2;
+	/** Size class of slabs that hold a single long line */
+	private static final int SINGLE_LINE = -1;
+
+	/** Slabs allocated so far (null for the slab of a long line that was freed) */
+	private ByteBuffer[] slabs = new ByteBuffer[16];
+	/** Size class of each slab */
+	private int[] slabClasses = new int[16];
+	/** Number of slabs allocated */
+	private int slabCount = 0;
+	/** Free chunks of each size class */
+	private long[][] freeChunks = new long[MAX_CLASS_SHIFT - MIN_CLASS_SHIFT + 1][];
+	/** Number of free chunks of each size class */
+	private int[] freeCounts = new int[MAX_CLASS_SHIFT - MIN_CLASS_SHIFT + 1];
+	/** Number of direct bytes allocated */
+	private long bytesAllocated = 0;
+	/** Number of bytes of the stored lines */
+	private long bytesStored = 0;
+
+	/**
+	 * @param line Record line to be stored (one byte per character)
+	 * @return The handle of the stored line
+	 */
+	public long put(String line)
+	{
+		byte[] bytes = line.getBytes(StandardCharsets.ISO_8859_1);
+		long handle = allocate(bytes.length + HEADER);
+		ByteBuffer slab = slabs[slabOf(handle)];
+		int position = positionOf(handle);
+		slab.putShort(position, (short) Math.min(bytes.length, 0xFFFF));
+		slab.put(position + HEADER, bytes);
+		bytesStored += bytes.length;
+		return handle;
+	}
+
+	/**
+	 * @param handle Handle of a stored line
+	 * @return Number of bytes in the line
+	 */
+	public int length(long handle)
+	{
+		ByteBuffer slab = slabs[slabOf(handle)];
+		if (slabClasses[slabOf(handle)] == SINGLE_LINE) return slab.capacity() - HEADER;
+		return slab.getShort(positionOf(handle)) & 0xFFFF;
+	}
+
+	/**
+	 * @param handle Handle of a stored line
+	 * @param destination Array that receives the bytes of the line (at least length(handle) bytes)
+	 * @return Number of bytes in the line
+	 */
+	public int read(long handle, byte[] destination)
+	{
+		int length = length(handle);
+		slabs[slabOf(handle)].get(positionOf(handle) + HEADER, destination, 0, length);
+		return length;
+	}
+
+	/**
+	 * @param handle Handle of a stored line
+	 * @return The stored line
+	 */
+	public String getLine(long handle)
+	{
+		byte[] bytes = new byte[length(handle)];
+		read(handle, bytes);
+		return new String(bytes, StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * @param handle Handle of a stored line, which may not be used again
+	 */
+	public void free(long handle)
+	{
+		int slab = slabOf(handle);
+		bytesStored -= length(handle);
+		if (slabClasses[slab] == SINGLE_LINE)
+		{
+			bytesAllocated -= slabs[slab].capacity();
+			slabs[slab] = null; // Released once the buffer is garbage collected
+			return;
+		}
+
+		int sizeClass = slabClasses[slab];
+		if (freeChunks[sizeClass] == null) freeChunks[sizeClass] = new long[64];
+		if (freeCounts[sizeClass] == freeChunks[sizeClass].length) freeChunks[sizeClass] = Arrays.copyOf(freeChunks[sizeClass], freeCounts[sizeClass] * 2);
+		freeChunks[sizeClass][freeCounts[sizeClass]++] = handle;
+	}
+
+	/**
+	 * @return Number of direct bytes allocated for the slabs
+	 */
+	public long getBytesAllocated() {
+		return bytesAllocated;
+	}
+
+	/**
+	 * @return Number of bytes of the stored lines
+	 */
+	public long getBytesStored() {
+		return bytesStored;
+	}
+
+	/**
+	 * @param size Number of bytes needed
+	 * @return Handle of a chunk of at least that many bytes
+	 */
+	private long allocate(int size)
+	{
+		int shift = MIN_CLASS_SHIFT;
+		while ((1 << shift) < size) shift++;
+		if (shift > MAX_CLASS_SHIFT) return handle(newSlab(size, SINGLE_LINE), 0);
+
+		int sizeClass = shift - MIN_CLASS_SHIFT;
+		if (freeCounts[sizeClass] == 0)
+		{
+			// Cut a new slab into chunks of the class, all of them free
+			int slab = newSlab(SLAB_SIZE, sizeClass);
+			int chunks = SLAB_SIZE >>> shift;
+			if (freeChunks[sizeClass] == null || freeChunks[sizeClass].length < chunks) freeChunks[sizeClass] = new long[Math.max(chunks, 64)];
+			for (int chunk = chunks - 1; chunk >= 0; chunk--) freeChunks[sizeClass][freeCounts[sizeClass]++] = handle(slab, chunk << shift);
+		}
+		return freeChunks[sizeClass][--freeCounts[sizeClass]];
+	}
+
+	/**
+	 * @param size Number of bytes in the slab
+	 * @param sizeClass Size class served by the slab
+	 * @return Number of the new slab
+	 */
+	private int newSlab(int size, int sizeClass)
+	{
+		// Reuse the number of a slab that held a freed long line
+		int slab = 0;
+		while (slab < slabCount && slabs[slab] != null) slab++;
+		if (slab == slabCount)
+		{
+			if (slabCount == slabs.length) {
+				slabs = Arrays.copyOf(slabs, slabCount * 2);
+				slabClasses = Arrays.copyOf(slabClasses, slabCount * 2);
+			}
+			slabCount++;
+		}
+		slabs[slab] = ByteBuffer.allocateDirect(size);
+		slabClasses[slab] = sizeClass;
+		bytesAllocated += size;
+		return slab;
+	}
+
+	/**
+	 * @param slab Number of a slab
+	 * @param position Position of a chunk inside of the slab
+	 * @return The handle of the chunk
+	 */
+	private static long handle(int slab, int position)
+	{
+		return ((long) slab << 32) | position;
+	}
+
+	/**
+	 * @param handle Handle of a chunk
+	 * @return Number of the slab that holds the chunk
+	 */
+	private static int slabOf(long handle)
+	{
+		return (int) (handle >>> 32);
+	}
+
+	/**
+	 * @param handle Handle of a chunk
+	 * @return Position of the chunk inside of its slab
+	 */
+	private static int positionOf(long handle)
+	{
+		return (int) handle;
+	}
+
+}
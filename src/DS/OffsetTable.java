@@ -0,0 +1,236 @@
+package DS;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The purpose of this class is to map file offsets (non-negative longs) to non-negative int values
+ * without boxing either of them.  Keys and values are kept in two parallel primitive arrays that
+ * are probed linearly; removals shift the following entries back so no tombstones are needed.
+ */
+public class OffsetTable
+{
+	/** Key stored in slots that hold no entry */
+	private static final long EMPTY = -1;
+	/** Fraction of the slots that may be used before the table doubles */
+	private static final float LOAD_FACTOR = .60f;
+
+	/** Offsets stored in the table (EMPTY for free slots) */
+	private long[] keys;
+	/** Value stored for the offset in the same slot */
+	private int[] values;
+	/** Number of entries in the table */
+	private int count = 0;
+	/** Table length - 1 (the table length is always a power of two) */
+	private int mask;
+	/** Number of entries at which the table doubles */
+	private int resizeThreshold;
+
+	/**
+	 * Constructs an empty table with room for 1024 entries before it needs to grow.
+	 */
+	public OffsetTable()
+	{
+		this(1024);
+	}
+
+	/**
+	 * @param expectedEntries Number of entries the table should hold before it needs to grow
+	 */
+	public OffsetTable(int expectedEntries)
+	{
+		int length = 16;
+		while (length * LOAD_FACTOR < expectedEntries) length <<= 1;
+		allocate(length);
+	}
+
+	/**
+	 * @param offset File offset used as the key (must not be negative)
+	 * @param value Value to be stored for the offset (must not be negative)
+	 */
+	public void put(long offset, int value)
+	{
+		if (offset < 0 || value < 0) throw new IllegalArgumentException("Error: Offset table only stores non-negative offsets and values.");
+
+		int slot = slotFor(offset);
+		while (keys[slot] != EMPTY)
+		{
+			if (keys[slot] == offset) {
+				values[slot] = value;
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = offset;
+		values[slot] = value;
+		if (++count >= resizeThreshold) resize();
+	}
+
+	/**
+	 * @param offset File offset to look up
+	 * @return The value stored for the offset, or -1 if the offset is not in the table
+	 */
+	public int get(long offset)
+	{
+		if (offset < 0) return -1;
+		int slot = slotFor(offset);
+		while (keys[slot] != EMPTY)
+		{
+			if (keys[slot] == offset) return values[slot];
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * @param offset File offset to look up
+	 * @return True if the offset is in the table
+	 */
+	public boolean contains(long offset)
+	{
+		return get(offset) >= 0;
+	}
+
+	/**
+	 * @param offset File offset to remove from the table
+	 * @return The value that was stored for the offset, or -1 if it was not in the table
+	 */
+	public int remove(long offset)
+	{
+		if (offset < 0) return -1;
+		int slot = slotFor(offset);
+		while (keys[slot] != offset)
+		{
+			if (keys[slot] == EMPTY) return -1;
+			slot = (slot + 1) & mask;
+		}
+		int removed = values[slot];
+
+		// Shift back the entries that follow so that every probe sequence stays unbroken
+		int hole = slot;
+		int next = (hole + 1) & mask;
+		while (keys[next] != EMPTY)
+		{
+			int home = slotFor(keys[next]);
+			// Move the entry into the hole unless its home lies cyclically between the hole and its slot
+			if (((next - home) & mask) >= ((next - hole) & mask))
+			{
+				keys[hole] = keys[next];
+				values[hole] = values[next];
+				hole = next;
+			}
+			next = (next + 1) & mask;
+		}
+		keys[hole] = EMPTY;
+		count--;
+		return removed;
+	}
+
+	/**
+	 * @return The number of entries in the table
+	 */
+	public int size()
+	{
+		return count;
+	}
+
+	/**
+	 * Removes every entry from the table.
+	 */
+	public void clear()
+	{
+		Arrays.fill(keys, EMPTY);
+		count = 0;
+	}
+
+	/**
+	 * @return Approximate number of bytes used by the arrays of the table
+	 */
+	public long memoryBytes()
+	{
+		return (long) keys.length * (8 + 4);
+	}
+
+	/**
+	 * @param out Stream that receives every entry of the table
+	 * @throws IOException If the table could not be written
+	 */
+	public void write(DataOutputStream out) throws IOException
+	{
+		out.writeInt(count);
+		for (int i = 0; i < keys.length; i++)
+		{
+			if (keys[i] == EMPTY) continue;
+			out.writeLong(keys[i]);
+			out.writeInt(values[i]);
+		}
+	}
+
+	/**
+	 * Replaces the contents of the table with the entries written by write().
+	 *
+	 * @param in Stream positioned at a table written by write()
+	 * @throws IOException If the table could not be read
+	 */
+	public void read(DataInputStream in) throws IOException
+	{
+		int entries = in.readInt();
+		if (entries < 0) throw new IOException("Error: Offset table snapshot has a negative size.");
+
+		int length = 16;
+		while (length * LOAD_FACTOR <= entries) length <<= 1;
+		allocate(length);
+		count = 0;
+		for (int i = 0; i < entries; i++)
+		{
+			long offset = in.readLong();
+			int value = in.readInt();
+			if (offset < 0 || value < 0) throw new IOException("Error: Offset table snapshot has a negative entry.");
+			put(offset, value);
+		}
+	}
+
+	/**
+	 * @param offset File offset to be hashed
+	 * @return The home slot of the offset
+	 */
+	private int slotFor(long offset)
+	{
+		// Fibonacci hashing spreads the (mostly sequential) offsets over the whole table
+		return (int) ((offset * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+	}
+
+	/**
+	 * @param length Number of slots in the new arrays (a power of two)
+	 */
+	private void allocate(int length)
+	{
+		keys = new long[length];
+		values = new int[length];
+		Arrays.fill(keys, EMPTY);
+		mask = length - 1;
+		resizeThreshold = (int) (length * LOAD_FACTOR);
+	}
+
+	/**
+	 * Doubles the size of the table and places every entry back into it.
+	 */
+	private void resize()
+	{
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		allocate(oldKeys.length * 2);
+
+		for (int i = 0; i < oldKeys.length; i++)
+		{
+			if (oldKeys[i] == EMPTY) continue;
+			int slot = slotFor(oldKeys[i]);
+			while (keys[slot] != EMPTY) slot = (slot + 1) & mask;
+			keys[slot] = oldKeys[i];
+			values[slot] = oldValues[i];
+		}
+	}
+
+}
@@ -0,0 +1,82 @@
+package DS;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * The purpose of this class is to save the offsets of the records held by the buffer pool next to the database
+ * file, so that the next run can load the same records into its pool before they are asked for. The offsets are
+ * saved in the order in which the pool would keep them, the most valuable first. A manifest is only used when the
+ * database file still has the length it had when the manifest was written.
+ *
+ * <b>Format of file:</b> magic, version, database length, number of offsets, offsets.
+ */
+public class PoolManifest
+{
+	/** Identifies a manifest file ("GISP") */
+	private static final int MAGIC = 0x47495350;
+	/** Version of the manifest format, manifests of any other version are ignored */
+	private static final int VERSION = 1;
+
+	/**
+	 * Writes a manifest. It is written to a temporary file first and then moved over the previous one,
+	 * so an interrupted save never leaves a half written manifest behind.
+	 *
+	 * @param manifestFile The file that will hold the manifest
+	 * @param databaseFile The database file that holds the records
+	 * @param offsets Offsets of the records held by the pool, the most valuable first
+	 * @throws IOException If the manifest could not be written
+	 */
+	public static void save(File manifestFile, File databaseFile, long[] offsets) throws IOException
+	{
+		File tempFile = new File(manifestFile.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 1 << 16));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(databaseFile.length());
+			out.writeInt(offsets.length);
+			for (long offset : offsets) out.writeLong(offset);
+		}
+		finally {
+			out.close();
+		}
+		Files.move(tempFile.toPath(), manifestFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * @param manifestFile The file that holds the manifest
+	 * @param databaseFile The database file that holds the records
+	 * @return The offsets saved in the manifest, the most valuable first, or null if there is no manifest
+	 *         or it does not match the database file
+	 * @throws IOException If the manifest matches the database file but could not be read
+	 */
+	public static long[] load(File manifestFile, File databaseFile) throws IOException
+	{
+		if (!manifestFile.isFile() || !databaseFile.isFile()) return null;
+
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(manifestFile), 1 << 16));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+			if (in.readLong() != databaseFile.length()) return null;
+
+			int count = in.readInt();
+			if (count < 0) throw new IOException("Error: Pool manifest \"" + manifestFile + "\" is corrupt.");
+			long[] offsets = new long[count];
+			for (int i = 0; i < count; i++) offsets[i] = in.readLong();
+			return offsets;
+		}
+		finally {
+			in.close();
+		}
+	}
+
+}
@@ -0,0 +1,200 @@
+package DS;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * The purpose of this class is to read the records listed by a pool manifest on a background thread right after
+ * startup. The records are read in file order, with records that lie close together fetched by a single read, and
+ * each read is handed over as a batch of lines. The pool takes the batches on its own thread whenever it looks up
+ * a record, so the pool itself never has to be shared with the reader. The reader uses its own channel of the
+ * database file and copies the lengths of the records before it starts, so it never touches the shared tables.
+ */
+public class PoolWarmer
+{
+	/** Largest gap between two records that are still read together */
+	private static final int MAX_READ_GAP = 4 * 1024;
+	/** Largest number of bytes read at once */
+	private static final int MAX_READ_SIZE = 256 * 1024;
+
+	/**
+	 * Lines read together by the warmer.
+	 */
+	public static final class Batch
+	{
+		/** Offset of each line */
+		public final long[] offsets;
+		/** Lines that were read (null for a line that could not be read) */
+		public final String[] lines;
+
+		/**
+		 * @param offsets Offset of each line
+		 * @param lines Lines that were read
+		 */
+		Batch(long[] offsets, String[] lines)
+		{
+			this.offsets = offsets;
+			this.lines = lines;
+		}
+	}
+
+	/** The database file */
+	private RandomAccessFile file;
+	/** Channel used for the reads */
+	private FileChannel channel;
+	/** Offsets of the records to be read, in file order */
+	private long[] offsets;
+	/** Byte length of the record at each of those offsets */
+	private int[] lengths;
+	/** Batches that were read and not yet taken */
+	private ArrayDeque<Batch> ready = new ArrayDeque<Batch>();
+	/** Set once every record was read or the warmer was closed */
+	private boolean finished = false;
+	/** Set once the warmer has been closed */
+	private volatile boolean closed = false;
+	/** Number of records read */
+	private int recordsRead = 0;
+	/** Reader thread */
+	private Thread reader;
+
+	/**
+	 * Starts reading the records at the given offsets. Offsets of unknown length are skipped.
+	 *
+	 * @param databaseFile The database file that holds the records
+	 * @param lengths Byte length of each record keyed by its offset
+	 * @param manifestOffsets Offsets of the records to be read
+	 * @throws IOException If the database file could not be opened
+	 */
+	public PoolWarmer(File databaseFile, OffsetTable lengths, long[] manifestOffsets) throws IOException
+	{
+		// Records of known length, each offset once, in file order
+		long[] sorted = new long[manifestOffsets.length];
+		int count = 0;
+		for (long offset : manifestOffsets) if (lengths.get(offset) >= 0) sorted[count++] = offset;
+		Arrays.sort(sorted, 0, count);
+		int distinct = 0;
+		for (int i = 0; i < count; i++) if (distinct == 0 || sorted[i] != sorted[distinct - 1]) sorted[distinct++] = sorted[i];
+		offsets = Arrays.copyOf(sorted, distinct);
+		this.lengths = new int[distinct];
+		for (int i = 0; i < distinct; i++) this.lengths[i] = lengths.get(offsets[i]);
+
+		file = new RandomAccessFile(databaseFile, "r");
+		channel = file.getChannel();
+		reader = new Thread(new Runnable() {
+			public void run() {
+				readAll();
+			}
+		}, "GIS pool warmer");
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	/**
+	 * @return The next batch of lines that were read, or null if none is ready
+	 */
+	public synchronized Batch poll()
+	{
+		return ready.poll();
+	}
+
+	/**
+	 * @return True once every record was read and every batch was taken
+	 */
+	public synchronized boolean isDone()
+	{
+		return finished && ready.isEmpty();
+	}
+
+	/**
+	 * @return Number of records the warmer was asked to read
+	 */
+	public int getRecordCount() {
+		return offsets.length;
+	}
+
+	/**
+	 * @return Number of records read so far
+	 */
+	public synchronized int getRecordsRead() {
+		return recordsRead;
+	}
+
+	/**
+	 * Stops the reader thread, drops the batches that were not taken and closes the database file.
+	 */
+	public void close()
+	{
+		closed = true;
+		try {
+			reader.join();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		synchronized (this) {
+			ready.clear();
+			finished = true;
+		}
+		try {
+			file.close();
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Body of the reader thread: reads the records in spans of neighbouring records.
+	 */
+	private void readAll()
+	{
+		int first = 0;
+		while (first < offsets.length && !closed)
+		{
+			// Extend the read over the following records while they are close enough
+			long start = offsets[first];
+			long end = start + lengths[first];
+			int last = first;
+			while (last + 1 < offsets.length)
+			{
+				long nextEnd = offsets[last + 1] + lengths[last + 1];
+				if (offsets[last + 1] - end > MAX_READ_GAP || nextEnd - start > MAX_READ_SIZE) break;
+				end = Math.max(end, nextEnd);
+				last++;
+			}
+
+			String[] lines = new String[last - first + 1];
+			try {
+				ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+				while (buffer.hasRemaining())
+				{
+					if (channel.read(buffer, start + buffer.position()) < 0) break;
+				}
+				for (int i = first; i <= last; i++)
+				{
+					int from = (int) (offsets[i] - start);
+					if (from + lengths[i] <= buffer.position()) lines[i - first] = new String(buffer.array(), from, lengths[i], StandardCharsets.ISO_8859_1);
+				}
+			}
+			catch (IOException e) {
+				// The lines stay missing, the records are then read when they are asked for
+			}
+
+			synchronized (this) {
+				ready.add(new Batch(Arrays.copyOfRange(offsets, first, last + 1), lines));
+				recordsRead += lines.length;
+			}
+			first = last + 1;
+		}
+		synchronized (this) {
+			finished = true;
+		}
+	}
+
+}
@@ -0,0 +1,401 @@
+package DS;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The purpose of this class is to read the records of a search result on background threads while the results
+ * that were already read are being printed. The records are grouped into spans of neighbouring records, each span
+ * is read with a single read, and the spans are read in the order in which their first record will be needed.
+ * The lines that were read wait in a staging area until they are taken.<p>
+ *
+ * At most one span per reader thread is read at a time, and a reader waits before starting a span while the
+ * staged lines and the spans being read would exceed the memory limit. A record whose span no reader has started
+ * yet is read by the thread that takes it, so a full staging area can never stall the printing of the results.
+ * The readers use their own channel of the database file, which is safe to read from several threads at once,
+ * and the lengths of the records of a batch are copied when it starts, so the readers never touch the shared tables.
+ */
+public class Prefetcher
+{
+	/** Largest gap between two records that are still read together */
+	private static final int MAX_READ_GAP = 4 * 1024;
+	/** Largest number of bytes read at once */
+	private static final int MAX_READ_SIZE = 64 * 1024;
+
+	/** Span that no thread has started to read */
+	private static final byte NOT_STARTED = 0;
+	/** Span that a thread is reading */
+	private static final byte READING = 1;
+	/** Span whose lines are staged (or could not be read) */
+	private static final byte DONE = 2;
+
+	/** The database file */
+	private RandomAccessFile file;
+	/** Channel used for the positional reads of every thread */
+	private FileChannel channel;
+	/** Byte length of each record keyed by its offset */
+	private OffsetTable recordLengths;
+	/** Most bytes that may be staged or being read at once */
+	private final long maxStagedBytes;
+	/** Reader threads */
+	private Thread[] readers;
+
+	/** Number of the current batch, lets readers drop spans of a batch that has ended */
+	private int batch = 0;
+	/** Offsets of the current batch that were not buffered, in file order */
+	private long[] offsets = new long[0];
+	/** Byte length of the record at each of those offsets */
+	private int[] lengths = new int[0];
+	/** Line of each record that was read and not yet taken */
+	private String[] staged = new String[0];
+	/** Position in offsets of each offset of the current batch */
+	private OffsetTable recordIndex = new OffsetTable(16);
+	/** Span of each record */
+	private int[] recordSpans = new int[0];
+	/** First record (index into offsets) of each span */
+	private int[] spanFirst = new int[0];
+	/** Record after the last record of each span */
+	private int[] spanEnd = new int[0];
+	/** Number of bytes read for each span */
+	private int[] spanSizes = new int[0];
+	/** State of each span */
+	private byte[] spanStates = new byte[0];
+	/** Spans in the order in which their first record will be needed */
+	private int[] readOrder = new int[0];
+	/** Position in readOrder of the next span a reader may start */
+	private int nextSpan = 0;
+	/** Bytes of the staged lines and of the spans being read */
+	private long stagedBytes = 0;
+	/** Set while a reader waits for staged lines to be taken */
+	private boolean memoryBlocked = false;
+	/** Set once the prefetcher has been closed */
+	private boolean closed = false;
+
+	/** Number of spans read by the reader threads */
+	private long backgroundReads = 0;
+	/** Number of spans read by the thread that needed them */
+	private long foregroundReads = 0;
+	/** Number of lines taken from the staging area */
+	private long stagedHits = 0;
+
+	/**
+	 * @param databaseFile The database file that holds the records
+	 * @param lengths Byte length of each record keyed by its offset
+	 * @param readerCount Number of reader threads, which is the number of reads in flight at once (at least 1)
+	 * @param maxBytes Most bytes that may be staged or being read at once
+	 * @throws IOException If the database file could not be opened
+	 */
+	public Prefetcher(File databaseFile, OffsetTable lengths, int readerCount, long maxBytes) throws IOException
+	{
+		if (readerCount < 1) throw new IllegalArgumentException("Error: The prefetcher needs at least one reader thread.");
+		if (maxBytes < 1) throw new IllegalArgumentException("Error: The prefetcher memory limit must be positive.");
+		file = new RandomAccessFile(databaseFile, "r");
+		channel = file.getChannel();
+		recordLengths = lengths;
+		maxStagedBytes = maxBytes;
+
+		readers = new Thread[readerCount];
+		for (int i = 0; i < readerCount; i++)
+		{
+			readers[i] = new Thread(new Runnable() {
+				public void run() {
+					readSpans();
+				}
+			}, "GIS prefetcher " + (i + 1));
+			readers[i].setDaemon(true);
+			readers[i].start();
+		}
+	}
+
+	/**
+	 * Starts reading the records at the given offsets, ending the previous batch.
+	 *
+	 * @param neededOffsets Offsets of the records that are not buffered, in the order in which they will be taken
+	 *        (offsets of unknown length are ignored)
+	 */
+	public synchronized void start(long[] neededOffsets)
+	{
+		discard();
+
+		// Records of known length, each offset once, in file order
+		long[] sorted = new long[neededOffsets.length];
+		int count = 0;
+		for (long offset : neededOffsets) if (recordLengths.get(offset) >= 0) sorted[count++] = offset;
+		Arrays.sort(sorted, 0, count);
+		int distinct = 0;
+		for (int i = 0; i < count; i++) if (distinct == 0 || sorted[i] != sorted[distinct - 1]) sorted[distinct++] = sorted[i];
+		offsets = Arrays.copyOf(sorted, distinct);
+		lengths = new int[distinct];
+		for (int i = 0; i < distinct; i++) lengths[i] = recordLengths.get(offsets[i]);
+
+		// Group neighbouring records into spans
+		int[] first = new int[distinct];
+		int[] end = new int[distinct];
+		int[] sizes = new int[distinct];
+		int spans = 0;
+		for (int i = 0; i < distinct; )
+		{
+			long start = offsets[i];
+			long spanLimit = start + lengths[i];
+			int last = i;
+			while (last + 1 < distinct)
+			{
+				long next = offsets[last + 1];
+				long nextEnd = next + lengths[last + 1];
+				if (next - spanLimit > MAX_READ_GAP || nextEnd - start > MAX_READ_SIZE) break;
+				spanLimit = Math.max(spanLimit, nextEnd);
+				last++;
+			}
+			first[spans] = i;
+			sizes[spans] = (int) (spanLimit - start);
+			end[spans++] = last + 1;
+			i = last + 1;
+		}
+		spanFirst = Arrays.copyOf(first, spans);
+		spanEnd = Arrays.copyOf(end, spans);
+		spanSizes = Arrays.copyOf(sizes, spans);
+		spanStates = new byte[spans];
+		staged = new String[distinct];
+		recordIndex = new OffsetTable(distinct);
+		recordSpans = new int[distinct];
+		for (int span = 0; span < spans; span++)
+		{
+			for (int i = spanFirst[span]; i < spanEnd[span]; i++) {
+				recordIndex.put(offsets[i], i);
+				recordSpans[i] = span;
+			}
+		}
+
+		// Read the spans in the order their first record is needed
+		readOrder = new int[spans];
+		int ordered = 0;
+		boolean[] queued = new boolean[spans];
+		for (long offset : neededOffsets)
+		{
+			int record = recordIndex.get(offset);
+			int span = (record >= 0) ? recordSpans[record] : -1;
+			if (span >= 0 && !queued[span]) {
+				queued[span] = true;
+				readOrder[ordered++] = span;
+			}
+		}
+		nextSpan = 0;
+		notifyAll();
+	}
+
+	/**
+	 * @param offset Offset of a record of the current batch
+	 * @return The line of the record, or null if the offset is not part of the batch, was already taken or could not be read
+	 * @throws InterruptedException If the thread was interrupted while waiting for a reader
+	 */
+	public String take(long offset) throws InterruptedException
+	{
+		int record;
+		int span;
+		int spanBatch;
+		synchronized (this)
+		{
+			record = recordIndex.get(offset);
+			if (record < 0) return null;
+			span = recordSpans[record];
+			while (spanStates[span] == READING) wait();
+			if (spanStates[span] == DONE) return removeStaged(record);
+
+			// No reader has reached the span yet, read it on this thread rather than waiting
+			spanStates[span] = READING;
+			stagedBytes += spanSizes[span];
+			spanBatch = batch;
+			foregroundReads++;
+		}
+		readSpan(span, spanBatch);
+		synchronized (this) {
+			return (spanBatch == batch) ? removeStaged(record) : null;
+		}
+	}
+
+	/**
+	 * Ends the current batch and drops the lines that were not taken.
+	 */
+	public synchronized void finish()
+	{
+		discard();
+		offsets = new long[0];
+		lengths = recordSpans = spanFirst = spanEnd = spanSizes = readOrder = new int[0];
+		spanStates = new byte[0];
+		staged = new String[0];
+		recordIndex = new OffsetTable(16);
+	}
+
+	/**
+	 * Stops the reader threads and closes the database file.
+	 *
+	 * @throws IOException If the database file could not be closed
+	 */
+	public void close() throws IOException
+	{
+		synchronized (this) {
+			finish();
+			closed = true;
+			notifyAll();
+		}
+		for (Thread reader : readers)
+		{
+			try {
+				reader.join();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		file.close();
+	}
+
+	/**
+	 * @return A line describing the work of the prefetcher since it was created
+	 */
+	public synchronized String getStatistics()
+	{
+		return "Prefetch readers: " + readers.length + ", memory limit: " + maxStagedBytes + " bytes, background reads: " + backgroundReads
+				+ ", foreground reads: " + foregroundReads + ", staged lines taken: " + stagedHits;
+	}
+
+	/**
+	 * Body of the reader threads: reads the spans of each batch in order, within the memory limit.
+	 */
+	private void readSpans()
+	{
+		while (true)
+		{
+			int span;
+			int spanBatch;
+			synchronized (this)
+			{
+				try {
+					while (!closed && !canStartSpan()) wait();
+				}
+				catch (InterruptedException e) {
+					return;
+				}
+				if (closed) return;
+
+				span = readOrder[nextSpan++];
+				spanStates[span] = READING;
+				stagedBytes += spanSizes[span];
+				spanBatch = batch;
+				backgroundReads++;
+			}
+			readSpan(span, spanBatch);
+		}
+	}
+
+	/**
+	 * Skips the spans that were already started and checks the memory limit (one span may always be read).
+	 *
+	 * @return True if a reader may start the next span of readOrder
+	 */
+	private boolean canStartSpan()
+	{
+		while (nextSpan < readOrder.length && spanStates[readOrder[nextSpan]] != NOT_STARTED) nextSpan++;
+		if (nextSpan >= readOrder.length) return false;
+		memoryBlocked = stagedBytes > 0 && stagedBytes + spanSizes[readOrder[nextSpan]] > maxStagedBytes;
+		return !memoryBlocked;
+	}
+
+	/**
+	 * Reads a span that the calling thread has marked as READING and stages its lines.
+	 *
+	 * @param span The span to be read
+	 * @param spanBatch The batch the span belongs to
+	 */
+	private void readSpan(int span, int spanBatch)
+	{
+		// The arrays of a batch are replaced, never changed, when another batch starts
+		long[] batchOffsets;
+		int[] batchLengths;
+		int first, end, size;
+		synchronized (this) {
+			if (spanBatch != batch) return;
+			batchOffsets = offsets;
+			batchLengths = lengths;
+			first = spanFirst[span];
+			end = spanEnd[span];
+			size = spanSizes[span];
+		}
+
+		// Read outside of the lock so that the other threads keep going
+		long start = batchOffsets[first];
+		String[] lines = new String[end - first];
+		try {
+			ByteBuffer buffer = ByteBuffer.allocate(size);
+			while (buffer.hasRemaining())
+			{
+				if (channel.read(buffer, start + buffer.position()) < 0) break;
+			}
+			byte[] bytes = buffer.array();
+			for (int i = first; i < end; i++)
+			{
+				int from = (int) (batchOffsets[i] - start);
+				if (from + batchLengths[i] <= buffer.position()) lines[i - first] = new String(bytes, from, batchLengths[i], StandardCharsets.ISO_8859_1);
+			}
+		}
+		catch (IOException e) {
+			// The lines stay missing, each of them is then read on its own by the pool
+		}
+
+		synchronized (this)
+		{
+			if (spanBatch != batch) return;
+			stagedBytes -= size;
+			for (int i = 0; i < lines.length; i++)
+			{
+				if (lines[i] == null) continue;
+				staged[first + i] = lines[i];
+				stagedBytes += lines[i].length();
+			}
+			spanStates[span] = DONE;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * @param record Position in offsets of a record of the current batch
+	 * @return The line, which is removed from the staging area, or null if it is not staged
+	 */
+	private String removeStaged(int record)
+	{
+		String line = staged[record];
+		if (line != null) 
+		{
+			staged[record] = null;
+			stagedBytes -= line.length();
+			stagedHits++;
+			
+			// Only wake the readers when one of them waits for room
+			if (memoryBlocked) {
+				memoryBlocked = false;
+				notifyAll();
+			}
+		}
+		return line;
+	}
+
+	/**
+	 * Drops the staged lines and makes the readers ignore the spans of the current batch.
+	 */
+	private void discard()
+	{
+		batch++;
+		Arrays.fill(staged, null);
+		stagedBytes = 0;
+		memoryBlocked = false;
+		nextSpan = readOrder.length;
+		notifyAll();
+	}
+
+}
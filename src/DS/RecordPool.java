@@ -0,0 +1,79 @@
+package DS;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Vector;
+import Types.Record;
+
+/**
+ * The purpose of this interface is to let the controller look up records through either the single threaded
+ * buffer pool or the concurrent one without knowing which of them it holds.
+ */
+public interface RecordPool
+{
+	/**
+	 * @param desiredOffset Offset value in the database file where the desired record is found
+	 * @return The desired record at the provided offset or null if the offset value wasnt found
+	 */
+	public Record grabRecordWithOffset(long desiredOffset);
+
+	/**
+	 * @param offsets Offsets in the database file of the desired records
+	 * @return The record at each offset, in the order of the offsets (null for offsets where no record was found)
+	 */
+	public Record[] grabRecordsWithOffsets(Vector<Long> offsets);
+
+	/**
+	 * @param offsets Offsets in the database file of the desired records
+	 * @return The record at each offset, in the order of the offsets (null for offsets where no record was found)
+	 */
+	public Record[] grabRecordsWithOffsets(long[] offsets);
+
+	/**
+	 * Starts reading the records at the given offsets ahead of their lookups, when the pool is able to.
+	 *
+	 * @param offsets Offsets of the records that are about to be looked up, in lookup order
+	 * @return True if the records are being prefetched (endPrefetch() must then be called once they were looked up)
+	 */
+	public boolean prefetch(Vector<Long> offsets);
+
+	/**
+	 * Drops the prefetched records that were not looked up.
+	 */
+	public void endPrefetch();
+
+	/**
+	 * Starts loading the records listed by a pool manifest in the background. The loaded records only fill
+	 * free slots, they never replace records that were looked up in the meantime.
+	 *
+	 * @param offsets Offsets of the records to be loaded, the most valuable first
+	 * @throws IOException If the database file could not be opened
+	 */
+	public void warm(long[] offsets) throws IOException;
+
+	/**
+	 * @return The offsets of the buffered records, the most valuable first
+	 */
+	public long[] getHotOffsets();
+
+	/**
+	 * Releases the database file.
+	 */
+	public void close();
+
+	/**
+	 * @return The maximum number of records buffered at once
+	 */
+	public int getCapacity();
+
+	/**
+	 * @return The name of the eviction policy
+	 */
+	public String getPolicyName();
+
+	/**
+	 * @param writer The writer with a reference to the file that will receive the output of the pool
+	 */
+	public void printToFile(Writer writer);
+
+}
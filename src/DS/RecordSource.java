@@ -0,0 +1,35 @@
+package DS;
+
+import java.io.IOException;
+
+/**
+ * The purpose of this interface is to let the buffer pool read record lines out of the database file without
+ * knowing how the file is accessed (a memory mapping of the whole file or a cache of fixed size pages).
+ * Sources must see records that are appended to the database file after they were opened.
+ */
+public interface RecordSource 
+{
+	/**
+	 * @param offset Offset of the start of a record line
+	 * @return The record line found at the offset, or null if the offset is past the end of the file
+	 * @throws IOException If the database file could not be read
+	 */
+	public String readLine(long offset) throws IOException;
+
+	/**
+	 * @param offset Offset of the first byte to copy
+	 * @param destination Array that will receive the bytes
+	 * @param destOffset Position inside of the destination of the first byte
+	 * @param length Number of bytes to copy
+	 * @throws IOException If the bytes are past the end of the database file or could not be read
+	 */
+	public void read(long offset, byte[] destination, int destOffset, int length) throws IOException;
+
+	/**
+	 * Releases the database file.
+	 *
+	 * @throws IOException If the database file could not be closed
+	 */
+	public void close() throws IOException;
+
+}
@@ -0,0 +1,113 @@
+package DS;
+
+/**
+ * The purpose of this class is to chain buffer pool slots into a doubly linked list without allocating any nodes.
+ * The links live in two int arrays indexed by slot, so adding, removing and moving a slot all take constant time.
+ * A slot may only be on one list at a time.
+ */
+class SlotList 
+{
+	/** Link value marking the end of the list */
+	static final int NONE = -1;
+
+	/** Slot before each slot on the list (NONE for the head) */
+	private int[] previous;
+	/** Slot after each slot on the list (NONE for the tail) */
+	private int[] next;
+	/** First slot on the list */
+	private int head = NONE;
+	/** Last slot on the list */
+	private int tail = NONE;
+	/** Number of slots on the list */
+	private int size = 0;
+
+	/**
+	 * @param capacity Number of slots that may be chained
+	 */
+	SlotList(int capacity)
+	{
+		previous = new int[capacity];
+		next = new int[capacity];
+	}
+
+	/**
+	 * @param slot Slot to be placed at the front of the list (must not be on the list)
+	 */
+	void addFirst(int slot)
+	{
+		previous[slot] = NONE;
+		next[slot] = head;
+		if (head != NONE) previous[head] = slot;
+		else tail = slot;
+		head = slot;
+		size++;
+	}
+
+	/**
+	 * @param slot Slot to be taken off the list (must be on the list)
+	 */
+	void remove(int slot)
+	{
+		int before = previous[slot], after = next[slot];
+		if (before != NONE) next[before] = after; 
+		else head = after;
+		if (after != NONE) previous[after] = before;
+		else tail = before;
+		size--;
+	}
+
+	/**
+	 * @param slot Slot on the list to be moved to its front
+	 */
+	void moveToFront(int slot)
+	{
+		if (slot == head) return;
+		remove(slot);
+		addFirst(slot);
+	}
+
+	/**
+	 * @return The first slot on the list, or NONE if it is empty
+	 */
+	int first()
+	{
+		return head;
+	}
+
+	/**
+	 * @return The last slot on the list, or NONE if it is empty
+	 */
+	int last()
+	{
+		return tail;
+	}
+
+	/**
+	 * @param slot Slot on the list
+	 * @return The slot that follows it, or NONE if it is the last one
+	 */
+	int next(int slot)
+	{
+		return next[slot];
+	}
+
+	/**
+	 * @return The number of slots on the list
+	 */
+	int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @param order Array that receives the slots from the first to the last
+	 * @param start Position in the array of the first slot
+	 * @return Position after the last slot written
+	 */
+	int copyTo(int[] order, int start)
+	{
+		for (int slot = head; slot != NONE; slot = next[slot]) order[start++] = slot;
+		return start;
+	}
+
+}
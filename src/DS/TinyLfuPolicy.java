@@ -0,0 +1,153 @@
+package DS;
+
+/**
+ * Least recently used replacement behind a TinyLFU admission filter. Every lookup is counted in a small
+ * count-min sketch of 4-bit counters; when the pool is full a new record only replaces the least recently
+ * used one if it has been looked up more often. All counters are halved after a fixed number of lookups,
+ * so the counts follow recent popularity. Records that are read once, as in a large region search,
+ * are handed out without pushing frequently read records out of the pool.
+ */
+public class TinyLfuPolicy implements EvictionPolicy 
+{
+	/** Number of rows (independent hashes) of the sketch */
+	private static final int DEPTH = 4;
+	/** Largest value of a counter */
+	private static final int MAX_COUNT = 15;
+
+	/** Recency order used to choose the victim */
+	private LruPolicy recency;
+	/** Counters of the sketch, one row after the other */
+	private byte[] counters;
+	/** Width of a row - 1 (the width is a power of two) */
+	private int mask;
+	/** Lookups counted since the counters were last halved */
+	private int samples = 0;
+	/** Number of lookups after which the counters are halved */
+	private int sampleLimit;
+
+	/**
+	 * @param capacity Number of slots in the pool
+	 */
+	public TinyLfuPolicy(int capacity)
+	{
+		recency = new LruPolicy(capacity);
+		int width = 64;
+		while (width < capacity * 8 && width < (1 << 24)) width <<= 1;
+		counters = new byte[DEPTH * width];
+		mask = width - 1;
+		sampleLimit = 10 * width;
+	}
+
+	/**
+	 * @return The name of the policy, "tinylfu"
+	 */
+	@Override
+	public String getName() {
+		return "tinylfu";
+	}
+
+	/**
+	 * Counts the lookup in the sketch and halves all counters once enough lookups were counted.
+	 * 
+	 * @param offset Offset of the record that was looked up
+	 */
+	@Override
+	public void recordAccess(long offset) 
+	{
+		for (int row = 0; row < DEPTH; row++)
+		{
+			int index = indexOf(offset, row);
+			if (counters[index] < MAX_COUNT) counters[index]++;
+		}
+		if (++samples >= sampleLimit) age();
+	}
+
+	/**
+	 * Moves the record to the front of the recency order.
+	 * 
+	 * @param slot Slot of the buffered record that was just used
+	 */
+	@Override
+	public void recordHit(int slot) {
+		recency.recordHit(slot);
+	}
+
+	/**
+	 * New records start at the front of the recency order.
+	 * 
+	 * @param slot Empty slot that now holds a new record
+	 * @param offset Offset of the new record
+	 */
+	@Override
+	public void recordInsert(int slot, long offset) {
+		recency.recordInsert(slot, offset);
+	}
+
+	/**
+	 * @return The slot of the least recently used record
+	 */
+	@Override
+	public int victim() {
+		return recency.victim();
+	}
+
+	/**
+	 * @param slot Slot whose record is being dropped from the pool
+	 */
+	@Override
+	public void remove(int slot) {
+		recency.remove(slot);
+	}
+
+	/**
+	 * @param candidateOffset Offset of a record that is not buffered
+	 * @param victimOffset Offset of the record that would be replaced to buffer it
+	 * @return True if the candidate was looked up more often than the victim, as estimated by the sketch
+	 */
+	@Override
+	public boolean admit(long candidateOffset, long victimOffset) {
+		return frequencyOf(candidateOffset) > frequencyOf(victimOffset);
+	}
+
+	/**
+	 * @return The slots in use from the most to the least recently used
+	 */
+	@Override
+	public int[] order() {
+		return recency.order();
+	}
+
+	/**
+	 * @param offset Offset of a record
+	 * @return Estimated number of recent lookups of the record (never less than the true count, up to MAX_COUNT)
+	 */
+	private int frequencyOf(long offset)
+	{
+		int frequency = MAX_COUNT;
+		for (int row = 0; row < DEPTH; row++) frequency = Math.min(frequency, counters[indexOf(offset, row)]);
+		return frequency;
+	}
+
+	/**
+	 * @param offset Offset of a record
+	 * @param row Row of the sketch
+	 * @return Index of the counter of the record in the row
+	 */
+	private int indexOf(long offset, int row)
+	{
+		// Each row mixes the offset with its own odd multiplier
+		long hash = (offset + row) * (0x9E3779B97F4A7C15L + 2 * row);
+		hash ^= hash >>> 29;
+		return row * (mask + 1) + ((int) (hash >>> 32) & mask);
+	}
+
+	/**
+	 * Halves every counter so that old lookups weigh less than recent ones.
+	 */
+	private void age()
+	{
+		for (int i = 0; i < counters.length; i++) counters[i] >>= 1;
+		samples /= 2;
+	}
+
+}
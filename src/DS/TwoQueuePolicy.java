@@ -0,0 +1,144 @@
+package DS;
+
+import java.util.Arrays;
+
+/**
+ * 2Q replacement, which resists scans: new records enter a small first-in first-out probation queue and are
+ * replaced from there without disturbing the records in the main queue. The offsets of records replaced from
+ * probation are remembered in a ghost queue; a record that is read again while its ghost is remembered is
+ * admitted straight into the main queue, which is kept in least recently used order.
+ * A large what_is_in result therefore only cycles through probation and leaves the what_is working set alone.
+ */
+public class TwoQueuePolicy implements EvictionPolicy 
+{
+	/** Slots of new records in the order they arrived, newest first */
+	private SlotList probation;
+	/** Slots of records that were read again, most recently used first */
+	private SlotList main;
+	/** Set for slots that are on the main queue */
+	private boolean[] inMain;
+	/** Offset of the record in each slot */
+	private long[] offsets;
+	/** Number of records probation may hold before it is preferred for replacement */
+	private int probationTarget;
+	/** Offsets of the records recently replaced from probation, used as a ring */
+	private long[] ghosts;
+	/** Position in the ghost ring of every remembered offset */
+	private OffsetTable ghostIndex;
+	/** Next position of the ghost ring to be written */
+	private int ghostHand = 0;
+
+	/**
+	 * @param capacity Number of slots in the pool
+	 */
+	public TwoQueuePolicy(int capacity)
+	{
+		probation = new SlotList(capacity);
+		main = new SlotList(capacity);
+		inMain = new boolean[capacity];
+		offsets = new long[capacity];
+		probationTarget = Math.max(1, capacity / 4);
+		ghosts = new long[Math.max(1, capacity / 2)];
+		Arrays.fill(ghosts, -1);
+		ghostIndex = new OffsetTable(ghosts.length);
+	}
+
+	/**
+	 * @return The name of the policy, "2q"
+	 */
+	@Override
+	public String getName() {
+		return "2q";
+	}
+
+	/**
+	 * Lookups of records that are not buffered are only remembered through the ghosts of replaced records.
+	 * 
+	 * @param offset Offset of the record that was looked up
+	 */
+	@Override
+	public void recordAccess(long offset) {
+	}
+
+	/**
+	 * Moves a record on the main queue to its front; records on probation keep their place.
+	 * 
+	 * @param slot Slot of the buffered record that was just used
+	 */
+	@Override
+	public void recordHit(int slot) {
+		// Repeated reads while on probation are treated as one correlated use
+		if (inMain[slot]) main.moveToFront(slot);
+	}
+
+	/**
+	 * Puts the record on the main queue if its ghost is remembered and on probation otherwise.
+	 * 
+	 * @param slot Empty slot that now holds a new record
+	 * @param offset Offset of the new record
+	 */
+	@Override
+	public void recordInsert(int slot, long offset) 
+	{
+		offsets[slot] = offset;
+		inMain[slot] = ghostIndex.remove(offset) >= 0;
+		if (inMain[slot]) main.addFirst(slot);
+		else probation.addFirst(slot);
+	}
+
+	/**
+	 * @return The oldest record on probation once probation holds its share of the pool, otherwise the least recently used record on the main queue
+	 */
+	@Override
+	public int victim() 
+	{
+		if (main.size() == 0 || (probation.size() > 0 && probation.size() >= probationTarget)) return probation.last();
+		return main.last();
+	}
+
+	/**
+	 * Records dropped from probation leave a ghost of their offset behind.
+	 * 
+	 * @param slot Slot whose record is being dropped from the pool
+	 */
+	@Override
+	public void remove(int slot) 
+	{
+		if (inMain[slot]) {
+			main.remove(slot);
+			return;
+		}
+		probation.remove(slot);
+
+		// Remember the replaced record, forgetting the oldest ghost once the ring is full
+		long forgotten = ghosts[ghostHand];
+		if (forgotten >= 0 && ghostIndex.get(forgotten) == ghostHand) ghostIndex.remove(forgotten);
+		ghosts[ghostHand] = offsets[slot];
+		ghostIndex.put(offsets[slot], ghostHand);
+		ghostHand = (ghostHand + 1) % ghosts.length;
+	}
+
+	/**
+	 * Every new record is buffered.
+	 * 
+	 * @param candidateOffset Offset of a record that is not buffered
+	 * @param victimOffset Offset of the record that would be replaced to buffer it
+	 * @return Always true
+	 */
+	@Override
+	public boolean admit(long candidateOffset, long victimOffset) {
+		return true;
+	}
+
+	/**
+	 * @return The slots of the main queue from the most to the least recently used, then the slots on probation from the newest to the oldest
+	 */
+	@Override
+	public int[] order() 
+	{
+		int[] order = new int[main.size() + probation.size()];
+		probation.copyTo(order, main.copyTo(order, 0));
+		return order;
+	}
+
+}
@@ -1,6 +1,6 @@
 package DS;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.Writer;
 import java.io.IOException;
 import java.util.Vector;
 import Types.Coordinate;
@@ -886,9 +886,9 @@ public class prQuadtree< T extends Compare2D<? super T> > {
 
 
 	/**
-	 * @param writer FileWriter with a reference to an object that will obtain the quadtree representation
+	 * @param writer Writer with a reference to an object that will obtain the quadtree representation
 	 */
-	public void printToFile(FileWriter writer) 
+	public void printToFile(Writer writer) 
 	{
 		// Padding for the file print
 		String padding = "";
@@ -900,9 +900,9 @@ public class prQuadtree< T extends Compare2D<? super T> > {
 	/**
 	 * @param sRoot root of the tree
 	 * @param Padding Padding to help in the print of the tree nodes
-	 * @param fileWriter FileWriter with a reference to a file to receive the printed tree output stream
+	 * @param fileWriter Writer with a reference to a file to receive the printed tree output stream
 	 */
-	private void printToFileHelper(prQuadNode sRoot, String Padding, FileWriter fileWriter) 
+	private void printToFileHelper(prQuadNode sRoot, String Padding, Writer fileWriter) 
 	{
 		try
 		{
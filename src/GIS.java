@@ -1,3 +1,5 @@
+import java.util.Arrays;
+
 import Parsers.CommandParser;
 
 /**
@@ -53,15 +55,25 @@ public class GIS {
 
 	public static void main(String[] args)
 	{
-		// Program requires a database file name, a command file name, and a log file name
-		if (args.length != 3) {
-			System.err.println("Error: Unable to start program - GIS requires 3 arguments to start.");
+		// Program requires a database file name, a command file name, and a log file name (options may follow)
+		if (args.length < 3) {
+			System.err.println("Error: Unable to start program - GIS requires at least 3 arguments to start.");
 			System.exit(-1);
 		}
+		GISController controller = null;
 		try 
 		{
 			// Main controller class to serve as the manager of data that is processed and obtained from the record/command parsers.
-			GISController controller = new GISController(args[0], args[2], new CommandParser(args[1]));
+			controller = new GISController(args[0], args[2], new CommandParser(args[1]), 
+					Arrays.copyOfRange(args, 3, args.length));
+			
+			// The log is written on another thread, so it is also finished when the program is ended by System.exit()
+			final GISController exitingController = controller;
+			Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+				public void run() {
+					exitingController.close();
+				}
+			}, "GIS log closer"));
 						
 			// Loop while more commands and data processing needs to be done
 			boolean commandsToProcess = true;
@@ -72,6 +84,10 @@ public class GIS {
 			System.out.println(ex); // Log exception error that will pin-point where in program the error occured
 			System.exit(-1);
 		}
+		finally {
+			// Wait for the log to be written before the program ends, even when a command failed
+			if (controller != null) controller.close();
+		}
 
 
 	}
@@ -5,17 +5,33 @@
  * 
  */
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.util.Arrays;
 import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
 
+import DS.AsyncLogWriter;
 import DS.BufferPool;
+import DS.ConcurrentBufferPool;
+import DS.LongList;
+import DS.RecordPool;
+import DS.ColumnStore;
+import DS.OffsetTable;
+import DS.PoolManifest;
 import Indexes.CoordinateIndex;
+import Indexes.IndexSnapshot;
 import Indexes.NameIndex;
+import Indexes.PrefixIndex;
 import Parsers.CommandParser;
+import Parsers.ImportChunk;
+import Parsers.RecordFileReader;
 import Parsers.RecordParser;
+import Parsers.RecordTokenizer;
 import Types.Command;
 import Types.Record;
 
@@ -46,18 +62,55 @@ public class GISController {
 	// The part of the system that uses a quadtree to store regional data along with their offsets
 	private CoordinateIndex coordinateIndex;
 	// The part of the system that buffer recently used record elements (as strings)
-	private BufferPool bufferPool;
+	private RecordPool bufferPool;
 	// File writer that outputs to the log file
-	private FileWriter writer;
+	private Writer writer;
 	// String used to seperate output inside of the log file
 	private final String seperatorStr = "--------------------------------------------------------------------------------\n";
-	// Running file offset withing the database file (helps for multiple import situations)
-	private long runningOffset = 0;
-	// Offset where last import left off
-	private long lastOffset = 0;
+	// Number of bytes written to the database file so far (the offset at which the next record is appended)
+	private long databaseLength = 0;
+	// Byte length (without the terminator) of every record in the database file, keyed by the record's offset
+	private OffsetTable recordLengths = new OffsetTable();
+	// Binary columnar copy of the records (null unless the -columnar option was given)
+	private ColumnStore columnStore = null;
+	// File that the indexes are saved to on quit (null unless the -snapshot option was given)
+	private File snapshotFile = null;
+	// Set when the indexes were restored from a snapshot and the world has not been set yet
+	private boolean restoredIndexes = false;
+	// Capacity and eviction policy of the buffer pool (set with the -pool= and -policy= options or the pool command)
+	private int poolCapacity = BufferPool.DEFAULT_CAPACITY;
+	private String poolPolicy = BufferPool.DEFAULT_POLICY;
+	// Bytes of decoded records the buffer pool may keep (set with the -decoded= option, in kilobytes)
+	private long decodedBudget = BufferPool.DEFAULT_DECODED_BUDGET;
+	// Page size in bytes and number of pages of the block cache used by the buffer pool (0 pages when the -pagecache= option was not given)
+	private int cachePageSize = 0;
+	private int cachePageCount = 0;
+	// Number of prefetch reader threads and the bytes they may read ahead (set with the -prefetch= option, 0 readers turns prefetching off)
+	private int prefetchReaders = 2;
+	private long prefetchBytes = 4 << 20;
+	// Set when the buffer pool keeps its record lines outside of the Java heap (the -offheap option)
+	private boolean offHeapPool = false;
+	// Set when the buffer pool may be used by several threads at once (the -concurrent option)
+	private boolean concurrentPool = false;
+	// File that the offsets of the buffer pool records are saved to on quit (null unless the -warm option was given)
+	private File manifestFile = null;
+	// Number of hash tables the name index is split into (set with the -namesegments= option)
+	private int nameSegments = 1;
+	// Set when the name index keeps its keys as UTF-8 bytes in key arenas (the -compactkeys option)
+	private boolean compactNameKeys = false;
+	// Size of the buffer used when appending imported records to the database file
+	private final int DB_BUFFER_SIZE = 1 << 20;
+	// Largest number of records of a search result fetched from the buffer pool at once, so memory does not grow with the result
+	private final int RECORD_BATCH_SIZE = 4096;
 	
-	// Primary FileWriter objects that serves as an output stream that updates our database file
-	private FileWriter dbWriter;
+	// Set once the log and database files have been closed
+	private boolean closed = false;
+	
+	// Primary output stream that appends imported records to our database file
+	private BufferedOutputStream dbStream;
+
+	// Tokenizer reused for every record line that is imported
+	private RecordTokenizer recordFields = new RecordTokenizer();
 
 	// Command and Record parsers objects used to retrieve records and command objects
 	private CommandParser commandParser = null;
@@ -105,13 +158,117 @@ public class GISController {
 	 *******************************************/
 	public GISController(String dbFileName, String logFileName, CommandParser parser) 
 	{
+		this(dbFileName, logFileName, parser, new String[0]);
+	}
+	
+	
+	
+	/*******************************************
+	 *
+	 * <b>Function Description:</b> Constructor for the GISController class that also accepts the optional command-line options. <p>
+	 *
+	 * <b>Parameter:</b> String dbFileName: File path of the GIS Records DB file.<p>
+	 * <b>Parameter:</b> String logFileName: File path of the log file. <p>
+	 * <b>Parameter:</b> CommandParser parser: Parser of the command script. <p>
+	 * <b>Parameter:</b> String[] options: Optional command-line options ("-columnar" keeps a binary columnar copy of the records,
+	 * "-snapshot" saves the indexes on quit and restores them on the next run, "-pool=N" buffers up to N records,
+	 * "-policy=name" selects the lru, clock, 2q or tinylfu eviction policy of the buffer pool, "-decoded=KB" sets the
+	 * memory budget of the decoded records kept by the buffer pool, "-pagecache=KB,N" reads the records that are not buffered
+	 * through a cache of N pages of KB kilobytes, "-prefetch=N,KB" reads region search results ahead on N threads
+	 * holding at most KB kilobytes, "-offheap" keeps the record lines of the buffer pool outside of the Java heap,
+	 * "-concurrent" uses a striped buffer pool that several threads may use at once, "-warm" saves the offsets of the
+	 * buffer pool records on quit and loads those records in the background on the next run, "-namesegments=N" splits
+	 * the name index into N hash tables, "-compactkeys" keeps the keys of the name index as UTF-8 bytes in key arenas). <p>
+	 * 
+	 * <b>Pre-conditions:</b> None <p>
+	 * 
+	 * <b>Post-conditions:</b> None <p>
+	 *
+	 * <b>Return Value:</b> A newly created GISController object to handle the data processing with help of different parsers/loggers/processors <p>
+	 * 
+	 *******************************************/
+	public GISController(String dbFileName, String logFileName, CommandParser parser, String[] options) 
+	{
+		boolean columnar = false;
+		boolean snapshot = false;
+		for (String option : options)
+		{
+			if (option.equalsIgnoreCase("-columnar")) columnar = true;
+			else if (option.equalsIgnoreCase("-snapshot")) snapshot = true;
+			else if (option.equalsIgnoreCase("-offheap")) offHeapPool = true;
+			else if (option.equalsIgnoreCase("-concurrent")) concurrentPool = true;
+			else if (option.equalsIgnoreCase("-compactkeys")) compactNameKeys = true;
+			else if (option.equalsIgnoreCase("-warm")) manifestFile = new File(dbFileName + ".pool");
+			else if (option.toLowerCase().startsWith("-pool=")) 
+			{
+				try {
+					poolCapacity = Integer.parseInt(option.substring("-pool=".length()));
+				}
+				catch (NumberFormatException e) {
+					System.err.println("Error: Invalid buffer pool capacity in \"" + option + "\" will be ignored.");
+				}
+			}
+			else if (option.toLowerCase().startsWith("-namesegments=")) 
+			{
+				try {
+					nameSegments = Integer.parseInt(option.substring("-namesegments=".length()));
+					if (nameSegments < 1) throw new NumberFormatException();
+				}
+				catch (NumberFormatException e) {
+					System.err.println("Error: Invalid number of name index segments in \"" + option + "\" will be ignored.");
+					nameSegments = 1;
+				}
+			}
+			else if (option.toLowerCase().startsWith("-policy=")) poolPolicy = option.substring("-policy=".length());
+			else if (option.toLowerCase().startsWith("-decoded=")) 
+			{
+				try {
+					decodedBudget = Long.parseLong(option.substring("-decoded=".length())) * 1024;
+				}
+				catch (NumberFormatException e) {
+					System.err.println("Error: Invalid decoded record budget in \"" + option + "\" will be ignored.");
+				}
+			}
+			else if (option.toLowerCase().startsWith("-pagecache=")) 
+			{
+				String[] cacheParts = option.substring("-pagecache=".length()).split(",");
+				try {
+					cachePageSize = Integer.parseInt(cacheParts[0]) * 1024;
+					cachePageCount = Integer.parseInt(cacheParts[1]);
+				}
+				catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+					System.err.println("Error: Invalid page cache in \"" + option + "\" will be ignored (expected -pagecache=<page KB>,<pages>).");
+					cachePageSize = cachePageCount = 0;
+				}
+			}
+			else if (option.toLowerCase().startsWith("-prefetch=")) 
+			{
+				String[] prefetchParts = option.substring("-prefetch=".length()).split(",");
+				try {
+					prefetchReaders = Integer.parseInt(prefetchParts[0]);
+					if (prefetchParts.length > 1) prefetchBytes = Long.parseLong(prefetchParts[1]) * 1024;
+				}
+				catch (NumberFormatException e) {
+					System.err.println("Error: Invalid prefetch setting in \"" + option + "\" will be ignored (expected -prefetch=<readers>[,<KB>]).");
+					prefetchReaders = 2;
+				}
+			}
+			else System.err.println("Error: Unknown option \"" + option + "\" will be ignored.");
+		}
+		
 		try
 		{
 			// Create the file references to the files
 			databaseFile = new File(dbFileName);
 			logFile = new File(logFileName);
+			
+			// Load the indexes saved by a previous run, the database file is kept when they still describe it
+			if (snapshot) {
+				snapshotFile = new File(dbFileName + ".snapshot");
+				restoreSnapshot();
+			}
 
-			if (!databaseFile.createNewFile()) // Check if the creation of a db file failed
+			if (databaseLength == 0 && !databaseFile.createNewFile()) // Check if the creation of a db file failed
 			{
 				// Attempt to delete the pre-existing file that cause the file creation to fail
 				databaseFile.delete();
@@ -123,8 +280,27 @@ public class GISController {
 				}
 			}
 
-			// Create the buffer pool object
-			bufferPool = new BufferPool(databaseFile);
+			// Create the buffer pool object, falling back to the default pool when the options are invalid
+			try {
+				bufferPool = createBufferPool(poolCapacity, poolPolicy);
+			}
+			catch (IllegalArgumentException e) {
+				System.err.println(e.getMessage() + " The default buffer pool will be used.");
+				poolCapacity = BufferPool.DEFAULT_CAPACITY;
+				poolPolicy = BufferPool.DEFAULT_POLICY;
+				decodedBudget = BufferPool.DEFAULT_DECODED_BUDGET;
+				bufferPool = createBufferPool(poolCapacity, poolPolicy);
+			}
+			configureBufferPool(bufferPool);
+			if (manifestFile != null && databaseLength > 0) warmBufferPool();
+			recordParser = new RecordParser(databaseFile, recordLengths);
+			
+			// The column file lives next to the database file, the rows of every import are appended to it
+			if (columnar) {
+				columnStore = new ColumnStore(new File(dbFileName + ".columns"));
+				if (databaseLength > 0) restoreColumns();
+				else columnStore.write();
+			}
 
 			if (!logFile.createNewFile()) // Check if the creation of a db file failed
 			{
@@ -138,8 +314,8 @@ public class GISController {
 				}
 			}
 
-			// Create the fileWriter object
-			writer = new FileWriter(logFile);
+			// Create the log writer, the log file is written in batches on its own thread
+			writer = new AsyncLogWriter(new FileWriter(logFile));
 		}
 		catch (IOException e) // Fail if we cant make these files (because they drive everything else - key components)
 		{
@@ -152,7 +328,7 @@ public class GISController {
 		else throw new NullPointerException("Error: Invalid command parser passed to the GIS Controller.");
 		
 		// Create the name index object to store names and offset values
-		nameIndex = new NameIndex();		
+		if (nameIndex == null) nameIndex = new NameIndex(nameSegments, compactNameKeys);		
 	}
 
 
@@ -160,10 +336,43 @@ public class GISController {
 	/**
 	 * Main proccess command used to obtain a command and call another system
 	 * component to act upon the type of command and data associated with it.	 
+	 * The whole output of the command is handed to the log writer once the command is done.
 	 * 
 	 * @return A boolean indicating whether or not we are done processing script commands
 	 */
 	public boolean processNextCommand()
+	{
+		boolean moreCommands = dispatchNextCommand();
+		try {
+			writer.flush();
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+		return moreCommands;
+	}
+	
+	/**
+	 * Waits for the log to be completely written and closes the log and database files. Later calls do nothing.
+	 */
+	public synchronized void close()
+	{
+		if (closed) return;
+		closed = true;
+		try {
+			writer.close();
+			if (dbStream != null) dbStream.close();
+		}
+		catch (IOException e) {
+			System.err.println("Error: Unable to finish writing the log file. " + e);
+		}
+	}
+	
+	/**
+	 * @return A boolean indicating whether or not we are done processing script commands
+	 */
+	private boolean dispatchNextCommand()
 	{
 		try {
 			if (commandParser != null) 
@@ -176,18 +385,26 @@ public class GISController {
 					if (command.getCommandType().equalsIgnoreCase("Quit"))
 					{
 						writer.write("Command:\t" + command.getRawCommandString() + "\n\nTerminating execution of commands.\n" + seperatorStr);
-						writer.flush();
+						if (manifestFile != null) saveManifest();
+						bufferPool.close();
+						if (snapshotFile != null) saveSnapshot();
 						return false;
 					}
 					// First real command encountered, set up the coordinate index by parsing the boundaries
 					else if (command.getCommandType().equalsIgnoreCase("World"))
 					{
 						String[] bounds = command.getWorldBoundaries();
-						coordinateIndex = new CoordinateIndex(bounds[0], bounds[1], bounds[2], bounds[3]);
+						
+						// A restored coordinate index is kept when it covers the same world, otherwise it is rebuilt from the database file
+						if (!restoredIndexes || coordinateIndex == null || !coordinateIndex.hasBoundaries(bounds[0], bounds[1], bounds[2], bounds[3])) 
+						{
+							coordinateIndex = new CoordinateIndex(bounds[0], bounds[1], bounds[2], bounds[3]);
+							if (restoredIndexes) rebuildFromDatabase(true, false);
+						}
+						restoredIndexes = false;
 
 						// Show the command just read
 						writer.write("Command:\t" + command.getRawCommandString() + "\n\n");
-						writer.flush();
 
 						// Write header information
 						writer.write("GIS Program by Carlos Folgar\n\ndbFile:\t" + databaseFile.toString() + "\nScript:\t"
@@ -197,88 +414,33 @@ public class GISController {
 						writer.write("World Boundaries are set to:\n\t\t" + coordinateIndex.getNorthBoundary() + "\n" + coordinateIndex.getWestBoundary() + "\t\t" 
 								+ coordinateIndex.getEastBoundary() + "\n\t\t" + coordinateIndex.getSouthBoundary() + "\n" + seperatorStr);
 
-						writer.flush();
 						return true;
 					}
 					// Import a new records file
-					else if (command.getCommandType().equalsIgnoreCase("Import"))
-					{
-						// Keep track of how many things are imported on this run
-						nameIndex.importedFeaturesByName = 0;
-						coordinateIndex.importedFeaturesByLocation = 0;
-						
-						// Show the command just read
-						writer.write("Command:\t" + command.getRawCommandString() + "\n\n");
-						writer.flush();
-
-						// Create a RAF for the records file to be imported
-						File recordFile = new File(command.getRecordFileName());
-						RandomAccessFile recordRAF = new RandomAccessFile(recordFile, "r");
-						
-						// Only create a new writer if needed - dont want to lose our file pointer
-						if (dbWriter == null) dbWriter = new FileWriter(databaseFile);
-						long tempOffset = 0;
-						
-						// Only place header on the file once
-						if (lastOffset == 0) {
-							dbWriter.write(recordRAF.readLine() + "\n"); // Take care of first header line
-							dbWriter.flush();
-						}
-						else {
-							recordRAF.readLine();
-							tempOffset = recordRAF.getFilePointer();							
-						}
-						
-						// Update the offset differently based on how many imports we have performed
-						if (lastOffset == 0) runningOffset = recordRAF.getFilePointer();
-						else {
-							runningOffset = 0;
-						}
-						String recStr = recordRAF.readLine();
-
-						while (recStr != null)
-						{
-							nameIndex.add(recStr, runningOffset + lastOffset); 			// Import into the name index
-							coordinateIndex.add(recStr, runningOffset + lastOffset); 	// Import into the coordinate index
-							dbWriter.write(recStr+"\n");								// Update the db with most recent record
-
-							runningOffset = recordRAF.getFilePointer() - tempOffset; 	// Update offset and the current record string
-							recStr = recordRAF.readLine();
-							dbWriter.flush();
-						}
-						// Update the last offset. Allows us to write in the correct location on next import
-						lastOffset = runningOffset;
-						recordRAF.close();
-						// Write the results of the imports
-						writer.write("Imported Features by name: " + nameIndex.importedFeaturesByName + "\n");
-						writer.write("Longest probe sequence: " + nameIndex.longestProbeSequence + "\n");
-						writer.write("Imported Features by location: " + coordinateIndex.importedFeaturesByLocation + "\n" + seperatorStr);
-						writer.flush();
-						return true;
-					}
+					else if (command.getCommandType().equalsIgnoreCase("Import")) return proccessImportCommand(command);
 					else if (command.getCommandType().equalsIgnoreCase("debug"))
 					{
 						// Show the command just read
 						writer.write("Command:\t" + command.getRawCommandString() + "\n\n");
-						writer.flush();
 
 						// Call file prints for each internal index system or pool
 						if (command.getDebugTarget().equalsIgnoreCase("hash")) nameIndex.printToFile(writer);						
 						else if (command.getDebugTarget().equalsIgnoreCase("quad")) coordinateIndex.printToFile(writer);						
 						else if (command.getDebugTarget().equalsIgnoreCase("pool")) bufferPool.printToFile(writer);						
+						else if (command.getDebugTarget().equalsIgnoreCase("prefix")) nameIndex.printPrefixToFile(writer);
 						else System.err.println("Error: Unable to debug the specified parts of the system.");	
 						writer.write(seperatorStr);
-						writer.flush();
 						return true;
 					}
+					else if (command.getCommandType().equalsIgnoreCase("Pool")) return proccessPoolCommand(command);
 					else if (command.getCommandType().equalsIgnoreCase("toNameIndex")) return proccessNameCommand(command);
+					else if (command.getCommandType().equalsIgnoreCase("toPrefixIndex")) return proccessPrefixCommand(command);
 					else if (command.getCommandType().equalsIgnoreCase("toCoordIndex")) return proccessLocateCommand(command);
 					else return true;
 				}
 				else if (command.getCommandType().equalsIgnoreCase("Comment")) // Just output the raw command encountered
 				{
 					writer.write(command.getRawCommandString() + "\n");
-					writer.flush();
 					return true;
 				}
 				else 
@@ -290,6 +452,399 @@ public class GISController {
 			e.printStackTrace();
 			return false;
 		}
+		catch (IllegalStateException e) { // An index that can not grow any further stops the script
+			System.err.println(e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * @param capacity The maximum number of records buffered at once
+	 * @param policy Name of the eviction policy
+	 * @return A new buffer pool, the striped concurrent one when the -concurrent option was given
+	 * @throws IllegalArgumentException If the capacity, the policy or the decoded record budget is invalid
+	 */
+	private RecordPool createBufferPool(int capacity, String policy)
+	{
+		if (concurrentPool) return new ConcurrentBufferPool(databaseFile, recordLengths, capacity, policy);
+		return new BufferPool(databaseFile, recordLengths, capacity, policy, decodedBudget);
+	}
+
+	/**
+	 * Sets up the off-heap line store requested by the -offheap option, the block cache requested by the -pagecache= option
+	 * and the prefetcher requested by the -prefetch= option for a new buffer pool. An invalid page size or count is reported and the pool keeps reading through the memory mapped
+	 * database file; an invalid prefetch setting is reported and nothing is prefetched.
+	 * 
+	 * @param pool The buffer pool to be set up
+	 * @throws IOException If the database file could not be opened
+	 */
+	private void configureBufferPool(RecordPool recordPool) throws IOException
+	{
+		// The concurrent pool always reads through its own channel of the database file and keeps its records on the heap
+		if (!(recordPool instanceof BufferPool)) return;
+		BufferPool pool = (BufferPool) recordPool;
+		
+		if (offHeapPool) pool.useOffHeapStore();
+		if (cachePageCount > 0) 
+		{
+			try {
+				pool.useBlockCache(cachePageSize, cachePageCount);
+			}
+			catch (IllegalArgumentException e) {
+				System.err.println(e.getMessage() + " The database file will be memory mapped instead.");
+				cachePageSize = cachePageCount = 0;
+			}
+		}
+		if (prefetchReaders > 0) 
+		{
+			try {
+				pool.usePrefetcher(prefetchReaders, prefetchBytes);
+			}
+			catch (IllegalArgumentException e) {
+				System.err.println(e.getMessage() + " Region search results will not be prefetched.");
+				prefetchReaders = 0;
+			}
+		}
+	}
+
+	/**
+	 * Replaces the buffer pool with an empty pool of the requested capacity and eviction policy.
+	 * The policy is kept when the command only gives a capacity.
+	 * 
+	 * @param command The pool command that holds the new capacity and, optionally, the new policy
+	 * @return A boolean indicating the success value of the command action
+	 * @throws IOException
+	 */
+	private boolean proccessPoolCommand(Command command) throws IOException
+	{
+		// Show the command just read
+		writer.write("Command:\t" + command.getRawCommandString() + "\n\n");
+		
+		String policy = command.getPoolPolicy().length() > 0 ? command.getPoolPolicy() : poolPolicy;
+		try {
+			RecordPool newPool = createBufferPool(Integer.parseInt(command.getPoolCapacity().trim()), policy);
+			bufferPool.close();
+			bufferPool = newPool;
+			configureBufferPool(bufferPool);
+			poolCapacity = bufferPool.getCapacity();
+			poolPolicy = bufferPool.getPolicyName();
+			writer.write("Buffer pool set to capacity " + poolCapacity + " with the " + poolPolicy + " policy.\n");
+		}
+		catch (IllegalArgumentException e) { // Also catches an invalid capacity number
+			System.err.println("Error: Invalid pool command \"" + command.getRawCommandString() + "\" will be ignored.");
+			writer.write("Buffer pool left unchanged (capacity " + poolCapacity + ", " + poolPolicy + " policy).\n");
+		}
+		writer.write(seperatorStr);
+		return true;
+	}
+
+	/**
+	 * Streams a GIS records file into the database file and both indexes. Offsets are computed by
+	 * counting the bytes appended to the database file, and the appends are batched in a large buffer
+	 * that is only flushed once the whole file has been imported.
+	 * 
+	 * @param command The import command that names the records file to be imported
+	 * @return A boolean indicating the success value of the command action
+	 * @throws IOException
+	 */
+	private boolean proccessImportCommand(Command command) throws IOException
+	{
+		// Keep track of how many things are imported on this run
+		nameIndex.importedFeaturesByName = 0;
+		coordinateIndex.importedFeaturesByLocation = 0;
+		
+		// Show the command just read
+		writer.write("Command:\t" + command.getRawCommandString() + "\n\n");
+
+		// Stream the records file to be imported
+		File recordFile = new File(command.getRecordFileName());
+		RecordFileReader reader = new RecordFileReader(recordFile);
+		long startTime = System.nanoTime();
+		long importedRecords = 0;
+		
+		// Only create a new stream if needed - the database file is only truncated once
+		if (dbStream == null) dbStream = new BufferedOutputStream(new FileOutputStream(databaseFile, databaseLength > 0), DB_BUFFER_SIZE);
+		
+		// Only place header on the file once
+		if (reader.nextLine() && databaseLength == 0) appendToDatabase(reader);
+		
+		if (command.getImportFlag().equalsIgnoreCase("-p")) // Parse the rest of the file on all cores
+		{
+			long dataStart = reader.getBytesRead();
+			reader.close();
+			importedRecords = importInParallel(recordFile, dataStart);
+		}
+		else
+		{
+			while (reader.nextLine())
+			{
+				if (reader.getLineLength() == 0) continue; // Blank lines are not records
+				
+				recordFields.reset(reader.getLineBytes(), 0, reader.getLineLength());
+				nameIndex.add(recordFields, databaseLength); 		// Import into the name index
+				coordinateIndex.add(recordFields, databaseLength); 	// Import into the coordinate index
+				if (columnStore != null) columnStore.add(recordFields, databaseLength);
+				recordLengths.put(databaseLength, reader.getLineLength());
+				appendToDatabase(reader);						// Update the db with most recent record
+				importedRecords++;
+			}
+			reader.close();
+		}
+		// Make the imported records visible to readers of the database file
+		dbStream.flush();
+		nameIndex.mergePrefixIndex();
+		if (columnStore != null) columnStore.write();
+		
+		// Write the results of the imports
+		writer.write("Imported Features by name: " + nameIndex.importedFeaturesByName + "\n");
+		writer.write("Longest probe sequence: " + nameIndex.longestProbeSequence + "\n");
+		writer.write("Imported Features by location: " + coordinateIndex.importedFeaturesByLocation + "\n");
+		writeImportThroughput(importedRecords, recordFile.length(), System.nanoTime() - startTime);
+		writer.write(seperatorStr);
+		return true;
+	}
+	
+	/**
+	 * Parses newline-aligned chunks of a records file on the fork-join pool, then merges them into the
+	 * indexes and the database file in file order. Only a bounded window of chunks is in flight at once
+	 * so the whole file never has to sit in memory.
+	 * 
+	 * @param recordFile The records file being imported
+	 * @param dataStart Offset of the first record line (just past the header line)
+	 * @return The number of records that were imported
+	 * @throws IOException
+	 */
+	private long importInParallel(File recordFile, long dataStart) throws IOException
+	{
+		int parallelism = ForkJoinPool.getCommonPoolParallelism() + 1;
+		long[] bounds = ImportChunk.splitPoints(recordFile, dataStart, parallelism);
+		int chunkCount = bounds.length - 1;
+		int window = parallelism * 2;
+		
+		ImportChunk[] chunks = new ImportChunk[chunkCount];
+		int forked = 0;
+		long importedRecords = 0;
+		for (int c = 0; c < chunkCount; c++)
+		{
+			// Keep the pool busy with the chunks following the one being merged
+			while (forked < chunkCount && forked < c + window) {
+				chunks[forked] = new ImportChunk(recordFile, bounds[forked], bounds[forked + 1]);
+				chunks[forked].fork();
+				forked++;
+			}
+			
+			ImportChunk chunk = chunks[c];
+			chunk.join();
+			byte[] data = chunk.getData();
+			for (int line = 0; line < chunk.getLineCount(); line++)
+			{
+				nameIndex.addKey(chunk.getKey(line), databaseLength);
+				if (chunk.hasCoordinates(line))
+					coordinateIndex.add(chunk.getLongitude(line), chunk.getLatitude(line), databaseLength);
+				
+				if (columnStore != null) 
+					columnStore.add(recordFields.reset(data, chunk.getLineStart(line), chunk.getLineLength(line)), databaseLength);
+				
+				recordLengths.put(databaseLength, chunk.getLineLength(line));
+				dbStream.write(data, chunk.getLineStart(line), chunk.getLineLength(line));
+				dbStream.write('\n');
+				databaseLength += chunk.getLineLength(line) + 1;
+			}
+			importedRecords += chunk.getLineCount();
+			chunk.release();
+			chunks[c] = null;
+		}
+		return importedRecords;
+	}
+	
+	/**
+	 * @param reader Reader positioned at the line that will be appended to the database file
+	 * @throws IOException
+	 */
+	private void appendToDatabase(RecordFileReader reader) throws IOException
+	{
+		dbStream.write(reader.getLineBytes(), 0, reader.getLineLength());
+		dbStream.write('\n');
+		databaseLength += reader.getLineLength() + 1;
+	}
+	
+	/**
+	 * Restores the indexes and the record lengths from the snapshot file when it still matches the database file.
+	 */
+	private void restoreSnapshot()
+	{
+		try
+		{
+			IndexSnapshot restored = IndexSnapshot.load(snapshotFile, databaseFile, recordLengths);
+			if (restored == null) return;
+			
+			databaseLength = restored.getDatabaseLength();
+			nameIndex = restored.getNameIndex();
+			coordinateIndex = restored.getCoordinateIndex();
+			restoredIndexes = true;
+		}
+		catch (IOException e) 
+		{
+			System.err.println("Error: Unable to read the snapshot \"" + snapshotFile + "\", the database will be rebuilt from scratch. " + e);
+			recordLengths.clear();
+		}
+	}
+	
+	/**
+	 * Saves the indexes and the record lengths next to the database file.
+	 */
+	private void saveSnapshot()
+	{
+		try 
+		{
+			if (dbStream != null) dbStream.flush();
+			IndexSnapshot.save(snapshotFile, databaseFile, nameIndex, coordinateIndex, recordLengths);
+		}
+		catch (IOException e) 
+		{
+			System.err.println("Error: Unable to save the snapshot \"" + snapshotFile + "\". " + e);
+		}
+	}
+	
+	/**
+	 * Starts loading the records listed by the pool manifest of a kept database file into the buffer pool.
+	 */
+	private void warmBufferPool()
+	{
+		try
+		{
+			long[] offsets = PoolManifest.load(manifestFile, databaseFile);
+			if (offsets != null) bufferPool.warm(offsets);
+		}
+		catch (IOException e) 
+		{
+			System.err.println("Error: Unable to read the pool manifest \"" + manifestFile + "\", the buffer pool will start empty. " + e);
+		}
+	}
+	
+	/**
+	 * Saves the offsets of the records held by the buffer pool next to the database file.
+	 */
+	private void saveManifest()
+	{
+		try 
+		{
+			if (dbStream != null) dbStream.flush();
+			PoolManifest.save(manifestFile, databaseFile, bufferPool.getHotOffsets());
+		}
+		catch (IOException e) 
+		{
+			System.err.println("Error: Unable to save the pool manifest \"" + manifestFile + "\". " + e);
+		}
+	}
+	
+	/**
+	 * Loads the column store of a restored database, rebuilding it from the database file if the column file is unusable.
+	 * 
+	 * @throws IOException If the database file could not be read or the column file could not be written
+	 */
+	private void restoreColumns() throws IOException
+	{
+		try 
+		{
+			columnStore.read();
+			if (columnStore.getLastOffset() >= databaseLength) throw new IOException("Error: Column store file describes a different database file.");
+		}
+		catch (IOException e) 
+		{
+			columnStore = new ColumnStore(new File(databaseFile.getPath() + ".columns"));
+			rebuildFromDatabase(false, true);
+			columnStore.write();
+		}
+	}
+	
+	/**
+	 * Reads every record already in the database file back into the coordinate index and/or the column store.
+	 * 
+	 * @param coordinates True if the records should be added to the coordinate index
+	 * @param columns True if the records should be added to the column store
+	 * @throws IOException If the database file could not be read
+	 */
+	private void rebuildFromDatabase(boolean coordinates, boolean columns) throws IOException
+	{
+		RecordFileReader reader = new RecordFileReader(databaseFile);
+		try 
+		{
+			reader.nextLine(); // Skip the header line
+			while (reader.nextLine() && reader.getLineOffset() < databaseLength)
+			{
+				if (reader.getLineLength() == 0) continue;
+				
+				recordFields.reset(reader.getLineBytes(), 0, reader.getLineLength());
+				if (coordinates) coordinateIndex.add(recordFields, reader.getLineOffset());
+				if (columns) columnStore.add(recordFields, reader.getLineOffset());
+			}
+		}
+		finally 
+		{
+			reader.close();
+		}
+	}
+	
+	/**
+	 * @param offset Offset of the record to be printed
+	 * @param mode The short print format of the record
+	 * @param command The command whose print flag decides the format
+	 * @return True if the record was printed from the columnar store, false if it has to be read from the database file
+	 * @throws IOException
+	 */
+	private boolean printFromColumns(long offset, String mode, Command command) throws IOException
+	{
+		if (!usesColumns(command)) return false;
+		
+		String line = columnStore.formatRecord(offset, mode);
+		if (line == null) return false;
+		writer.write(offset + ":\t" + line);
+		return true;
+	}
+	
+	/**
+	 * @param command A what_is, what_is_at or what_is_in command
+	 * @return True if the results of the command are printed from the columns when possible
+	 */
+	private boolean usesColumns(Command command)
+	{
+		return columnStore != null && !command.getPrintFlag().equalsIgnoreCase("-l");
+	}
+	
+	/**
+	 * @param offsets Offsets of the records of a search result
+	 * @param first Index of the first offset of the batch
+	 * @return The records of the next RECORD_BATCH_SIZE offsets (or fewer at the end of the result), in the order of the offsets
+	 */
+	private Record[] grabRecordBatch(long[] offsets, int first)
+	{
+		return bufferPool.grabRecordsWithOffsets(Arrays.copyOfRange(offsets, first, Math.min(first + RECORD_BATCH_SIZE, offsets.length)));
+	}
+	
+	/**
+	 * @param offsets Offsets of the records of a search result
+	 * @param first Index of the first offset of the batch
+	 * @return The records of the next RECORD_BATCH_SIZE offsets (or fewer at the end of the result), in the order of the offsets
+	 */
+	private Record[] grabRecordBatch(Vector<Long> offsets, int first)
+	{
+		long[] batch = new long[Math.min(RECORD_BATCH_SIZE, offsets.size() - first)];
+		for (int i = 0; i < batch.length; i++) batch[i] = offsets.get(first + i);
+		return bufferPool.grabRecordsWithOffsets(batch);
+	}
+	
+	/**
+	 * @param records Number of records that were imported
+	 * @param bytes Number of bytes read from the records file
+	 * @param elapsedNanos Time taken by the import
+	 * @throws IOException
+	 */
+	private void writeImportThroughput(long records, long bytes, long elapsedNanos) throws IOException
+	{
+		double seconds = Math.max(elapsedNanos, 1) / 1e9;
+		writer.write(String.format("Import throughput: %d records in %d ms (%.0f records/s, %.2f MB/s)\n",
+				records, elapsedNanos / 1000000, records / seconds, bytes / seconds / (1024 * 1024)));
 	}
 
 	/**
@@ -301,23 +856,30 @@ public class GISController {
 	{
 		// Print the command
 		writer.write("Command:\t" + command.getRawCommandString() + "\n\n");
-		writer.flush();
 
 		// Obtain the search results from the index
-		Vector<Long> results = nameIndex.search(command.getFeatureName() + ":" + command.getStateAbbrev());
-		if (results != null && results.size() > 0) // Only process container of results
+		LongList results = nameIndex.search(command.getFeatureName() + ":" + command.getStateAbbrev());
+		if (!results.isEmpty()) // Only process container of results
 		{
 			if (command.getPrintFlag().equalsIgnoreCase("-c")) { // Process count
 				writer.write("The number of records found for " + command.getFeatureName() 
 						+ " and " + command.getStateAbbrev() + " was " + results.size() + "\n" + seperatorStr );
-				writer.flush();
 				return true;
 			}
+			// Fetch the records in batches unless the short format is printed from the columns
+			long[] offsets = usesColumns(command) ? null : results.toArray();
+			Record[] records = null;
 			Record tempRecord;
-			for (Long offset : results) // iterate over the results from the search
+			for (int i = 0; i < results.size(); i++) // iterate over the results from the search
 			{
+				long offset = results.get(i);
+				if (offsets != null && i % RECORD_BATCH_SIZE == 0) records = grabRecordBatch(offsets, i);
+				
+				// Print straight from the columns when they hold every field of the short format
+				if (printFromColumns(offset, "NameAndLocation", command)) continue;
+				
 				// Grab from the buffer if possible
-				tempRecord = bufferPool.grabRecordWithOffset(offset.toString());
+				tempRecord = (records != null) ? records[i % RECORD_BATCH_SIZE] : bufferPool.grabRecordWithOffset(offset);
 				
 				// Print the record according to the print flag
 				if (tempRecord != null) 
@@ -327,7 +889,7 @@ public class GISController {
 						tempRecord.printToFile("Long", writer);
 					}
 					else {
-						writer.write(offset.toString() + ":\t");
+						writer.write(offset + ":\t");
 						tempRecord.printToFile("NameAndLocation", writer);
 					}
 				}
@@ -335,16 +897,62 @@ public class GISController {
 			
 			// Print the seperator string
 			writer.write(seperatorStr);
-			writer.flush();
 			return true;
 		}
 		else { // No records found
 			writer.write("Nothing found!\n"+seperatorStr);
-			writer.flush();
 			return true;
 		}
 	}
 
+	/**
+	 * @param command The what_starts_with command with the prefix, and optionally the state and the most records to be printed
+	 * @return A boolean indicating the success value of the command action
+	 * @throws IOException
+	 */
+	private boolean proccessPrefixCommand(Command command) throws IOException
+	{
+		// Print the command
+		writer.write("Command:\t" + command.getRawCommandString() + "\n\n");
+
+		int limit = PrefixIndex.DEFAULT_LIMIT;
+		if (!command.getResultLimit().equals(""))
+		{
+			try {
+				limit = Integer.parseInt(command.getResultLimit());
+				if (limit < 1) throw new NumberFormatException();
+			}
+			catch (NumberFormatException e) {
+				limit = PrefixIndex.DEFAULT_LIMIT;
+				System.err.println("Error: Invalid result limit \"" + command.getResultLimit() + "\" will be ignored (expected a number of at least 1).");
+			}
+		}
+		String state = command.getStateAbbrev().equals("") ? null : command.getStateAbbrev();
+
+		// Obtain the first matching offsets from the index
+		long[] results = nameIndex.searchPrefix(command.getFeatureName(), state, limit);
+		if (results.length == 0) {
+			writer.write("Nothing found!\n" + seperatorStr);
+			return true;
+		}
+
+		// Fetch the records in batches unless they are printed from the columns
+		Record[] records = null;
+		for (int i = 0; i < results.length; i++)
+		{
+			if (!usesColumns(command) && i % RECORD_BATCH_SIZE == 0) records = grabRecordBatch(results, i);
+			if (printFromColumns(results[i], "SimpleWithCoords", command)) continue;
+			
+			Record tempRecord = (records != null) ? records[i % RECORD_BATCH_SIZE] : bufferPool.grabRecordWithOffset(results[i]);
+			if (tempRecord != null) {
+				writer.write(results[i] + ":\t");
+				tempRecord.printToFile("simpleWithCoords", writer);
+			}
+		}
+		writer.write(seperatorStr);
+		return true;
+	}
+
 	/**
 	 * @param command The command object that encapsulates the type of coordinate serach action that needs to be taken
 	 * @return A boolean indicating the success value of the command action
@@ -353,7 +961,6 @@ public class GISController {
 	private boolean proccessLocateCommand(Command command) throws IOException
 	{
 		writer.write("Command:\t" + command.getRawCommandString() + "\n\n");
-		writer.flush();
 		Vector<Long> results = new Vector<Long>();
 		
 		// Store if its a region search or not
@@ -373,7 +980,6 @@ public class GISController {
 				else 
 					writer.write(results.size() + " features were found in " + command.getCoordinateString() 
 							+ " +/- " +	command.getHalfHeight() + " Height and +/- "+ command.getHalfWidth() + " Width\n" + seperatorStr );
-				writer.flush();
 				return true;
 			}
 
@@ -383,17 +989,31 @@ public class GISController {
 				writer.write("The following " + results.size() + " features were found in (" + command.getCoordinateString() + " +/- " +
 						command.getHalfHeight() + "  Height and +/- "+ command.getHalfWidth() + " Width) \n");
 			} else writer.write("The following " + results.size() + " features were found in (" + command.getCoordinateString() + ")\n");
-			writer.flush();
 
+			// Start reading the records in the background, or fetch them in batches when there is no prefetcher,
+			// unless the short format is printed from the columns
+			Record[] records = null;
+			boolean prefetching = false;
+			boolean batching = false;
+			if (!usesColumns(command)) 
+			{
+				prefetching = bufferPool.prefetch(results);
+				batching = !prefetching;
+			}
 			Record tempRecord;
 			
 			// Iterate over all of the results and print them accordinly
-			for (Long offset : results)
+			for (int i = 0; i < results.size(); i++)
 			{
+				Long offset = results.get(i);
+				if (batching && i % RECORD_BATCH_SIZE == 0) records = grabRecordBatch(results, i);
 				if (offset.longValue() == (long)103165) offset.longValue();
 				
+				// Print straight from the columns when they hold every field of the short format
+				if (printFromColumns(offset, isRegionSearch ? "SimpleWithCoords" : "Simple", command)) continue;
+				
 				// Attempt to grab the record from the pool
-				tempRecord = bufferPool.grabRecordWithOffset(offset.toString());
+				tempRecord = (records != null) ? records[i % RECORD_BATCH_SIZE] : bufferPool.grabRecordWithOffset(offset.longValue());
 				
 				// Only process valid records
 				if (tempRecord != null) 
@@ -403,7 +1023,6 @@ public class GISController {
 						tempRecord.printToFile("Long", writer);
 						if (isRegionSearch) {
 							writer.write("\n");
-							writer.flush();
 						}
 					}
 					else {												// Normal print format
@@ -412,18 +1031,16 @@ public class GISController {
 						else tempRecord.printToFile("Simple", writer);						
 					}
 					
-					// Flush write buffer to file output stream
-					writer.flush();
 				}
 			}
+			if (prefetching) bufferPool.endPrefetch();
+			
 			// Formatting: L:ine that seperates the output
 			writer.write(seperatorStr);
-			writer.flush();
 			return true;
 		}
 		else { // Zero items found from search
 			writer.write("Nothing found!\n"+seperatorStr);
-			writer.flush();
 			return true;
 		}
 	}
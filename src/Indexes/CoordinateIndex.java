@@ -1,9 +1,13 @@
 package Indexes;
-import java.io.FileWriter;
+import java.io.File;
+import java.io.Writer;
+import java.io.IOException;
 import java.util.Vector;
 
 import Parsers.RecordParser;
+import Parsers.RecordTokenizer;
 import Types.Coordinate;
+import DS.MappedQuadtree;
 import DS.prQuadtree;
 
 /*
@@ -27,6 +31,11 @@ public class CoordinateIndex {
 	 * the world that has been specified.
 	 */
 	private prQuadtree<Coordinate> quadtree;
+	
+	/**
+	 * Read-only image of the quadtree that is searched instead of the quadtree after a restore (null otherwise).
+	 */
+	private MappedQuadtree image = null;
 
 	/** West boundary coordinate of the world represented by the PR Quadtree structure	 */
 	private long westBoundary;
@@ -59,6 +68,70 @@ public class CoordinateIndex {
 		quadtree = new prQuadtree<Coordinate>(westBoundary, eastBoundary, southBoundary,northBoundary, BUCKET_SIZE);
 	}
 
+	/**
+	 * @param west The west boundary of the world (in seconds)
+	 * @param east The east boundary of the world (in seconds)
+	 * @param south The south boundary of the world (in seconds)
+	 * @param north The north boundary of the world (in seconds)
+	 */
+	public CoordinateIndex(long west, long east, long south, long north) 
+	{
+		westBoundary = west;
+		eastBoundary = east;
+		southBoundary = south;
+		northBoundary = north;
+		quadtree = new prQuadtree<Coordinate>(westBoundary, eastBoundary, southBoundary, northBoundary, BUCKET_SIZE);
+	}
+	
+	/**
+	 * @param imageFile Quadtree image written by writeImage()
+	 * @return A read-only coordinate index that searches the mapped image. It becomes a normal index on the first add.
+	 * @throws IOException If the image could not be mapped
+	 */
+	public static CoordinateIndex openImage(File imageFile) throws IOException
+	{
+		MappedQuadtree image = new MappedQuadtree(imageFile);
+		CoordinateIndex index = new CoordinateIndex(image.getXMin(), image.getXMax(), image.getYMin(), image.getYMax());
+		index.quadtree = null;
+		index.image = image;
+		return index;
+	}
+	
+	/**
+	 * @param imageFile File that receives a flat image of the quadtree
+	 * @return False if the index still searches this same image unchanged, so nothing had to be written
+	 * @throws IOException If the image could not be written
+	 */
+	public boolean writeImage(File imageFile) throws IOException
+	{
+		if (image != null) return false;
+		MappedQuadtree.write(quadtree, imageFile);
+		return true;
+	}
+	
+	/**
+	 * Turns a read-only index back into a normal quadtree, node for node, before it is changed.
+	 */
+	private void inflate()
+	{
+		if (image == null) return;
+		quadtree = image.inflate();
+		image = null;
+	}
+	
+	/**
+	 * @param west A string representation on the west boundary of the world
+	 * @param east A string representation on the east boundary of the world
+	 * @param south A string representation on the south boundary of the world
+	 * @param north A string representation on the north boundary of the world
+	 * @return True if the index covers exactly the world described by the boundaries
+	 */
+	public boolean hasBoundaries(String west, String east, String south, String north)
+	{
+		return westBoundary == RecordParser.parseLongitude(west) && eastBoundary == RecordParser.parseLongitude(east)
+				&& southBoundary == RecordParser.parseLatitude(south) && northBoundary == RecordParser.parseLatitude(north);
+	}
+
 	/**
 	 * @return the westBoundary
 	 */
@@ -126,6 +199,22 @@ public class CoordinateIndex {
 		long longitude = RecordParser.parseLongitude(lon);
 		long latitude = RecordParser.parseLatitude(lat);
 		importedFeaturesByLocation++;
+		inflate();
+		// Insert the created coord
+		return quadtree.insert(new Coordinate(longitude, latitude, value));
+	}
+	
+	
+	/**
+	 * @param longitude The already parsed longitude of the geographic coordinate (in seconds)
+	 * @param latitude The already parsed latitude of the geographic coordinate (in seconds)
+	 * @param value The long value stored in the quadtree as the offset for the geographic coordinate
+	 * @return A boolean indicating the success of the insertion operation on the quadtree
+	 */
+	public boolean add(long longitude, long latitude, long value)
+	{
+		importedFeaturesByLocation++;
+		inflate();
 		// Insert the created coord
 		return quadtree.insert(new Coordinate(longitude, latitude, value));
 	}
@@ -134,9 +223,10 @@ public class CoordinateIndex {
 	/**
 	 * @param writer writer object with a reference to a file that will receive the representation of the quadtree
 	 */
-	public void printToFile(FileWriter writer)
+	public void printToFile(Writer writer)
 	{
-		quadtree.printToFile(writer);
+		if (image != null) image.printToFile(writer);
+		else quadtree.printToFile(writer);
 	}
 	
 	/**
@@ -146,12 +236,25 @@ public class CoordinateIndex {
 	 */
 	public boolean add(String recordLine, Long value)
 	{
-		String[] latLonArr = RecordParser.grabLatAndLon(recordLine);
-		long longitude = RecordParser.parseLongitude(latLonArr[1]);
-		long latitude = RecordParser.parseLatitude(latLonArr[0]);
-		importedFeaturesByLocation++;
-		// Insert the created coord
-		return quadtree.insert(new Coordinate(longitude, latitude, value));		
+		return add(new RecordTokenizer().reset(recordLine), value);
+	}
+	
+	/**
+	 * @param fields Tokenizer positioned over a line inside of a records file
+	 * @param value The offset value to be stored at a node in quadtree
+	 * @return The boolean indicating the success value of the insertion
+	 */
+	public boolean add(RecordTokenizer fields, long value)
+	{
+		long longitude, latitude;
+		try {
+			longitude = RecordParser.parseLongitude(fields, RecordParser.LONGITUDE_FIELD);
+			latitude = RecordParser.parseLatitude(fields, RecordParser.LATITUDE_FIELD);
+		}
+		catch (NumberFormatException e) {
+			return false; // Records without a valid primary coordinate cannot be indexed by location
+		}
+		return add(longitude, latitude, value);
 	}
 
 	
@@ -161,10 +264,12 @@ public class CoordinateIndex {
 	 */
 	public Vector<Long> searchWithCoord(String latLon)
 	{
-		if (latLon.contains(" "))
+		int seperator = latLon.indexOf(' ');
+		if (seperator >= 0)
 		{
-			String[] latAndLon = latLon.split(" ");
-			return search(latAndLon[1], latAndLon[0]);
+			long latitude = RecordParser.parseLatitude(latLon, 0, seperator);
+			long longitude = RecordParser.parseLongitude(latLon, seperator + 1, latLon.length());
+			return search(longitude, latitude);
 		} 
 		else 
 		{
@@ -181,8 +286,18 @@ public class CoordinateIndex {
 	public Vector<Long> search(String lon, String lat) 
 	{
 		// Find the lat/longitude and use it to construct a coordinate to use in the quadtree
-		long longitude = RecordParser.parseLongitude(lon);
-		long latitude = RecordParser.parseLatitude(lat);
+		return search(RecordParser.parseLongitude(lon), RecordParser.parseLatitude(lat));
+	}
+	
+	/**
+	 * @param longitude The longitude of the geographic coordinate to find (in seconds)
+	 * @param latitude The latitude of the geographic coordinate to find (in seconds)
+	 * @return A vector of values of type long representing offsets where matching entries may be found in the DB file
+	 */
+	public Vector<Long> search(long longitude, long latitude) 
+	{
+		if (image != null) return image.find(longitude, latitude);
+		
 		Coordinate coordinate = quadtree.find(new Coordinate(longitude, latitude, -1));
 		
 		// If a coordinate was found, check if it had multiple offsets corresponding to it
@@ -207,15 +322,16 @@ public class CoordinateIndex {
 	public Vector<Long> regionSearch(String center, String halfHeight, String halfWidth)
 	{
 		// The provied center coordinate point needs to be split and parsed
-		String[] coordComponents = center.split(" "); // Lat and Lon are seperated by a space in the command format
-		long centerLat = RecordParser.parseLatitude(coordComponents[0]);
-		long centerLon = RecordParser.parseLongitude(coordComponents[1]);
+		int seperator = center.indexOf(' '); // Lat and Lon are seperated by a space in the command format
+		long centerLat = RecordParser.parseLatitude(center, 0, seperator);
+		long centerLon = RecordParser.parseLongitude(center, seperator + 1, center.length());
 		
 		// Already provided in seconds in input string, no need to use the record parser
 		long regionHalfHeight = Long.parseLong(halfHeight);
 		long regionHalfWidth = Long.parseLong(halfWidth);
 		
 		// Calculate the rectangular region points to produce the required search
+		if (image != null) return image.find(centerLon-regionHalfWidth, centerLon+regionHalfWidth, centerLat-regionHalfHeight, centerLat+regionHalfHeight);
 		Vector<Coordinate> resultsCoordinates = quadtree.find(centerLon-regionHalfWidth, centerLon+regionHalfWidth, centerLat-regionHalfHeight, centerLat+regionHalfHeight);
 		
 		Vector<Long> finalOffsets = new Vector<Long>();
@@ -0,0 +1,191 @@
+package Indexes;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+
+import DS.OffsetTable;
+
+/**
+ * The purpose of this class is to save the indexes of a database file next to it, so that a later run can
+ * load them directly instead of importing every records file again.  A snapshot holds the name index
+ * (hash table slots and offsets) and the record lengths; the coordinate index is saved as a flat quadtree
+ * image in its own file, which is memory mapped and searched in place when the snapshot is restored.
+ * A snapshot is only used when the database file still has the length it had when the snapshot was
+ * written and the checksum of its first and last megabyte is unchanged.
+ *
+ * <b>Format of file:</b> magic, version, database length, database checksum, record lengths, name index,
+ * then the length of the quadtree image (-1 when there is no coordinate index).
+ */
+public class IndexSnapshot {
+
+	/** Identifies a snapshot file ("GISS") */
+	private static final int MAGIC = 0x47495353;
+	/** Version of the snapshot format, snapshots of any other version are ignored */
+	private static final int VERSION = 6;
+	/** Number of bytes at the start and at the end of the database file covered by the checksum */
+	private static final int CHECKSUM_SPAN = 1 << 20;
+
+	/** Length of the database file that the indexes describe */
+	private long databaseLength;
+	/** The restored name index */
+	private NameIndex nameIndex;
+	/** The restored coordinate index (null if no world had been set) */
+	private CoordinateIndex coordinateIndex;
+
+	/**
+	 * @param databaseLength Length of the database file that the indexes describe
+	 * @param nameIndex The restored name index
+	 * @param coordinateIndex The restored coordinate index (may be null)
+	 */
+	private IndexSnapshot(long databaseLength, NameIndex nameIndex, CoordinateIndex coordinateIndex)
+	{
+		this.databaseLength = databaseLength;
+		this.nameIndex = nameIndex;
+		this.coordinateIndex = coordinateIndex;
+	}
+
+	/**
+	 * Writes a snapshot of the indexes. The snapshot and the quadtree image are written to temporary files first
+	 * and then moved over the previous ones, so an interrupted save never leaves a half written snapshot behind.
+	 *
+	 * @param snapshotFile The file that will hold the snapshot
+	 * @param databaseFile The database file described by the indexes (all records must already be written to it)
+	 * @param nameIndex The name index of the database file
+	 * @param coordinateIndex The coordinate index of the database file (may be null)
+	 * @param recordLengths The length of each record in the database file
+	 * @throws IOException If the snapshot could not be written
+	 */
+	public static void save(File snapshotFile, File databaseFile, NameIndex nameIndex, CoordinateIndex coordinateIndex,
+			OffsetTable recordLengths) throws IOException
+	{
+		// A coordinate index that still searches the image it was restored from does not need to be written again
+		File imageFile = imageFileFor(databaseFile);
+		File tempImage = new File(imageFile.getPath() + ".tmp");
+		if (coordinateIndex != null && coordinateIndex.writeImage(tempImage))
+			Files.move(tempImage.toPath(), imageFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		
+		File tempFile = new File(snapshotFile.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 1 << 16));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(databaseFile.length());
+			out.writeLong(checksum(databaseFile));
+			recordLengths.write(out);
+			nameIndex.writeSnapshot(out);
+			out.writeLong(coordinateIndex != null ? imageFile.length() : -1);
+		}
+		finally {
+			out.close();
+		}
+		Files.move(tempFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * @param snapshotFile The file that holds the snapshot
+	 * @param databaseFile The database file described by the snapshot
+	 * @param recordLengths Table that receives the length of each record in the database file
+	 * @return The restored indexes, or null if there is no snapshot or it does not match the database file
+	 * @throws IOException If the snapshot matches the database file but could not be read
+	 */
+	public static IndexSnapshot load(File snapshotFile, File databaseFile, OffsetTable recordLengths) throws IOException
+	{
+		if (!snapshotFile.isFile() || !databaseFile.isFile()) return null;
+
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile), 1 << 16));
+		try {
+			// Cheap checks first - the version, then the length and checksum of the database file
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+			long databaseLength = in.readLong();
+			if (databaseLength != databaseFile.length() || in.readLong() != checksum(databaseFile)) return null;
+
+			recordLengths.read(in);
+			NameIndex nameIndex = new NameIndex();
+			nameIndex.readSnapshot(in);
+			
+			// The coordinate index is searched straight from its mapped image
+			CoordinateIndex coordinateIndex = null;
+			long imageLength = in.readLong();
+			if (imageLength >= 0) 
+			{
+				File imageFile = imageFileFor(databaseFile);
+				if (imageFile.length() != imageLength) throw new IOException("Error: Quadtree image \"" + imageFile + "\" does not match the snapshot.");
+				coordinateIndex = CoordinateIndex.openImage(imageFile);
+			}
+			return new IndexSnapshot(databaseLength, nameIndex, coordinateIndex);
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * @param databaseFile The database file described by the indexes
+	 * @return The file that holds the quadtree image of the coordinate index
+	 */
+	private static File imageFileFor(File databaseFile)
+	{
+		return new File(databaseFile.getPath() + ".quadtree");
+	}
+
+	/**
+	 * @param databaseFile The database file to be checked
+	 * @return CRC32 of the first and last megabyte of the file (the whole file when it is smaller than two megabytes)
+	 * @throws IOException If the database file could not be read
+	 */
+	public static long checksum(File databaseFile) throws IOException
+	{
+		CRC32 crc = new CRC32();
+		RandomAccessFile dbRAF = new RandomAccessFile(databaseFile, "r");
+		try {
+			long length = dbRAF.length();
+			byte[] buffer = new byte[(int) Math.min(length, CHECKSUM_SPAN)];
+			dbRAF.readFully(buffer);
+			crc.update(buffer);
+
+			long tailStart = Math.max(buffer.length, length - CHECKSUM_SPAN);
+			if (tailStart < length) {
+				buffer = new byte[(int) (length - tailStart)];
+				dbRAF.seek(tailStart);
+				dbRAF.readFully(buffer);
+				crc.update(buffer);
+			}
+		}
+		finally {
+			dbRAF.close();
+		}
+		return crc.getValue();
+	}
+
+	/**
+	 * @return Length of the database file that the indexes describe
+	 */
+	public long getDatabaseLength() {
+		return databaseLength;
+	}
+
+	/**
+	 * @return The restored name index
+	 */
+	public NameIndex getNameIndex() {
+		return nameIndex;
+	}
+
+	/**
+	 * @return The restored coordinate index (null if no world had been set)
+	 */
+	public CoordinateIndex getCoordinateIndex() {
+		return coordinateIndex;
+	}
+
+}
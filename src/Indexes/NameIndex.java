@@ -7,11 +7,15 @@
 
 
 package Indexes;
-import java.io.FileWriter;
-import java.util.Vector;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.Writer;
+import java.io.IOException;
 
 import DS.HashTable;
+import DS.LongList;
 import Parsers.RecordParser;
+import Parsers.RecordTokenizer;
 
 /**
  * @author Carlos Folgar
@@ -19,15 +23,32 @@ import Parsers.RecordParser;
  * The purpose of this class is to keep an index of the feature name and state of records in a database file
  * along with their file offsets.  The name index makes us a hashtable to store the entries as strings
  * in the format Key: (FeatureName):(StateAbbreviation) Value: File offset.  It allows for fast lookup
- * once the entries have been hashed into the table.
+ * once the entries have been hashed into the table.  The offsets of each key are kept as primitive longs.
+ * The index may be split into several segments, each its own hashtable, with the high bits of the hash
+ * of a key choosing its segment. No single table then has to hold every key, so the number of keys is
+ * limited by the memory available rather than by the largest table. The keys may be kept as UTF-8 bytes
+ * in a key arena of each hashtable instead of as one String object each. A prefix index of the feature
+ * names is kept next to the hashtables: the keys an import adds are collected while it runs and merged
+ * into the sorted prefix index by mergePrefixIndex() when it ends, and the prefix index shares the lists
+ * of offsets of the hashtables instead of copying them.
  *
  */
 public class NameIndex {
 
 	/**
-	 * Internal data structure to keep track of the key value pairs
+	 * Internal data structures to keep track of the key value pairs, one for each segment
 	 */
-	private HashTable<String, Long> table;
+	private HashTable<String>[] tables;
+	
+	/**
+	 * Set when the hashtables keep their keys in a key arena
+	 */
+	private boolean compactKeys;
+	
+	/**
+	 * Index of the names that start with a prefix
+	 */
+	private PrefixIndex prefixIndex = new PrefixIndex();
 	
 	/**
 	 * Keeps track of the longest probe sequence that has been required in the import of data
@@ -40,20 +61,84 @@ public class NameIndex {
 	public int importedFeaturesByName = 0;
 	
 	/**
-	 * Constructs a name index with a hashtable storing keys as string and values as their offset in a file (Long)
+	 * Constructs a name index with a hashtable storing keys as string and values as their offset in a file (long)
 	 */
 	public NameIndex()
 	{
-		table = new HashTable<String, Long>();
+		this(1);
+	}
+	
+	/**
+	 * @param segments Number of hashtables the keys are spread over
+	 * @throws IllegalArgumentException If the number of segments is not positive
+	 */
+	public NameIndex(int segments)
+	{
+		this(segments, false);
+	}
+	
+	/**
+	 * @param segments Number of hashtables the keys are spread over
+	 * @param compactKeys True to keep the keys in a key arena of each hashtable
+	 * @throws IllegalArgumentException If the number of segments is not positive
+	 */
+	public NameIndex(int segments, boolean compactKeys)
+	{
+		this.compactKeys = compactKeys;
+		if (segments < 1) throw new IllegalArgumentException("Error: A name index needs at least one segment, not " + segments + ".");
+		createSegments(segments);
 		longestProbeSequence = 0;
 	}
 	
+	/**
+	 * @param segments Number of empty hashtables to replace the current ones
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private void createSegments(int segments)
+	{
+		tables = new HashTable[segments];
+		for (int i = 0; i < segments; i++) 
+		{
+			tables[i] = new HashTable<String>();
+			if (compactKeys) tables[i].useKeyArena();
+		}
+	}
+	
+	/**
+	 * @param hash The hash of a key
+	 * @return The hashtable that holds the key
+	 */
+	private HashTable<String> segmentOf(long hash)
+	{
+		return tables[(int) Long.remainderUnsigned(hash >>> 32, tables.length)];
+	}
+	
+	/**
+	 * @return Number of hashtables the keys are spread over
+	 */
+	public int getSegmentCount() {
+		return tables.length;
+	}
+	
 	/**
 	 * @param writer The output file write which will get the output representation of our HashTable
 	 */
-	public void printToFile(FileWriter writer)
+	public void printToFile(Writer writer)
 	{
-		table.printToFile(writer);
+		if (tables.length == 1) {
+			tables[0].printToFile(writer);
+			return;
+		}
+		try {
+			for (int i = 0; i < tables.length; i++)
+			{
+				writer.write((i == 0 ? "" : "\n") + "Segment " + (i + 1) + " of " + tables.length + "\n");
+				tables[i].printToFile(writer);
+			}
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+		}
 	}
 	
 	
@@ -61,21 +146,99 @@ public class NameIndex {
 	 * @param recordLine Line inside of a records file that represents a record to be hashed into table
 	 * @param offset Offset inside of a records file at which we can find the provided record string
 	 */
-	public void add(String recordLine, Long offset)
+	public void add(String recordLine, long offset)
 	{
-		String keyString = RecordParser.grabNameAndAbbrev(recordLine);
-		int probeSeq = table.insert(keyString, offset);
+		addKey(RecordParser.grabNameAndAbbrev(recordLine), offset);
+	}
+	
+	/**
+	 * @param fields Tokenizer positioned over the record line to be hashed into table
+	 * @param offset Offset inside of the database file at which the record may be found
+	 */
+	public void add(RecordTokenizer fields, long offset)
+	{
+		addKey(RecordParser.grabNameAndAbbrev(fields), offset);
+	}
+	
+	/**
+	 * @param keyString Already parsed key of a record in the format (FeatureName):(StateAbbreviation)
+	 * @param offset Offset inside of the database file at which the record may be found
+	 */
+	public void addKey(String keyString, long offset)
+	{
+		long hash = tables[0].hashKey(keyString);
+		HashTable<String> table = segmentOf(hash);
+		int keys = table.getKeyCount();
+		int probeSeq = table.insert(keyString, hash, offset);
+		if (table.getKeyCount() > keys) prefixIndex.add(keyString, table.getLastInserted()); // A new key
 		if (probeSeq > longestProbeSequence) longestProbeSequence = probeSeq;
 		importedFeaturesByName++;
 	}
 	
 	/**
 	 * @param featNameAndAbbrev String concatenation of the feature name and State Abbreviate - this is the key for the entry
-	 * @return A collection of values (type Long) representing file offsets at which the records may be found in the DB
+	 * @return A read-only list of file offsets at which the records may be found in the DB (empty if none were found)
+	 */
+	public LongList search(String featNameAndAbbrev)
+	{
+		long hash = tables[0].hashKey(featNameAndAbbrev);
+		return segmentOf(hash).findEntriesWithKey(featNameAndAbbrev, hash);
+	}
+	
+	/**
+	 * @param prefix Case-insensitive start of the feature names to be found
+	 * @param state State abbreviation the records must have, or null for every state
+	 * @param limit Largest number of offsets to be returned
+	 * @return File offsets of the first records, in the order of feature name, state and offset, whose feature name starts with the prefix
+	 */
+	public long[] searchPrefix(String prefix, String state, int limit)
+	{
+		return prefixIndex.search(prefix, state, limit);
+	}
+	
+	/**
+	 * @param writer The output file write which will get the output representation of the prefix index
+	 */
+	public void printPrefixToFile(Writer writer)
+	{
+		prefixIndex.printToFile(writer);
+	}
+	
+	/**
+	 * Merges the keys added since the last merge into the prefix index, called when an import ends.
+	 */
+	public void mergePrefixIndex()
+	{
+		prefixIndex.merge();
+	}
+	
+	/**
+	 * @param out Stream that receives the name index
+	 * @throws IOException If the index could not be written
+	 */
+	public void writeSnapshot(DataOutputStream out) throws IOException
+	{
+		out.writeInt(longestProbeSequence);
+		out.writeInt(tables.length);
+		out.writeBoolean(compactKeys);
+		for (HashTable<String> table : tables) table.writeSnapshot(out);
+	}
+	
+	/**
+	 * Replaces the contents of the index, including its number of segments and where its keys are kept, with an index written by writeSnapshot().
+	 * 
+	 * @param in Stream positioned at a name index written by writeSnapshot()
+	 * @throws IOException If the index could not be read
 	 */
-	public Vector<Long> search(String featNameAndAbbrev)
+	public void readSnapshot(DataInputStream in) throws IOException
 	{
-		return table.findEntriesWithKey(featNameAndAbbrev);
+		longestProbeSequence = in.readInt();
+		int segments = in.readInt();
+		if (segments < 1) throw new IOException("Error: Name index snapshot has an invalid number of segments.");
+		compactKeys = in.readBoolean();
+		createSegments(segments);
+		for (HashTable<String> table : tables) table.readSnapshot(in);
+		prefixIndex = new PrefixIndex(tables);
 	}
 	
 	/**
@@ -84,7 +247,7 @@ public class NameIndex {
 	 */
 	public int numberOfOccurences(String featNameAndAbbrev)
 	{
-		return table.numberOfKeyOccurences(featNameAndAbbrev);
+		return search(featNameAndAbbrev).size();
 	}
 	
 }
@@ -0,0 +1,455 @@
+package Indexes;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+
+import DS.HashTable;
+import DS.LongList;
+
+/**
+ * The purpose of this class is to find the records whose feature name starts with a given prefix, for
+ * type-ahead searches. Every distinct feature name is case-folded, encoded as UTF-8 and packed into one
+ * sorted array of bytes, so the names that start with a prefix form a single run that is found with a
+ * binary search. Each name is followed by its keys of the name index in the order of state, and each key
+ * refers to the list of file offsets the name index keeps for it, so the offsets are never copied and the
+ * records imported for a known key are found without changing the prefix index. Keys that are new to the
+ * name index are collected while records are imported, then sorted and merged into the packed arrays by
+ * merge() in a single pass.
+ *
+ */
+public class PrefixIndex {
+
+	/**
+	 * Number of results returned when no limit is given
+	 */
+	public static final int DEFAULT_LIMIT = 10;
+
+	/**
+	 * Order of the keys: by folded name, compared as unsigned bytes, then by state
+	 */
+	private static final Comparator<Key> KEY_ORDER = (a, b) -> {
+		// Most names differ within their first bytes, which are compared without reading the names
+		if (a.sortPrefix != b.sortPrefix) return (a.sortPrefix < b.sortPrefix) ? -1 : 1;
+		int order = Arrays.compareUnsigned(a.name, b.name);
+		return (order != 0) ? order : a.state.compareTo(b.state);
+	};
+
+	/**
+	 * Case-folded feature names as UTF-8 bytes, in sorted order
+	 */
+	private byte[] nameBytes = new byte[0];
+
+	/**
+	 * Position of each name in nameBytes, followed by the length of nameBytes
+	 */
+	private int[] nameStarts = {0};
+
+	/**
+	 * Position of the first key of each name in keyStates and keyOffsets, followed by the number of keys
+	 */
+	private int[] keyStarts = {0};
+
+	/**
+	 * Index in stateNames of the state of each key
+	 */
+	private short[] keyStates = new short[0];
+
+	/**
+	 * File offsets of the records of each key, shared with the name index
+	 */
+	private LongList[] keyOffsets = new LongList[0];
+
+	/**
+	 * Upper case state abbreviations that appear in the keys
+	 */
+	private String[] stateNames = new String[0];
+
+	/**
+	 * Index in stateNames of each state abbreviation
+	 */
+	private HashMap<String, Short> stateIndexes = new HashMap<String, Short>();
+
+	/**
+	 * Keys added since the last merge, in the order they were added
+	 */
+	private ArrayList<Key> pending = new ArrayList<Key>();
+
+	/**
+	 * A key of the name index taken apart until it is merged into the index
+	 */
+	private static class Key
+	{
+		/** Case-folded feature name as UTF-8 bytes */
+		private final byte[] name;
+		/** First 8 bytes of the name, ordered the same way as the name when compared as signed longs */
+		private final long sortPrefix;
+		/** Upper case state abbreviation */
+		private final String state;
+		/** File offsets of the records with the key */
+		private final LongList offsets;
+
+		/**
+		 * @param name Case-folded feature name as UTF-8 bytes
+		 * @param state Upper case state abbreviation
+		 * @param offsets File offsets of the records with the key
+		 */
+		private Key(byte[] name, String state, LongList offsets)
+		{
+			this.name = name;
+			long prefix = 0;
+			for (int i = 0; i < 8; i++) prefix = (prefix << 8) | ((i < name.length) ? (name[i] & 0xFF) : 0);
+			this.sortPrefix = prefix ^ Long.MIN_VALUE;
+			this.state = state;
+			this.offsets = offsets;
+		}
+	}
+
+	/**
+	 * Creates an empty index.
+	 */
+	public PrefixIndex()
+	{
+	}
+
+	/**
+	 * Builds the index from every key of the given hashtables.
+	 *
+	 * @param tables Hashtables with keys in the format (FeatureName):(StateAbbreviation)
+	 */
+	public PrefixIndex(HashTable<String>[] tables)
+	{
+		for (HashTable<String> table : tables)
+		{
+			for (int slot = 0; slot < table.getSize(); slot++)
+			{
+				String key = table.keyAt(slot);
+				if (key != null) add(key, table.valuesAt(slot));
+			}
+		}
+		merge();
+	}
+
+	/**
+	 * Adds a key that is new to the name index. It is searched once merge() was called.
+	 *
+	 * @param key Key in the format (FeatureName):(StateAbbreviation)
+	 * @param offsets The list of file offsets the name index keeps for the key
+	 */
+	public void add(String key, LongList offsets)
+	{
+		int split = key.lastIndexOf(':');
+		String state = (split >= 0) ? key.substring(split + 1).toUpperCase() : "";
+		pending.add(new Key(fold(key, (split >= 0) ? split : key.length()), state, offsets));
+	}
+
+	/**
+	 * Sorts the keys added since the last merge and merges them into the index. The names of the index
+	 * between two added names are copied as whole runs, so a merge costs little more than copying the index.
+	 */
+	public void merge()
+	{
+		if (pending.isEmpty()) return;
+		Key[] added = pending.toArray(new Key[pending.size()]);
+		pending = new ArrayList<Key>();
+		Arrays.sort(added, KEY_ORDER);
+
+		int oldNames = nameStarts.length - 1;
+		int keyCount = keyStates.length + added.length;
+		int addedBytes = 0;
+		for (Key key : added) addedBytes += key.name.length;
+
+		// Sized for the case where every added key has a new name, trimmed at the end
+		Merged merged = new Merged(nameBytes.length + addedBytes, oldNames + added.length, keyCount);
+		int name = 0; // Next name of the index to be copied
+		int next = 0; // Next added key
+		while (next < added.length)
+		{
+			// Copy the names that sort below the name of the next added key
+			byte[] addedName = added[next].name;
+			int position = firstNameNotBelow(addedName, name, oldNames);
+			copyNames(merged, name, position);
+			name = position;
+
+			// The added keys with the same name are merged by state with the keys of the name, if the index has it
+			int end = next + 1;
+			while (end < added.length && Arrays.equals(added[end].name, addedName)) end++;
+			boolean known = name < oldNames && nameLength(name) == addedName.length && startsWith(name, addedName);
+			merged.startName(addedName, 0, addedName.length);
+			int key = known ? keyStarts[name] : 0;
+			int lastKey = known ? keyStarts[name + 1] : 0;
+			while (key < lastKey || next < end)
+			{
+				if (next == end || (key < lastKey && stateNames[keyStates[key]].compareTo(added[next].state) <= 0)) {
+					merged.addKey(keyStates[key], keyOffsets[key]);
+					key++;
+				}
+				else {
+					merged.addKey(stateIndex(added[next].state), added[next].offsets);
+					next++;
+				}
+			}
+			if (known) name++;
+		}
+		copyNames(merged, name, oldNames);
+
+		nameBytes = Arrays.copyOf(merged.bytes, merged.position);
+		nameStarts = Arrays.copyOf(merged.nameStarts, merged.names + 1);
+		nameStarts[merged.names] = merged.position;
+		keyStarts = Arrays.copyOf(merged.keyStarts, merged.names + 1);
+		keyStarts[merged.names] = merged.keys;
+		keyStates = merged.states;
+		keyOffsets = merged.offsets;
+	}
+
+	/**
+	 * The arrays of an index being merged, filled in order.
+	 */
+	private static class Merged
+	{
+		/** Case-folded feature names as UTF-8 bytes */
+		private final byte[] bytes;
+		/** Position of each name in bytes */
+		private final int[] nameStarts;
+		/** Position of the first key of each name */
+		private final int[] keyStarts;
+		/** Index in stateNames of the state of each key */
+		private final short[] states;
+		/** File offsets of the records of each key */
+		private final LongList[] offsets;
+		/** Number of bytes, names and keys filled in */
+		private int position = 0, names = 0, keys = 0;
+
+		/**
+		 * @param byteCount Largest number of bytes of the names
+		 * @param nameCount Largest number of names
+		 * @param keyCount Number of keys
+		 */
+		private Merged(int byteCount, int nameCount, int keyCount)
+		{
+			bytes = new byte[byteCount];
+			nameStarts = new int[nameCount + 1];
+			keyStarts = new int[nameCount + 1];
+			states = new short[keyCount];
+			offsets = new LongList[keyCount];
+		}
+
+		/**
+		 * @param source Array that holds the name
+		 * @param from Position of the name in source
+		 * @param length Number of bytes of the name
+		 */
+		private void startName(byte[] source, int from, int length)
+		{
+			nameStarts[names] = position;
+			keyStarts[names++] = keys;
+			System.arraycopy(source, from, bytes, position, length);
+			position += length;
+		}
+
+		/**
+		 * @param state Index in stateNames of the state of the key
+		 * @param keyOffsets File offsets of the records of the key
+		 */
+		private void addKey(short state, LongList keyOffsets)
+		{
+			states[keys] = state;
+			offsets[keys++] = keyOffsets;
+		}
+	}
+
+	/**
+	 * Copies a run of names of the index, with their keys, to the end of a merged index.
+	 *
+	 * @param merged The merged index
+	 * @param from First name to be copied
+	 * @param to Name past the last name to be copied
+	 */
+	private void copyNames(Merged merged, int from, int to)
+	{
+		if (from >= to) return;
+		int byteShift = merged.position - nameStarts[from];
+		int keyShift = merged.keys - keyStarts[from];
+		for (int name = from; name < to; name++)
+		{
+			merged.nameStarts[merged.names] = nameStarts[name] + byteShift;
+			merged.keyStarts[merged.names++] = keyStarts[name] + keyShift;
+		}
+		int byteCount = nameStarts[to] - nameStarts[from];
+		System.arraycopy(nameBytes, nameStarts[from], merged.bytes, merged.position, byteCount);
+		merged.position += byteCount;
+		int keyCount = keyStarts[to] - keyStarts[from];
+		System.arraycopy(keyStates, keyStarts[from], merged.states, merged.keys, keyCount);
+		System.arraycopy(keyOffsets, keyStarts[from], merged.offsets, merged.keys, keyCount);
+		merged.keys += keyCount;
+	}
+
+	/**
+	 * @param state Upper case state abbreviation
+	 * @return The index of the state in stateNames, added if the state is new
+	 */
+	private short stateIndex(String state)
+	{
+		Short index = stateIndexes.get(state);
+		if (index == null) {
+			index = (short) stateNames.length;
+			stateIndexes.put(state, index);
+			stateNames = Arrays.copyOf(stateNames, stateNames.length + 1);
+			stateNames[index] = state;
+		}
+		return index;
+	}
+
+	/**
+	 * @param text Text to be folded
+	 * @param length Number of characters at the start of the text to be folded
+	 * @return The characters folded the same way equalsIgnoreCase() compares them, as UTF-8 bytes
+	 */
+	private static byte[] fold(String text, int length)
+	{
+		// Plain ASCII characters are folded straight into their bytes
+		byte[] ascii = new byte[length];
+		for (int i = 0; i < length; i++)
+		{
+			char c = text.charAt(i);
+			if (c >= 0x80) {
+				char[] folded = new char[length];
+				for (int j = 0; j < length; j++) folded[j] = Character.toLowerCase(Character.toUpperCase(text.charAt(j)));
+				return new String(folded).getBytes(StandardCharsets.UTF_8);
+			}
+			ascii[i] = (byte) ((c >= 'A' && c <= 'Z') ? c + ('a' - 'A') : c);
+		}
+		return ascii;
+	}
+
+	/**
+	 * @param prefix Case-insensitive start of the feature names to be found
+	 * @param state State abbreviation the records must have, or null for every state
+	 * @param limit Largest number of offsets to be returned
+	 * @return File offsets of the first records, in the order of feature name, state and offset, whose feature name starts with the prefix
+	 */
+	public long[] search(String prefix, String state, int limit)
+	{
+		merge(); // Keys added outside of an import are merged by the first search
+		byte[] folded = fold(prefix, prefix.length());
+
+		// Only match records of the state, if it appears at all
+		int stateIndex = -1;
+		if (state != null)
+		{
+			for (int s = 0; s < stateNames.length; s++) if (stateNames[s].equalsIgnoreCase(state)) stateIndex = s;
+			if (stateIndex < 0) return new long[0];
+		}
+
+		// The results grow as they are found, a large limit does not allocate anything up front
+		long[] results = new long[Math.max(0, Math.min(limit, DEFAULT_LIMIT))];
+		int found = 0;
+		for (int name = firstNameNotBelow(folded); name < nameStarts.length - 1 && found < limit && startsWith(name, folded); name++)
+		{
+			for (int key = keyStarts[name]; key < keyStarts[name + 1] && found < limit; key++)
+			{
+				if (stateIndex >= 0 && keyStates[key] != stateIndex) continue;
+				LongList offsets = keyOffsets[key];
+				for (int v = 0; v < offsets.size() && found < limit; v++)
+				{
+					if (found == results.length) results = Arrays.copyOf(results, (int) Math.min(2L * found, limit));
+					results[found++] = offsets.get(v);
+				}
+			}
+		}
+		return Arrays.copyOf(results, found);
+	}
+
+	/**
+	 * @param folded Folded prefix as UTF-8 bytes
+	 * @return Index of the first name that does not sort below the prefix
+	 */
+	private int firstNameNotBelow(byte[] folded)
+	{
+		return firstNameNotBelow(folded, 0, nameStarts.length - 1);
+	}
+
+	/**
+	 * @param folded Folded prefix as UTF-8 bytes
+	 * @param low First name to be considered
+	 * @param high Name past the last name to be considered
+	 * @return Index of the first name of the range that does not sort below the prefix, or high if there is none
+	 */
+	private int firstNameNotBelow(byte[] folded, int low, int high)
+	{
+		while (low < high)
+		{
+			int middle = (low + high) >>> 1;
+			int order = Arrays.compareUnsigned(nameBytes, nameStarts[middle], nameStarts[middle + 1], folded, 0, folded.length);
+			if (order < 0) low = middle + 1;
+			else high = middle;
+		}
+		return low;
+	}
+
+	/**
+	 * @param name Index of a name
+	 * @return The number of bytes of the name
+	 */
+	private int nameLength(int name)
+	{
+		return nameStarts[name + 1] - nameStarts[name];
+	}
+
+	/**
+	 * @param name Index of a name
+	 * @param folded Folded prefix as UTF-8 bytes
+	 * @return True if the name starts with the prefix
+	 */
+	private boolean startsWith(int name, byte[] folded)
+	{
+		int start = nameStarts[name];
+		if (nameStarts[name + 1] - start < folded.length) return false;
+		return Arrays.equals(nameBytes, start, start + folded.length, folded, 0, folded.length);
+	}
+
+	/**
+	 * @return The number of bytes taken by the arrays of the index, not counting the offsets shared with the name index
+	 */
+	public long getMemoryBytes()
+	{
+		return nameBytes.length + 4L * (nameStarts.length + keyStarts.length) + 2L * keyStates.length + 4L * keyOffsets.length;
+	}
+
+	/**
+	 * @param writer The output file write which will get the names of the index, each with the state and offset of its records
+	 */
+	public void printToFile(Writer writer)
+	{
+		merge();
+		try {
+			long records = 0;
+			for (LongList offsets : keyOffsets) records += offsets.size();
+			writer.write("Format of display is\nName number: folded feature name\t[ state offset ... ]\nNumber of names is " + (nameStarts.length - 1)
+					+ "\nNumber of records is " + records + "\n\n");
+			StringBuilder builder = new StringBuilder();
+			for (int name = 0; name < nameStarts.length - 1; name++)
+			{
+				builder.setLength(0);
+				builder.append(name).append(":\t").append(new String(nameBytes, nameStarts[name], nameStarts[name + 1] - nameStarts[name], StandardCharsets.UTF_8)).append("\t[ ");
+				for (int key = keyStarts[name]; key < keyStarts[name + 1]; key++)
+				{
+					for (int v = 0; v < keyOffsets[key].size(); v++)
+						builder.append(stateNames[keyStates[key]]).append(' ').append(keyOffsets[key].get(v)).append(' ');
+				}
+				writer.write(builder.append("]\n").toString());
+			}
+			writer.write("\nPrefix index memory: " + getMemoryBytes() + " bytes (names " + nameBytes.length + ", name and key positions "
+					+ 4L * (nameStarts.length + keyStarts.length) + ", states " + 2L * keyStates.length + ", references to the offset lists "
+					+ 4L * keyOffsets.length + ")\n");
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+}
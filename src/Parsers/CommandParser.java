@@ -130,6 +130,18 @@ public class CommandParser {
 				parsedCommand.setCommandType("Comment");
 				parsedCommand.setCommandMessage(rawCommandString);
 			}
+			else if (parts[0].equalsIgnoreCase("what_starts_with") && parts.length > 1) // Checked first, the prefix may contain any word
+			{
+				parsedCommand.setCommandType("toPrefixIndex");
+				parsedCommand.setFeatureName(parts[1]);
+				for (int i = 2; i < parts.length; i++) 
+				{
+					// The optional fields are told apart by their form: a number is the limit, anything else the state
+					if (parts[i].matches("\\d+")) parsedCommand.setResultLimit(parts[i]);
+					else parsedCommand.setStateAbbrev(parts[i]);
+				}
+				commandsProcessed++; // Update the number of commands that we have processed
+			}
 			else if (rawCommandString.contains("world")) 
 			{
 				parsedCommand.setCommandType("World");
@@ -139,9 +151,21 @@ public class CommandParser {
 			}
 			else if (rawCommandString.contains("import"))
 			{
-				parsedCommand.setCommandType("Import");
-				parsedCommand.setRecordFileName(parts[1]);
-				commandsProcessed++; // Update the number of commands that we have processed
+				if (parts.length < 3) {
+					parsedCommand.setCommandType("Import");
+					parsedCommand.setRecordFileName(parts[1]);
+					commandsProcessed++; // Update the number of commands that we have processed
+				}
+				else if (parts[1].equals("-p")) // The only import flag
+				{
+					parsedCommand.setCommandType("Import");
+					parsedCommand.setImportFlag(parts[1]);
+					parsedCommand.setRecordFileName(parts[2]);
+					commandsProcessed++; // Update the number of commands that we have processed
+				}
+				else {
+					System.err.println("Error: Unknown import flag \"" + parts[1] + "\" (only -p is supported) encountered. Will ignore the command.");
+				}
 			}
 			else if (parts[0].equalsIgnoreCase("what_is_at"))
 			{
@@ -187,7 +211,14 @@ public class CommandParser {
 					parsedCommand.setHalfWidth(parts[5]);
 				}
 				commandsProcessed++; // Update the number of commands that we have processed
-			} else if (parts[0].equalsIgnoreCase("debug"))
+			} else if (parts[0].equalsIgnoreCase("pool") && parts.length > 1)
+			{
+				parsedCommand.setCommandType("Pool");
+				parsedCommand.setPoolCapacity(parts[1]);
+				if (parts.length > 2) parsedCommand.setPoolPolicy(parts[2]);
+				commandsProcessed++; // Update the number of commands that we have processed
+			}
+			else if (parts[0].equalsIgnoreCase("debug"))
 			{
 				parsedCommand.setCommandType(parts[0]);
 				parsedCommand.setDebugTarget(parts[1]);
@@ -0,0 +1,289 @@
+package Parsers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The purpose of this class is to parse one newline-aligned byte range of a GIS records file
+ * on a fork-join pool.  Each chunk reads its bytes, splits them into record lines and parses
+ * the name index key and the coordinates of every record.  Nothing is inserted into the indexes
+ * here; the chunks are merged back in file order so the offsets in the database file are exactly
+ * the ones a sequential import would write.
+ */
+public class ImportChunk extends RecursiveAction
+{
+	private static final long serialVersionUID = 1L;
+
+	/** Smallest byte range handed to a single chunk */
+	private static final long MIN_CHUNK_SIZE = 1 << 20;
+	/** Largest byte range handed to a single chunk (bounds the memory held by one chunk) */
+	private static final long MAX_CHUNK_SIZE = 64 << 20;
+
+	/** The records file that contains the chunk */
+	private final File recordsFile;
+	/** Offset of the first byte of the chunk (always the start of a line) */
+	private final long start;
+	/** Offset one past the last byte of the chunk (always the start of a line or the end of the file) */
+	private final long end;
+
+	/** Tokenizer reused for every line of the chunk */
+	private final RecordTokenizer fields = new RecordTokenizer();
+
+	/** Raw bytes of the chunk */
+	private byte[] data;
+	/** Number of record lines found in the chunk */
+	private int lineCount = 0;
+	/** Position of each record line inside of the data array */
+	private int[] lineStarts;
+	/** Length of each record line (without its terminator) */
+	private int[] lineLengths;
+	/** Name index key "(Name):(State Abbreviation)" of each record */
+	private String[] keys;
+	/** Primary longitude of each record in seconds */
+	private long[] longitudes;
+	/** Primary latitude of each record in seconds */
+	private long[] latitudes;
+	/** Position of the longitude and latitude fields of each record (only needed while parsing) */
+	private int[] longitudeStarts, longitudeEnds, latitudeStarts, latitudeEnds;
+
+	/**
+	 * @param recordsFile The records file that contains the chunk
+	 * @param start Offset of the first line of the chunk
+	 * @param end Offset one past the end of the last line of the chunk
+	 */
+	public ImportChunk(File recordsFile, long start, long end)
+	{
+		this.recordsFile = recordsFile;
+		this.start = start;
+		this.end = end;
+	}
+
+	/**
+	 * Reads the chunk and parses every record line inside of it.
+	 */
+	@Override
+	protected void compute()
+	{
+		try {
+			readChunk();
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		// Upper bound on the number of lines so the columns only need to be allocated once
+		int maxLines = 1;
+		for (byte b : data) if (b == '\n') maxLines++;
+		lineStarts = new int[maxLines];
+		lineLengths = new int[maxLines];
+		keys = new String[maxLines];
+		longitudes = new long[maxLines];
+		latitudes = new long[maxLines];
+		longitudeStarts = new int[maxLines];
+		longitudeEnds = new int[maxLines];
+		latitudeStarts = new int[maxLines];
+		latitudeEnds = new int[maxLines];
+
+		int lineStart = 0;
+		while (lineStart < data.length)
+		{
+			int lineEnd = lineStart;
+			while (lineEnd < data.length && data[lineEnd] != '\n') lineEnd++;
+
+			int length = lineEnd - lineStart;
+			if (length > 0 && data[lineEnd - 1] == '\r') length--;
+			if (length > 0) parseLine(lineStart, length); // Blank lines are not records
+
+			lineStart = lineEnd + 1;
+		}
+		
+		RecordParser.parseLongitudes(data, longitudeStarts, longitudeEnds, lineCount, longitudes);
+		RecordParser.parseLatitudes(data, latitudeStarts, latitudeEnds, lineCount, latitudes);
+		longitudeStarts = longitudeEnds = latitudeStarts = latitudeEnds = null;
+	}
+
+	/**
+	 * @param lineStart Position of the line inside of the data array
+	 * @param length Length of the line
+	 */
+	private void parseLine(int lineStart, int length)
+	{
+		fields.reset(data, lineStart, length);
+
+		lineStarts[lineCount] = lineStart;
+		lineLengths[lineCount] = length;
+		keys[lineCount] = RecordParser.grabNameAndAbbrev(fields);
+		
+		// Only remember where the coordinates are, they are parsed as whole columns afterwards
+		longitudeStarts[lineCount] = fields.getFieldStart(RecordParser.LONGITUDE_FIELD);
+		longitudeEnds[lineCount] = fields.getFieldEnd(RecordParser.LONGITUDE_FIELD);
+		latitudeStarts[lineCount] = fields.getFieldStart(RecordParser.LATITUDE_FIELD);
+		latitudeEnds[lineCount] = fields.getFieldEnd(RecordParser.LATITUDE_FIELD);
+		lineCount++;
+	}
+
+	/**
+	 * @throws IOException If the chunk could not be read from the records file
+	 */
+	private void readChunk() throws IOException
+	{
+		data = new byte[(int) (end - start)];
+		RandomAccessFile recordsRAF = new RandomAccessFile(recordsFile, "r");
+		try {
+			FileChannel channel = recordsRAF.getChannel();
+			ByteBuffer target = ByteBuffer.wrap(data);
+			while (target.hasRemaining())
+			{
+				if (channel.read(target, start + target.position()) < 0)
+					throw new IOException("Records file shrank while it was being imported.");
+			}
+		}
+		finally {
+			recordsRAF.close();
+		}
+	}
+
+	/**
+	 * @return The number of record lines in the chunk
+	 */
+	public int getLineCount()
+	{
+		return lineCount;
+	}
+
+	/**
+	 * @return The raw bytes of the chunk
+	 */
+	public byte[] getData()
+	{
+		return data;
+	}
+
+	/**
+	 * @param line Index of a record line inside of the chunk
+	 * @return Position of the line inside of the data array
+	 */
+	public int getLineStart(int line)
+	{
+		return lineStarts[line];
+	}
+
+	/**
+	 * @param line Index of a record line inside of the chunk
+	 * @return Length of the line without its terminator
+	 */
+	public int getLineLength(int line)
+	{
+		return lineLengths[line];
+	}
+
+	/**
+	 * @param line Index of a record line inside of the chunk
+	 * @return Name index key of the record
+	 */
+	public String getKey(int line)
+	{
+		return keys[line];
+	}
+
+	/**
+	 * @param line Index of a record line inside of the chunk
+	 * @return True if the record has a valid primary coordinate that can be indexed
+	 */
+	public boolean hasCoordinates(int line)
+	{
+		return longitudes[line] != RecordParser.INVALID_COORDINATE && latitudes[line] != RecordParser.INVALID_COORDINATE;
+	}
+
+	/**
+	 * @param line Index of a record line inside of the chunk
+	 * @return Primary longitude of the record in seconds
+	 */
+	public long getLongitude(int line)
+	{
+		return longitudes[line];
+	}
+
+	/**
+	 * @param line Index of a record line inside of the chunk
+	 * @return Primary latitude of the record in seconds
+	 */
+	public long getLatitude(int line)
+	{
+		return latitudes[line];
+	}
+
+	/**
+	 * Frees the memory held by the chunk once it has been merged.
+	 */
+	public void release()
+	{
+		data = null;
+		lineStarts = lineLengths = null;
+		keys = null;
+		longitudes = latitudes = null;
+	}
+
+	/**
+	 * Splits the records of a file into newline-aligned chunks.
+	 *
+	 * @param recordsFile The records file to be split
+	 * @param dataStart Offset of the first record line (just past the header line)
+	 * @param parallelism Number of threads that will parse the chunks
+	 * @return The boundaries of the chunks: chunk i covers [bounds[i], bounds[i+1])
+	 * @throws IOException If the records file could not be read
+	 */
+	public static long[] splitPoints(File recordsFile, long dataStart, int parallelism) throws IOException
+	{
+		long length = recordsFile.length();
+		long chunkSize = (length - dataStart) / Math.max(1, parallelism * 4);
+		chunkSize = Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, chunkSize));
+
+		long[] bounds = new long[(int) ((length - dataStart) / chunkSize) + 2];
+		int count = 0;
+		bounds[count++] = dataStart;
+
+		RandomAccessFile recordsRAF = new RandomAccessFile(recordsFile, "r");
+		try {
+			byte[] probe = new byte[4096];
+			long nominal = dataStart + chunkSize;
+			while (nominal < length)
+			{
+				// Move the boundary forward to the start of the next line
+				long boundary = -1;
+				long position = nominal;
+				while (boundary < 0 && position < length)
+				{
+					recordsRAF.seek(position);
+					int read = recordsRAF.read(probe);
+					if (read <= 0) break;
+					for (int i = 0; i < read; i++) {
+						if (probe[i] == '\n') {
+							boundary = position + i + 1;
+							break;
+						}
+					}
+					position += read;
+				}
+				if (boundary < 0 || boundary >= length) break;
+
+				bounds[count++] = boundary;
+				nominal = boundary + chunkSize;
+			}
+		}
+		finally {
+			recordsRAF.close();
+		}
+		bounds[count++] = length;
+
+		long[] result = new long[count];
+		System.arraycopy(bounds, 0, result, 0, count);
+		return result;
+	}
+
+}
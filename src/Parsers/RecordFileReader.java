@@ -0,0 +1,175 @@
+package Parsers;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The purpose of this class is to stream the lines of a GIS records file through one large
+ * byte buffer instead of asking the file for one byte at a time.  The byte offset of every
+ * line is tracked by counting the bytes consumed, so no file pointer queries are needed.
+ * Lines are terminated by '\n' (a '\r' right before it is dropped) and are decoded one byte
+ * per character, the same way RandomAccessFile.readLine() decodes them.
+ */
+public class RecordFileReader
+{
+	/** Size of the read buffer used to pull bytes from the records file */
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	/** Stream over the records file being read */
+	private InputStream input;
+	/** Bytes read from the file that have not been consumed yet */
+	private byte[] buffer = new byte[BUFFER_SIZE];
+	/** Position of the next unconsumed byte inside of the buffer */
+	private int bufferPos = 0;
+	/** Number of valid bytes inside of the buffer */
+	private int bufferLimit = 0;
+
+	/** Bytes of the current line (without its terminator) */
+	private byte[] line = new byte[512];
+	/** Number of valid bytes inside of the current line */
+	private int lineLength = 0;
+	/** Offset within the records file at which the current line starts */
+	private long lineOffset = 0;
+	/** Total number of bytes consumed from the records file */
+	private long bytesRead = 0;
+	/** Set once the end of the file has been reached */
+	private boolean endOfFile = false;
+
+	/**
+	 * @param recordsFile The GIS records file that will be streamed
+	 * @throws FileNotFoundException If the records file cannot be opened
+	 */
+	public RecordFileReader(File recordsFile) throws FileNotFoundException
+	{
+		input = new FileInputStream(recordsFile);
+	}
+
+	/**
+	 * Advances the reader to the next line of the file.
+	 *
+	 * @return True if a line was read, false once the end of the file was reached
+	 * @throws IOException If the records file could not be read
+	 */
+	public boolean nextLine() throws IOException
+	{
+		lineOffset = bytesRead;
+		lineLength = 0;
+		boolean sawBytes = false;
+
+		while (true)
+		{
+			// Refill the buffer once everything in it has been consumed
+			if (bufferPos >= bufferLimit)
+			{
+				if (endOfFile || !fill())
+				{
+					endOfFile = true;
+					return sawBytes; // Last line of the file had no terminator
+				}
+			}
+			sawBytes = true;
+
+			// Scan the buffer for the end of the line
+			int start = bufferPos;
+			int end = start;
+			while (end < bufferLimit && buffer[end] != '\n') end++;
+
+			appendToLine(start, end - start);
+			bytesRead += end - start;
+			bufferPos = end;
+
+			if (end < bufferLimit) // Found the terminator
+			{
+				bufferPos++;
+				bytesRead++;
+				if (lineLength > 0 && line[lineLength - 1] == '\r') lineLength--;
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * @return The bytes of the current line. Only the first getLineLength() bytes are valid.
+	 */
+	public byte[] getLineBytes()
+	{
+		return line;
+	}
+
+	/**
+	 * @return The number of bytes in the current line, excluding its terminator
+	 */
+	public int getLineLength()
+	{
+		return lineLength;
+	}
+
+	/**
+	 * @return The offset within the records file at which the current line starts
+	 */
+	public long getLineOffset()
+	{
+		return lineOffset;
+	}
+
+	/**
+	 * @return The total number of bytes read from the records file so far
+	 */
+	public long getBytesRead()
+	{
+		return bytesRead;
+	}
+
+	/**
+	 * @return The current line as a string
+	 */
+	public String getLineString()
+	{
+		return new String(line, 0, lineLength, StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * Closes the underlying records file.
+	 *
+	 * @throws IOException If the file could not be closed
+	 */
+	public void close() throws IOException
+	{
+		input.close();
+	}
+
+	/**
+	 * @return True if more bytes were placed into the buffer, false at the end of the file
+	 * @throws IOException If the records file could not be read
+	 */
+	private boolean fill() throws IOException
+	{
+		int read = input.read(buffer, 0, buffer.length);
+		while (read == 0) read = input.read(buffer, 0, buffer.length);
+		if (read < 0) return false;
+		bufferPos = 0;
+		bufferLimit = read;
+		return true;
+	}
+
+	/**
+	 * @param start Position inside of the buffer of the first byte to append
+	 * @param length Number of bytes to append to the current line
+	 */
+	private void appendToLine(int start, int length)
+	{
+		if (lineLength + length > line.length)
+		{
+			byte[] larger = new byte[Math.max(line.length * 2, lineLength + length)];
+			System.arraycopy(line, 0, larger, 0, lineLength);
+			line = larger;
+		}
+		System.arraycopy(buffer, start, line, lineLength, length);
+		lineLength += length;
+	}
+
+}
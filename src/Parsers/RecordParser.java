@@ -12,8 +12,10 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
 import java.util.Scanner;
 
+import DS.OffsetTable;
 import Types.Command;
 import Types.Record;
 
@@ -27,11 +29,29 @@ public class RecordParser
 	private File recordsFile = null;
 	// Current command that the parser is acting on
 	private Command currentCommand = null;
+	// Byte length of every record in the records file keyed by its offset (null when unknown)
+	private OffsetTable recordLengths = null;
 
 	// Constact conversion numbers used in the parsing of a geographic coordinate string
 	public static final long SECONDS_PER_DEGREE = 60 * 60;
 	public static final long SECONDS_PER_MINUTE = 60;
 	
+	// Layout of the DMS coordinates found in the records file (DDMMSS + N/S and DDDMMSS + E/W)
+	public static final int LATITUDE_DEGREE_DIGITS = 2;
+	public static final int LONGITUDE_DEGREE_DIGITS = 3;
+	public static final int LATITUDE_LENGTH = LATITUDE_DEGREE_DIGITS + 5;
+	public static final int LONGITUDE_LENGTH = LONGITUDE_DEGREE_DIGITS + 5;
+	public static final long MAX_LATITUDE_DEGREES = 90;
+	public static final long MAX_LONGITUDE_DEGREES = 180;
+	// Value stored by the batch parsers for coordinates that could not be parsed
+	public static final long INVALID_COORDINATE = Long.MIN_VALUE;
+	
+	// Positions of the fields that the indexes are built from inside of a record line
+	public static final int FEATURE_NAME_FIELD = 1;
+	public static final int STATE_FIELD = 3;
+	public static final int LATITUDE_FIELD = 7;
+	public static final int LONGITUDE_FIELD = 8;
+	
 	/*******************************************
 	*
 	* <b>Function Description:</b> Constructor of the records parser when a file reference to a records file is provided <p>
@@ -53,6 +73,29 @@ public class RecordParser
 	}
 	
 	
+	/*******************************************
+	*
+	* <b>Function Description:</b> Constructor of the records parser when the length of every record in the file is known <p>
+	*
+	* <b>Parameter:</b> File recordsTextFile: filepath to records file<p>
+	* <b>Parameter:</b> OffsetTable lengths: byte length of each record in the file keyed by its offset<p>
+	*
+	* <b>Pre-conditions:</b> records Text file is already created<p>
+	* 
+	* <b>Post-conditions:</b> Reference to a records file and its record lengths for the parser is set.<p>
+	*
+	* <b>Return Value:</b> A newly alllocated records parser object <p>
+	* 
+	* <b>Functions called by this function: </b> <p>
+	* 
+	*******************************************/
+	public RecordParser(File recordsTextFile, OffsetTable lengths)
+	{
+		this(recordsTextFile);
+		recordLengths = lengths;
+	}
+	
+	
 	/*******************************************
 	*
 	* <b>Function Description:</b> Used to check if the offset specified corresponds to the start of a new data line in the GIS text file.<p>
@@ -73,6 +116,14 @@ public class RecordParser
 		// Unable to proccess negative file pointer offset values
 		if (offset <= 0) return "Offset is not positive";
 		
+		// Record lengths are known, answer without reading the file
+		if (recordLengths != null)
+		{
+			if (offset >= recordsFile.length()) return "Offset too large";
+			else if (recordLengths.contains(offset)) return "valid";
+			else return "Unaligned offset";
+		}
+		
 		String validity = "";
 		try
 		{
@@ -113,7 +164,7 @@ public class RecordParser
 	 */
 	public static Record createRecord(String recordLine)
 	{
-		return new Record(recordLine.split("\\|"));		
+		return new Record(new RecordTokenizer().reset(recordLine));		
 	}
 	
 	/**
@@ -122,8 +173,20 @@ public class RecordParser
 	 */
 	public static String grabNameAndAbbrev(String recordLine)
 	{
-		String[] parts = recordLine.split("\\|");
-		return (parts[1] + ":" + parts[3]);
+		return grabNameAndAbbrev(new RecordTokenizer().reset(recordLine));
+	}
+	
+	/**
+	 * @param fields Tokenizer positioned over a record line
+	 * @return A concatenation of the feature name and state abbreviate "(Name):(State Abbreviation)"
+	 */
+	public static String grabNameAndAbbrev(RecordTokenizer fields)
+	{
+		StringBuilder key = new StringBuilder(fields.getFieldLength(FEATURE_NAME_FIELD) + 1 + fields.getFieldLength(STATE_FIELD));
+		fields.appendField(FEATURE_NAME_FIELD, key);
+		key.append(':');
+		fields.appendField(STATE_FIELD, key);
+		return key.toString();
 	}
 	
 	/**
@@ -132,8 +195,8 @@ public class RecordParser
 	 */
 	public static String[] grabLatAndLon(String recordLine)
 	{
-		String[] parts = recordLine.split("\\|");
-		String[] result = {parts[7], parts[8]};
+		RecordTokenizer fields = new RecordTokenizer().reset(recordLine);
+		String[] result = {fields.getField(LATITUDE_FIELD), fields.getField(LONGITUDE_FIELD)};
 		return result;
 		
 	}
@@ -142,67 +205,295 @@ public class RecordParser
 	
 	/*******************************************
 	*
-	* <b>Function Description:</b> String manipulation function used to convert the raw string in the GIS records file to a descriptive value.<p>
+	* <b>Function Description:</b> Converts a DMS latitude field (DDMMSS followed by N or S) of the GIS records file to seconds.<p>
 	*
-	* <b>Parameter:</b> String latitude: raw string corresponding to the field value for latitude in the records file<p>
+	* <b>Parameter:</b> CharSequence latitude: raw string corresponding to the field value for latitude in the records file<p>
 	*
 	* <b>Pre-conditions:</b> None <p>
 	* 
 	* <b>Post-conditions:</b> <p>
 	*
-	* <b>Return Value:</b> Seconds value that represents the latitude field <p>
+	* <b>Return Value:</b> Seconds value that represents the latitude field (negative in the southern hemisphere) <p>
 	* 
-	* <b>Functions called by this function: </b> <p>
+	* <b>Functions called by this function: </b> parseLatitude(CharSequence, int, int) <p>
 	* 
 	*******************************************/
-	public static long parseLatitude(String latitude)
+	public static long parseLatitude(CharSequence latitude)
 	{
-		long finalValue = 0;		
-		
-		if (latitude.charAt(0) == '0') finalValue += SECONDS_PER_DEGREE * Long.parseLong(latitude.substring(1,2));
-		finalValue += SECONDS_PER_DEGREE * Long.parseLong(latitude.substring(0,2));
-		
-		if (latitude.charAt(2) == '0') finalValue += SECONDS_PER_MINUTE * Long.parseLong(latitude.substring(3,4));
-		else finalValue += SECONDS_PER_MINUTE * Long.parseLong(latitude.substring(2,4));
-		
-		if (latitude.charAt(4) == '0') finalValue += Long.parseLong(latitude.substring(5,6));
-		else finalValue += Long.parseLong(latitude.substring(4,6));
-		
-		if (latitude.charAt(6) == 'S') finalValue *= -1;
-		return finalValue;
+		return parseLatitude(latitude, 0, latitude.length());
 	}
 	
 	/*******************************************
 	*
-	* <b>Function Description:</b> String manipulation function used to convert the raw string in the GIS records file to a descriptive value.<p>
+	* <b>Function Description:</b> Converts a DMS longitude field (DDDMMSS followed by E or W) of the GIS records file to seconds.<p>
 	*
-	* <b>Parameter:</b> String longitude: raw string corresponding to the field value for longitude in the records file<p>
+	* <b>Parameter:</b> CharSequence longitude: raw string corresponding to the field value for longitude in the records file<p>
 	*
 	* <b>Pre-conditions:</b> None <p>
 	* 
 	* <b>Post-conditions:</b> <p>
 	*
-	* <b>Return Value:</b> Seconds value that represents the longitude field <p>
+	* <b>Return Value:</b> Seconds value that represents the longitude field (negative in the western hemisphere) <p>
 	* 
-	* <b>Functions called by this function: </b> <p>
+	* <b>Functions called by this function: </b> parseLongitude(CharSequence, int, int) <p>
 	* 
 	*******************************************/
-	public static long parseLongitude(String longitude)
+	public static long parseLongitude(CharSequence longitude)
 	{
-		long finalValue = 0;		
-
-		if (longitude.charAt(0) == '0' && longitude.charAt(1) != '0') finalValue += SECONDS_PER_DEGREE * Long.parseLong(longitude.substring(1,3));
-		else if (longitude.charAt(0) == '0' && longitude.charAt(1) == '0') finalValue += SECONDS_PER_DEGREE * Long.parseLong(longitude.substring(2,3));
-		else finalValue += SECONDS_PER_DEGREE * Long.parseLong(longitude.substring(0,3));
+		return parseLongitude(longitude, 0, longitude.length());
+	}
+	
+	/**
+	 * @param text Characters that contain the latitude
+	 * @param start Position of the first character of the latitude
+	 * @param end Position one past the last character of the latitude
+	 * @return Seconds value that represents the latitude
+	 * @throws NumberFormatException If the characters are not a valid DMS latitude
+	 */
+	public static long parseLatitude(CharSequence text, int start, int end)
+	{
+		long seconds = (end - start == LATITUDE_LENGTH) ? dmsSeconds(text, start, LATITUDE_DEGREE_DIGITS, MAX_LATITUDE_DEGREES, 'N', 'S') : INVALID_COORDINATE;
+		if (seconds == INVALID_COORDINATE) throw invalidCoordinate("latitude", text.subSequence(start, end));
+		return seconds;
+	}
+	
+	/**
+	 * @param text Characters that contain the longitude
+	 * @param start Position of the first character of the longitude
+	 * @param end Position one past the last character of the longitude
+	 * @return Seconds value that represents the longitude
+	 * @throws NumberFormatException If the characters are not a valid DMS longitude
+	 */
+	public static long parseLongitude(CharSequence text, int start, int end)
+	{
+		long seconds = (end - start == LONGITUDE_LENGTH) ? dmsSeconds(text, start, LONGITUDE_DEGREE_DIGITS, MAX_LONGITUDE_DEGREES, 'E', 'W') : INVALID_COORDINATE;
+		if (seconds == INVALID_COORDINATE) throw invalidCoordinate("longitude", text.subSequence(start, end));
+		return seconds;
+	}
+	
+	/**
+	 * @param bytes Raw bytes that contain the latitude
+	 * @param start Position of the first byte of the latitude
+	 * @param end Position one past the last byte of the latitude
+	 * @return Seconds value that represents the latitude
+	 * @throws NumberFormatException If the bytes are not a valid DMS latitude
+	 */
+	public static long parseLatitude(byte[] bytes, int start, int end)
+	{
+		long seconds = (end - start == LATITUDE_LENGTH) ? dmsSeconds(bytes, start, LATITUDE_DEGREE_DIGITS, MAX_LATITUDE_DEGREES, 'N', 'S') : INVALID_COORDINATE;
+		if (seconds == INVALID_COORDINATE) throw invalidCoordinate("latitude", new String(bytes, start, end - start, StandardCharsets.ISO_8859_1));
+		return seconds;
+	}
+	
+	/**
+	 * @param bytes Raw bytes that contain the longitude
+	 * @param start Position of the first byte of the longitude
+	 * @param end Position one past the last byte of the longitude
+	 * @return Seconds value that represents the longitude
+	 * @throws NumberFormatException If the bytes are not a valid DMS longitude
+	 */
+	public static long parseLongitude(byte[] bytes, int start, int end)
+	{
+		long seconds = (end - start == LONGITUDE_LENGTH) ? dmsSeconds(bytes, start, LONGITUDE_DEGREE_DIGITS, MAX_LONGITUDE_DEGREES, 'E', 'W') : INVALID_COORDINATE;
+		if (seconds == INVALID_COORDINATE) throw invalidCoordinate("longitude", new String(bytes, start, end - start, StandardCharsets.ISO_8859_1));
+		return seconds;
+	}
+	
+	/**
+	 * @param fields Tokenizer positioned over a record line
+	 * @param field Index of the field that holds the latitude
+	 * @return Seconds value that represents the latitude
+	 * @throws NumberFormatException If the field is not a valid DMS latitude
+	 */
+	public static long parseLatitude(RecordTokenizer fields, int field)
+	{
+		if (fields.getBytes() != null) return parseLatitude(fields.getBytes(), fields.getFieldStart(field), fields.getFieldEnd(field));
+		else return parseLatitude(fields.getChars(), fields.getFieldStart(field), fields.getFieldEnd(field));
+	}
+	
+	/**
+	 * @param fields Tokenizer positioned over a record line
+	 * @param field Index of the field that holds the longitude
+	 * @return Seconds value that represents the longitude
+	 * @throws NumberFormatException If the field is not a valid DMS longitude
+	 */
+	public static long parseLongitude(RecordTokenizer fields, int field)
+	{
+		if (fields.getBytes() != null) return parseLongitude(fields.getBytes(), fields.getFieldStart(field), fields.getFieldEnd(field));
+		else return parseLongitude(fields.getChars(), fields.getFieldStart(field), fields.getFieldEnd(field));
+	}
+	
+	/**
+	 * Parses a whole column of latitudes. Invalid entries are stored as INVALID_COORDINATE instead of failing the batch.
+	 * 
+	 * @param bytes Raw bytes that contain the latitudes
+	 * @param starts Position of the first byte of each latitude
+	 * @param ends Position one past the last byte of each latitude
+	 * @param count Number of latitudes to parse
+	 * @param results Array that receives the seconds value of each latitude (must hold at least count values)
+	 * @return The number of invalid latitudes that were found
+	 */
+	public static int parseLatitudes(byte[] bytes, int[] starts, int[] ends, int count, long[] results)
+	{
+		int invalid = 0;
+		for (int i = 0; i < count; i++)
+		{
+			results[i] = (ends[i] - starts[i] == LATITUDE_LENGTH) ? dmsSeconds(bytes, starts[i], LATITUDE_DEGREE_DIGITS, MAX_LATITUDE_DEGREES, 'N', 'S') : INVALID_COORDINATE;
+			if (results[i] == INVALID_COORDINATE) invalid++;
+		}
+		return invalid;
+	}
+	
+	/**
+	 * Parses a whole column of longitudes. Invalid entries are stored as INVALID_COORDINATE instead of failing the batch.
+	 * 
+	 * @param bytes Raw bytes that contain the longitudes
+	 * @param starts Position of the first byte of each longitude
+	 * @param ends Position one past the last byte of each longitude
+	 * @param count Number of longitudes to parse
+	 * @param results Array that receives the seconds value of each longitude (must hold at least count values)
+	 * @return The number of invalid longitudes that were found
+	 */
+	public static int parseLongitudes(byte[] bytes, int[] starts, int[] ends, int count, long[] results)
+	{
+		int invalid = 0;
+		for (int i = 0; i < count; i++)
+		{
+			results[i] = (ends[i] - starts[i] == LONGITUDE_LENGTH) ? dmsSeconds(bytes, starts[i], LONGITUDE_DEGREE_DIGITS, MAX_LONGITUDE_DEGREES, 'E', 'W') : INVALID_COORDINATE;
+			if (results[i] == INVALID_COORDINATE) invalid++;
+		}
+		return invalid;
+	}
+	
+	/**
+	 * @param text Characters that hold a DMS value of the expected length
+	 * @param start Position of the first degree digit
+	 * @param degreeDigits Number of digits used for the degrees (2 for latitude, 3 for longitude)
+	 * @param maxDegrees Largest number of degrees that is allowed
+	 * @param positive Hemisphere letter for positive values
+	 * @param negative Hemisphere letter for negative values
+	 * @return The seconds value, or INVALID_COORDINATE if the characters are not a valid DMS value
+	 */
+	private static long dmsSeconds(CharSequence text, int start, int degreeDigits, long maxDegrees, char positive, char negative)
+	{
+		long degrees = 0, minutes = 0, seconds = 0;
+		int pos = start;
+		for (int i = 0; i < degreeDigits; i++) {
+			int digit = text.charAt(pos++) - '0';
+			if (digit < 0 || digit > 9) return INVALID_COORDINATE;
+			degrees = degrees * 10 + digit;
+		}
+		for (int i = 0; i < 2; i++) {
+			int digit = text.charAt(pos++) - '0';
+			if (digit < 0 || digit > 9) return INVALID_COORDINATE;
+			minutes = minutes * 10 + digit;
+		}
+		for (int i = 0; i < 2; i++) {
+			int digit = text.charAt(pos++) - '0';
+			if (digit < 0 || digit > 9) return INVALID_COORDINATE;
+			seconds = seconds * 10 + digit;
+		}
+		return dmsTotal(degrees, minutes, seconds, maxDegrees, text.charAt(pos), positive, negative);
+	}
+	
+	/**
+	 * @param bytes Raw bytes that hold a DMS value of the expected length
+	 * @param start Position of the first degree digit
+	 * @param degreeDigits Number of digits used for the degrees (2 for latitude, 3 for longitude)
+	 * @param maxDegrees Largest number of degrees that is allowed
+	 * @param positive Hemisphere letter for positive values
+	 * @param negative Hemisphere letter for negative values
+	 * @return The seconds value, or INVALID_COORDINATE if the bytes are not a valid DMS value
+	 */
+	private static long dmsSeconds(byte[] bytes, int start, int degreeDigits, long maxDegrees, char positive, char negative)
+	{
+		long degrees = 0, minutes = 0, seconds = 0;
+		int pos = start;
+		for (int i = 0; i < degreeDigits; i++) {
+			int digit = bytes[pos++] - '0';
+			if (digit < 0 || digit > 9) return INVALID_COORDINATE;
+			degrees = degrees * 10 + digit;
+		}
+		for (int i = 0; i < 2; i++) {
+			int digit = bytes[pos++] - '0';
+			if (digit < 0 || digit > 9) return INVALID_COORDINATE;
+			minutes = minutes * 10 + digit;
+		}
+		for (int i = 0; i < 2; i++) {
+			int digit = bytes[pos++] - '0';
+			if (digit < 0 || digit > 9) return INVALID_COORDINATE;
+			seconds = seconds * 10 + digit;
+		}
+		return dmsTotal(degrees, minutes, seconds, maxDegrees, (char) (bytes[pos] & 0xFF), positive, negative);
+	}
+	
+	/**
+	 * @return The signed total number of seconds, or INVALID_COORDINATE if any component is out of range
+	 */
+	private static long dmsTotal(long degrees, long minutes, long seconds, long maxDegrees, char hemisphere, char positive, char negative)
+	{
+		if (minutes >= 60 || seconds >= 60) return INVALID_COORDINATE;
 		
-		if (longitude.charAt(3) == '0') finalValue += SECONDS_PER_MINUTE * Long.parseLong(longitude.substring(4,5));
-		else finalValue += SECONDS_PER_MINUTE * Long.parseLong(longitude.substring(3,5));
+		long total = degrees * SECONDS_PER_DEGREE + minutes * SECONDS_PER_MINUTE + seconds;
+		if (total > maxDegrees * SECONDS_PER_DEGREE) return INVALID_COORDINATE;
 		
-		if (longitude.charAt(5) == '0') finalValue += Long.parseLong(longitude.substring(6,7));
-		else finalValue += Long.parseLong(longitude.substring(5,7));
+		char upper = Character.toUpperCase(hemisphere);
+		if (upper == negative) return -total;
+		else if (upper == positive) return total;
+		else return INVALID_COORDINATE;
+	}
+	
+	/**
+	 * Formats a latitude the same way it appears in a records file (DDMMSS followed by N or S).
+	 * 
+	 * @param seconds Seconds value of the latitude (as returned by parseLatitude)
+	 * @param builder Builder that the formatted latitude is appended to
+	 */
+	public static void appendLatitude(long seconds, StringBuilder builder)
+	{
+		appendDMS(seconds, LATITUDE_DEGREE_DIGITS, 'N', 'S', builder);
+	}
+	
+	/**
+	 * Formats a longitude the same way it appears in a records file (DDDMMSS followed by E or W).
+	 * 
+	 * @param seconds Seconds value of the longitude (as returned by parseLongitude)
+	 * @param builder Builder that the formatted longitude is appended to
+	 */
+	public static void appendLongitude(long seconds, StringBuilder builder)
+	{
+		appendDMS(seconds, LONGITUDE_DEGREE_DIGITS, 'E', 'W', builder);
+	}
+	
+	/**
+	 * @param seconds Signed seconds value of the coordinate
+	 * @param degreeDigits Number of digits used for the degrees
+	 * @param positive Hemisphere letter for positive values
+	 * @param negative Hemisphere letter for negative values
+	 * @param builder Builder that the formatted coordinate is appended to
+	 */
+	private static void appendDMS(long seconds, int degreeDigits, char positive, char negative, StringBuilder builder)
+	{
+		long total = Math.abs(seconds);
+		long degrees = total / SECONDS_PER_DEGREE;
+		long minutes = (total % SECONDS_PER_DEGREE) / SECONDS_PER_MINUTE;
 		
-		if (longitude.charAt(7) == 'W') finalValue *= -1;
-		return finalValue;
+		long scale = 1;
+		for (int i = 1; i < degreeDigits; i++) scale *= 10;
+		for (; scale > 0; scale /= 10) builder.append((char) ('0' + (degrees / scale) % 10));
+		builder.append((char) ('0' + minutes / 10)).append((char) ('0' + minutes % 10));
+		builder.append((char) ('0' + (total % 60) / 10)).append((char) ('0' + total % 10));
+		builder.append(seconds < 0 ? negative : positive);
+	}
+	
+	/**
+	 * @param kind Name of the kind of coordinate that failed to parse
+	 * @param value The text that failed to parse
+	 * @return The exception describing the failure
+	 */
+	private static NumberFormatException invalidCoordinate(String kind, CharSequence value)
+	{
+		return new NumberFormatException("Error: Invalid DMS " + kind + " \"" + value + "\"");
 	}
 	
 	
@@ -0,0 +1,208 @@
+package Parsers;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The purpose of this class is to split a pipe-delimited GIS record line into its fields in a
+ * single pass.  The tokenizer only records where each field starts and ends; a field is turned
+ * into a String only when it is asked for.  One tokenizer is meant to be reset and reused for
+ * every line, either over the raw bytes of the line or over any CharSequence.
+ */
+public class RecordTokenizer
+{
+	/** Character that seperates the fields of a record line */
+	public static final char FIELD_SEPARATOR = '|';
+
+	/** Raw bytes of the current line (null when tokenizing characters) */
+	private byte[] bytes;
+	/** Characters of the current line (null when tokenizing bytes) */
+	private CharSequence chars;
+
+	/** Position at which each field starts */
+	private int[] fieldStarts = new int[24];
+	/** Position one past the end of each field */
+	private int[] fieldEnds = new int[24];
+	/** Number of fields in the current line, counting trailing empty fields */
+	private int fieldCount = 0;
+
+	/**
+	 * @param line The record line to tokenize
+	 * @return This tokenizer, positioned over the fields of the line
+	 */
+	public RecordTokenizer reset(CharSequence line)
+	{
+		bytes = null;
+		chars = line;
+		fieldCount = 0;
+
+		int fieldStart = 0;
+		int length = line.length();
+		for (int i = 0; i < length; i++)
+		{
+			if (line.charAt(i) == FIELD_SEPARATOR) {
+				addField(fieldStart, i);
+				fieldStart = i + 1;
+			}
+		}
+		addField(fieldStart, length);
+		return this;
+	}
+
+	/**
+	 * @param line Array that holds the raw bytes of the record line
+	 * @param start Position of the first byte of the line
+	 * @param length Number of bytes in the line
+	 * @return This tokenizer, positioned over the fields of the line
+	 */
+	public RecordTokenizer reset(byte[] line, int start, int length)
+	{
+		bytes = line;
+		chars = null;
+		fieldCount = 0;
+
+		int fieldStart = start;
+		int end = start + length;
+		for (int i = start; i < end; i++)
+		{
+			if (line[i] == FIELD_SEPARATOR) {
+				addField(fieldStart, i);
+				fieldStart = i + 1;
+			}
+		}
+		addField(fieldStart, end);
+		return this;
+	}
+
+	/**
+	 * @return The number of fields in the line, including empty fields at the end of the line
+	 */
+	public int getFieldCount()
+	{
+		return fieldCount;
+	}
+
+	/**
+	 * @return The number of fields String.split("\\|") would have returned for the line (trailing empty fields are dropped)
+	 */
+	public int getSplitFieldCount()
+	{
+		if (fieldCount == 1) return 1; // split() returns the line itself when there is no separator
+		int count = fieldCount;
+		while (count > 0 && fieldStarts[count - 1] == fieldEnds[count - 1]) count--;
+		return count;
+	}
+
+	/**
+	 * @param field Index of a field in the line
+	 * @return Position at which the field starts
+	 */
+	public int getFieldStart(int field)
+	{
+		checkField(field);
+		return fieldStarts[field];
+	}
+
+	/**
+	 * @param field Index of a field in the line
+	 * @return Position one past the end of the field
+	 */
+	public int getFieldEnd(int field)
+	{
+		checkField(field);
+		return fieldEnds[field];
+	}
+
+	/**
+	 * @param field Index of a field in the line
+	 * @return Number of characters in the field
+	 */
+	public int getFieldLength(int field)
+	{
+		checkField(field);
+		return fieldEnds[field] - fieldStarts[field];
+	}
+
+	/**
+	 * @param position Position inside of the line (as returned by getFieldStart/getFieldEnd)
+	 * @return The character found at that position
+	 */
+	public char charAt(int position)
+	{
+		if (bytes != null) return (char) (bytes[position] & 0xFF);
+		else return chars.charAt(position);
+	}
+
+	/**
+	 * @return The raw bytes being tokenized, or null when tokenizing characters
+	 */
+	public byte[] getBytes()
+	{
+		return bytes;
+	}
+
+	/**
+	 * @return The characters being tokenized, or null when tokenizing bytes
+	 */
+	public CharSequence getChars()
+	{
+		return chars;
+	}
+
+	/**
+	 * @param field Index of a field in the line
+	 * @return The field as a newly created string
+	 */
+	public String getField(int field)
+	{
+		checkField(field);
+		int start = fieldStarts[field];
+		int end = fieldEnds[field];
+		if (start == end) return "";
+		if (bytes != null) return new String(bytes, start, end - start, StandardCharsets.ISO_8859_1);
+		else return chars.subSequence(start, end).toString();
+	}
+
+	/**
+	 * @param field Index of a field in the line
+	 * @param builder Builder that the characters of the field will be appended to
+	 */
+	public void appendField(int field, StringBuilder builder)
+	{
+		checkField(field);
+		int end = fieldEnds[field];
+		if (bytes != null) {
+			for (int i = fieldStarts[field]; i < end; i++) builder.append((char) (bytes[i] & 0xFF));
+		}
+		else builder.append(chars, fieldStarts[field], end);
+	}
+
+	/**
+	 * @param start Position at which the field starts
+	 * @param end Position one past the end of the field
+	 */
+	private void addField(int start, int end)
+	{
+		if (fieldCount == fieldStarts.length)
+		{
+			int[] largerStarts = new int[fieldCount * 2];
+			int[] largerEnds = new int[fieldCount * 2];
+			System.arraycopy(fieldStarts, 0, largerStarts, 0, fieldCount);
+			System.arraycopy(fieldEnds, 0, largerEnds, 0, fieldCount);
+			fieldStarts = largerStarts;
+			fieldEnds = largerEnds;
+		}
+		fieldStarts[fieldCount] = start;
+		fieldEnds[fieldCount] = end;
+		fieldCount++;
+	}
+
+	/**
+	 * @param field Index of a field that is about to be accessed
+	 */
+	private void checkField(int field)
+	{
+		if (field < 0 || field >= fieldCount)
+			throw new ArrayIndexOutOfBoundsException("Error: Record line only has " + fieldCount + " fields (asked for field " + field + ").");
+	}
+
+}
@@ -25,6 +25,7 @@ public class Command {
 	private String commandType = "";
 	private String[] worldBoundaries = null;
 	private String recordFileName = "";
+	private String importFlag = "";
 	private String coordinateString = "";
 	private String printFlag = "";
 	private String featureName = "";
@@ -32,6 +33,9 @@ public class Command {
 	private String halfHeight = "";
 	private String halfWidth = "";
 	private String debugTarget = "";
+	private String poolCapacity = "";
+	private String poolPolicy = "";
+	private String resultLimit = "";
 	private String rawCommandString = "";
 	
 	/*
@@ -118,6 +122,22 @@ public class Command {
 	}
 
 
+	/**
+	 * @return the importFlag
+	 */
+	public String getImportFlag() {
+		return importFlag;
+	}
+
+
+	/**
+	 * @param importFlag the importFlag to set
+	 */
+	public void setImportFlag(String importFlag) {
+		this.importFlag = importFlag;
+	}
+
+
 	/**
 	 * @return the coordinateString
 	 */
@@ -230,6 +250,54 @@ public class Command {
 	}
 
 
+	/**
+	 * @return the poolCapacity
+	 */
+	public String getPoolCapacity() {
+		return poolCapacity;
+	}
+
+
+	/**
+	 * @param poolCapacity the poolCapacity to set
+	 */
+	public void setPoolCapacity(String poolCapacity) {
+		this.poolCapacity = poolCapacity;
+	}
+
+
+	/**
+	 * @return the poolPolicy
+	 */
+	public String getPoolPolicy() {
+		return poolPolicy;
+	}
+
+
+	/**
+	 * @param poolPolicy the poolPolicy to set
+	 */
+	public void setPoolPolicy(String poolPolicy) {
+		this.poolPolicy = poolPolicy;
+	}
+
+
+	/**
+	 * @return the resultLimit
+	 */
+	public String getResultLimit() {
+		return resultLimit;
+	}
+
+
+	/**
+	 * @param resultLimit the resultLimit to set
+	 */
+	public void setResultLimit(String resultLimit) {
+		this.resultLimit = resultLimit;
+	}
+
+
 	/*******************************************
 	*
 	* <b>Function Description:</b> Contructor of the Command class used to create a Command object with only a valid message type.  <p>
@@ -365,6 +433,12 @@ public class Command {
 			builder.append(this.recordFileName);
 			builder.append("\n");
 
+		}
+		if (this.importFlag.length() > 0)
+		{
+			builder.append(this.importFlag);
+			builder.append("\n");
+
 		}
 		if (this.coordinateString.length() > 0)
 		{
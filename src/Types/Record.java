@@ -1,6 +1,6 @@
 package Types;
 
-import java.io.FileWriter;
+import java.io.Writer;
 /*
  * Programmer: Carlos Folgar
  * Project: Major
@@ -9,6 +9,8 @@ import java.io.FileWriter;
  */
 import java.io.IOException;
 
+import Parsers.RecordTokenizer;
+
 /**
  * Class: Record
  * The record class is used to encapsulate valuable field component of a Record. Valid field values correspond to
@@ -40,7 +42,7 @@ public class Record
 	private final String dateCreated;
 	
 	// Number of fields in a typical line of a records file
-	private final int NUMBER_OF_FIELDS = 19;
+	private static final int NUMBER_OF_FIELDS = 19;
 	
 	
 	/**
@@ -96,6 +98,29 @@ public class Record
 	}
 	
 	
+	/**
+	 * @param fields Tokenizer positioned over a record line. Only the fields of the record are materialized.
+	 */
+	public Record(RecordTokenizer fields) {
+		this(materialize(fields));
+	}
+	
+	/**
+	 * @param fields Tokenizer positioned over a record line
+	 * @return The fields of the record, or no fields when the line does not have a valid number of fields
+	 */
+	private static String[] materialize(RecordTokenizer fields) {
+		
+		// Only process if it contains a valid number of fields
+		int fieldCount = fields.getSplitFieldCount();
+		if (fieldCount != NUMBER_OF_FIELDS && fieldCount != NUMBER_OF_FIELDS+1) return new String[0];
+		
+		String[] allFields = new String[NUMBER_OF_FIELDS];
+		for (int i = 0; i < NUMBER_OF_FIELDS; i++) allFields[i] = fields.getField(i);
+		return allFields;
+	}
+	
+	
 	/*
 	 * Converts the record into a string based on the fields that have been set.
 	 * This is the typical "long" representation of a record.
@@ -125,29 +150,25 @@ public class Record
 	 * @param mode The way that the record should output itself into the stream (how many fields to be represented)
 	 * @param fileWriter The writer with an output stream to a log file
 	 */
-	public void printToFile(String mode, FileWriter fileWriter)
+	public void printToFile(String mode, Writer fileWriter)
 	{
 		try 
 		{
 			if (mode.equalsIgnoreCase("Simple")) // Simple mode (No flag specified)
 			{
 				fileWriter.write(featureName + "\t" + countryName + "\t" + stateAbbreviation + "\n");
-				fileWriter.flush();
 
 			} else if (mode.equalsIgnoreCase("Long")) // Full format mode for -l flag
 			{
 				fileWriter.write(this.toString());
-				fileWriter.flush();
 			}
 			else if (mode.equalsIgnoreCase("NameAndLocation")) // Format used in region search and other coordinate search commands
 			{
 				fileWriter.write(countryName + "\t" + primaryLongitude + " " + primaryLatitutde + "\n");
-				fileWriter.flush();
 			}
 			if (mode.equalsIgnoreCase("simpleWithCoords")) // used when no flag presented
 			{
 				fileWriter.write(featureName + "\t" + stateAbbreviation + "\t" + primaryLatitutde + "\t" + primaryLongitude + "\n");
-				fileWriter.flush();
 
 			}
 		}
@@ -284,6 +305,24 @@ public class Record
 		return primaryLongitude;
 	}
 	
+	/**
+	 * @return Approximate number of heap bytes held by the record and its field strings
+	 */
+	public long estimatedSize()
+	{
+		String[] fields = { featureName, fidNumber, primaryLatitutde, primaryLongitude, stateAbbreviation, featureClass, 
+				stateNumericCode, countryName, countryNumericCode, primaryLatitude_dec, primaryLongitude_dec, sourceLatitude, 
+				sourceLongitude, sourceLatitude_dec, sourceLongitude_dec, featureElevation_meters, featureElevation_feet, mapName, dateCreated };
+		
+		// Object header and fields, then every non-empty string with its array of one byte per character
+		long size = 16 + NUMBER_OF_FIELDS * 4 + 4;
+		for (String field : fields) 
+		{
+			if (field.length() > 0) size += 24 + ((16 + field.length() + 7) & ~7);
+		}
+		return size;
+	}
+	
 	/**
 	 * Class: Builder
 	 * In the spirit of the Builder design pattern, the nested builder class serves as the only way to construct a valid record by